@@ -19,9 +19,13 @@
  */
 package org.xwiki.contrib.moccacalendar;
 
+import java.util.function.Supplier;
+
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.stability.Unstable;
 
 /**
  * Data container decribing an actual event.
@@ -30,27 +34,152 @@ import org.xwiki.model.reference.DocumentReference;
  * For recurrent events the generators must set the startDate and endDate
  * for the event; the rest can be figured out by the calendar service.
  *
+ * The title and the descriptions can be set as suppliers, so they are only rendered
+ * if somebody actually asks for them.
+ *
+ * Everything but the dates is kept in an immutable {@link EventSeries}, which the instances of a recurrent
+ * event can share instead of each keeping a copy. Only an instance which is changed afterwards keeps
+ * its own data.
+ *
+ * The dates are kept as epoch milliseconds with a single time zone for the whole event:
+ * the one given to {@link #setTimeZone(DateTimeZone)}, or the one of the last date set.
+ * All dates are returned in that zone, even if they were set with a different one;
+ * the getters create a new (ISO chronology) date each time they are called.
+ * Code which only compares dates should use the getters for the epoch milliseconds instead.
+ *
  * @version $Id: $
 `* @since 2.7
  */
 public class EventInstance
 {
-    private DocumentReference eventDocRef;
+    /**
+     * the epoch milliseconds returned for dates which are not set.
+     * @since 2.9.12
+     */
+    @Unstable
+    public static final long NO_DATE = Long.MIN_VALUE;
 
-    private DateTime startDate;
-    private DateTime originalStartDate;
-    private DateTime endDate;
-    private DateTime endDateExclusive;
+    private long startMillis = NO_DATE;
+    private long originalStartMillis = NO_DATE;
+    private long endMillis = NO_DATE;
+    private long endExclusiveMillis = NO_DATE;
 
-    private boolean allDay;
-    private boolean recurrent;
+    private DateTimeZone zone;
 
-    private String title;
-    private String description;
-    private String descriptionHtml;
+    /** the data shared with other instances. */
+    private EventSeries series = EventSeries.EMPTY;
 
-    private String textColor;
-    private String backgroundColor;
+    /** the data of this instance if it has been changed, which replaces the shared data; null otherwise. */
+    private EventSeries.Builder ownData;
+
+    /**
+     * Share the data of this event which does not depend on the dates, so it can be used
+     * for other instances of the same series with {@link #setSeriesData(EventSeries)}.
+     * Changing this event afterwards does not change the shared data.
+     *
+     * @return the shared data of this event
+     * @since 2.9.12
+     */
+    @Unstable
+    public EventSeries shareSeriesData()
+    {
+        if (ownData != null) {
+            series = ownData.build();
+            ownData = null;
+        }
+        return series;
+    }
+
+    /**
+     * Use the given shared data for everything but the dates of this event.
+     * Changing this event afterwards does not change the shared data.
+     *
+     * @param seriesData data returned by {@link #shareSeriesData()}
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setSeriesData(EventSeries seriesData)
+    {
+        this.series = seriesData;
+        this.ownData = null;
+    }
+
+    /**
+     * Create a copy of this event. Changing the copy afterwards does not change this event, and vice versa.
+     *
+     * @return a new event instance with the same data
+     * @since 2.9.12
+     */
+    @Unstable
+    public EventInstance copy()
+    {
+        EventInstance copy = new EventInstance();
+        copy.startMillis = this.startMillis;
+        copy.originalStartMillis = this.originalStartMillis;
+        copy.endMillis = this.endMillis;
+        copy.endExclusiveMillis = this.endExclusiveMillis;
+        copy.zone = this.zone;
+        copy.series = this.series;
+        copy.ownData = (this.ownData == null) ? null : this.ownData.copy();
+        return copy;
+    }
+
+    /**
+     * Create a copy of this event without the title and descriptions set with a supplier, whether they have
+     * been computed already or not. The copy can be kept beyond the current request, as it holds no reference
+     * to the data the suppliers compute their text from, and no text computed for the current user.
+     *
+     * @return a new event instance with the dates and the data set directly
+     * @since 2.9.12
+     */
+    @Unstable
+    public EventInstance copyPlainData()
+    {
+        EventInstance copy = new EventInstance();
+        copy.startMillis = this.startMillis;
+        copy.originalStartMillis = this.originalStartMillis;
+        copy.endMillis = this.endMillis;
+        copy.endExclusiveMillis = this.endExclusiveMillis;
+        copy.zone = this.zone;
+        copy.series = ((ownData == null) ? series : ownData.build()).withoutSuppliers();
+        return copy;
+    }
+
+    /**
+     * @return the data of this event which can be changed
+     */
+    private EventSeries.Builder ownData()
+    {
+        if (ownData == null) {
+            ownData = new EventSeries.Builder(series);
+        }
+        return ownData;
+    }
+
+    /**
+     * The time zone in which the dates of the event are returned.
+     * Setting any of the dates as a {@link DateTime} changes it to the zone of that date.
+     *
+     * @return the time zone, or null for the default time zone
+     * @since 2.9.12
+     */
+    @Unstable
+    public DateTimeZone getTimeZone()
+    {
+        return zone;
+    }
+
+    /**
+     * Set the time zone in which the dates of the event are returned, e.g. the one of its calendar.
+     *
+     * @param zone the time zone, or null for the default time zone
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setTimeZone(DateTimeZone zone)
+    {
+        this.zone = zone;
+    }
 
     /**
      * A reference to the document describing the event.
@@ -59,7 +188,7 @@ public class EventInstance
      */
     public DocumentReference getEventDocRef()
     {
-        return eventDocRef;
+        return (ownData == null) ? series.getEventDocRef() : ownData.getEventDocRef();
     }
 
     /**
@@ -69,7 +198,7 @@ public class EventInstance
      */
     public void setEventDocRef(DocumentReference eventDocRef)
     {
-        this.eventDocRef = eventDocRef;
+        ownData().setEventDocRef(eventDocRef);
     }
 
     /**
@@ -79,18 +208,44 @@ public class EventInstance
      */
     public DateTime getStartDate()
     {
-        return startDate;
+        return toDateTime(startMillis);
     }
 
     /**
      * Set the start date of the event.
      * This value must be set by event generators.
+     * The time zone of the date becomes the one of the whole event, see {@link #getTimeZone()}.
      *
      * @param startDate a (jodatime) date. The time part should be 00:00 for all day events
      */
     public void setStartDate(DateTime startDate)
     {
-        this.startDate = startDate;
+        this.startMillis = toMillis(startDate);
+    }
+
+    /**
+     * Get the start of the event without creating a date object.
+     *
+     * @return the date in epoch milliseconds, or {@link #NO_DATE} if it is not set
+     * @since 2.9.12
+     */
+    @Unstable
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    /**
+     * Set the start of the event without creating a date object.
+     * The date is shown in the time zone of the other dates of the event.
+     *
+     * @param startMillis the date in epoch milliseconds, or {@link #NO_DATE}
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setStartMillis(long startMillis)
+    {
+        this.startMillis = startMillis;
     }
 
 
@@ -102,17 +257,43 @@ public class EventInstance
      */
     public DateTime getOriginalStartDate()
     {
-        return originalStartDate;
+        return toDateTime(originalStartMillis);
     }
 
     /**
      * Set the date when the event would have started if not modified.
+     * The time zone of the date becomes the one of the whole event, see {@link #getTimeZone()}.
      *
      * @param originalStartDate a (jodatime) date. The time part should be 00:00 for all day events
      */
     public void setOriginalStartDate(DateTime originalStartDate)
     {
-        this.originalStartDate = originalStartDate;
+        this.originalStartMillis = toMillis(originalStartDate);
+    }
+
+    /**
+     * Get the original start of a modified event without creating a date object.
+     *
+     * @return the date in epoch milliseconds, or {@link #NO_DATE} if it is not set
+     * @since 2.9.12
+     */
+    @Unstable
+    public long getOriginalStartMillis()
+    {
+        return originalStartMillis;
+    }
+
+    /**
+     * Set the original start of a modified event without creating a date object.
+     * The date is shown in the time zone of the other dates of the event.
+     *
+     * @param originalStartMillis the date in epoch milliseconds, or {@link #NO_DATE}
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setOriginalStartMillis(long originalStartMillis)
+    {
+        this.originalStartMillis = originalStartMillis;
     }
 
     /**
@@ -122,18 +303,44 @@ public class EventInstance
      */
     public DateTime getEndDate()
     {
-        return endDate;
+        return toDateTime(endMillis);
     }
 
     /**
      * Set the end date for the event.
      * This value must be set by event generators.
+     * The time zone of the date becomes the one of the whole event, see {@link #getTimeZone()}.
      *
      * @param endDate a (jodatime) date. The time part should be 00:00 for all-day events
      */
     public void setEndDate(DateTime endDate)
     {
-        this.endDate = endDate;
+        this.endMillis = toMillis(endDate);
+    }
+
+    /**
+     * Get the end of the event without creating a date object.
+     *
+     * @return the date in epoch milliseconds, or {@link #NO_DATE} if it is not set
+     * @since 2.9.12
+     */
+    @Unstable
+    public long getEndMillis()
+    {
+        return endMillis;
+    }
+
+    /**
+     * Set the end of the event without creating a date object.
+     * The date is shown in the time zone of the other dates of the event.
+     *
+     * @param endMillis the date in epoch milliseconds, or {@link #NO_DATE}
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setEndMillis(long endMillis)
+    {
+        this.endMillis = endMillis;
     }
 
     /**
@@ -143,18 +350,44 @@ public class EventInstance
      */
     public DateTime getEndDateExclusive()
     {
-        return endDateExclusive;
+        return toDateTime(endExclusiveMillis);
     }
 
     /**
      * Set a date after the event has ended.
      * This should be the start of the next day after the event for all-day events.
+     * The time zone of the date becomes the one of the whole event, see {@link #getTimeZone()}.
      *
      * @param endDateExclusive a date after the event
      */
     public void setEndDateExclusive(DateTime endDateExclusive)
     {
-        this.endDateExclusive = endDateExclusive;
+        this.endExclusiveMillis = toMillis(endDateExclusive);
+    }
+
+    /**
+     * Get a date after the event has ended without creating a date object.
+     *
+     * @return the date in epoch milliseconds, or {@link #NO_DATE} if it is not set
+     * @since 2.9.12
+     */
+    @Unstable
+    public long getEndExclusiveMillis()
+    {
+        return endExclusiveMillis;
+    }
+
+    /**
+     * Set a date after the event has ended without creating a date object.
+     * The date is shown in the time zone of the other dates of the event.
+     *
+     * @param endExclusiveMillis the date in epoch milliseconds, or {@link #NO_DATE}
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setEndExclusiveMillis(long endExclusiveMillis)
+    {
+        this.endExclusiveMillis = endExclusiveMillis;
     }
 
     /**
@@ -165,7 +398,7 @@ public class EventInstance
      */
     public boolean isAllDay()
     {
-        return allDay;
+        return (ownData == null) ? series.isAllDay() : ownData.isAllDay();
     }
 
     /**
@@ -175,7 +408,7 @@ public class EventInstance
      */
     public void setAllDay(boolean allDay)
     {
-        this.allDay = allDay;
+        ownData().setAllDay(allDay);
     }
 
     /**
@@ -185,7 +418,7 @@ public class EventInstance
      */
     public boolean isRecurrent()
     {
-        return recurrent;
+        return (ownData == null) ? series.isRecurrent() : ownData.isRecurrent();
     }
 
     /**
@@ -195,7 +428,7 @@ public class EventInstance
      */
     public void setRecurrent(boolean recurrent)
     {
-        this.recurrent = recurrent;
+        ownData().setRecurrent(recurrent);
     }
 
     /**
@@ -205,7 +438,7 @@ public class EventInstance
      */
     public String getTitle()
     {
-        return title;
+        return (ownData == null) ? series.getTitle() : ownData.getTitle();
     }
 
     /**
@@ -215,7 +448,31 @@ public class EventInstance
      */
     public void setTitle(String title)
     {
-        this.title = title;
+        ownData().setTitle(title);
+    }
+
+    /**
+     * Set the title of the event, to be computed when it is requested the first time.
+     *
+     * @param title computes the title; it is called at most once
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setTitleSupplier(Supplier<String> title)
+    {
+        ownData().setTitleSupplier(title);
+    }
+
+    /**
+     * Check if the title of the event has been set, without computing it.
+     *
+     * @return true if a title or a supplier for it has been set
+     * @since 2.9.12
+     */
+    @Unstable
+    public boolean hasTitle()
+    {
+        return (ownData == null) ? series.hasTitle() : ownData.hasTitle();
     }
 
     /**
@@ -225,7 +482,7 @@ public class EventInstance
      */
     public String getDescription()
     {
-        return description;
+        return (ownData == null) ? series.getDescription() : ownData.getDescription();
     }
 
     /**
@@ -235,7 +492,31 @@ public class EventInstance
      */
     public void setDescription(String description)
     {
-        this.description = description;
+        ownData().setDescription(description);
+    }
+
+    /**
+     * Set the longer description of the event, to be computed when it is requested the first time.
+     *
+     * @param description computes the description without HTML markup; it is called at most once
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setDescriptionSupplier(Supplier<String> description)
+    {
+        ownData().setDescriptionSupplier(description);
+    }
+
+    /**
+     * Check if the description of the event has been set, without computing it.
+     *
+     * @return true if a description or a supplier for it has been set
+     * @since 2.9.12
+     */
+    @Unstable
+    public boolean hasDescription()
+    {
+        return (ownData == null) ? series.hasDescription() : ownData.hasDescription();
     }
 
     /**
@@ -245,7 +526,7 @@ public class EventInstance
      */
     public String getDescriptionHtml()
     {
-        return descriptionHtml;
+        return (ownData == null) ? series.getDescriptionHtml() : ownData.getDescriptionHtml();
     }
 
     /**
@@ -255,7 +536,19 @@ public class EventInstance
      */
     public void setDescriptionHtml(String descriptionHtml)
     {
-        this.descriptionHtml = descriptionHtml;
+        ownData().setDescriptionHtml(descriptionHtml);
+    }
+
+    /**
+     * Set the longer description as HTML, to be computed when it is requested the first time.
+     *
+     * @param descriptionHtml computes the description as HTML; it is called at most once
+     * @since 2.9.12
+     */
+    @Unstable
+    public void setDescriptionHtmlSupplier(Supplier<String> descriptionHtml)
+    {
+        ownData().setDescriptionHtmlSupplier(descriptionHtml);
     }
 
     /**
@@ -266,7 +559,7 @@ public class EventInstance
      */
     public String getTextColor()
     {
-        return textColor;
+        return (ownData == null) ? series.getTextColor() : ownData.getTextColor();
     }
 
     /**
@@ -276,7 +569,7 @@ public class EventInstance
      */
     public void setTextColor(String textColor)
     {
-        this.textColor = textColor;
+        ownData().setTextColor(textColor);
     }
 
     /**
@@ -286,7 +579,7 @@ public class EventInstance
      */
     public String getBackgroundColor()
     {
-        return backgroundColor;
+        return (ownData == null) ? series.getBackgroundColor() : ownData.getBackgroundColor();
     }
 
     /**
@@ -295,7 +588,20 @@ public class EventInstance
      */
     public void setBackgroundColor(String backgroundColor)
     {
-        this.backgroundColor = backgroundColor;
+        ownData().setBackgroundColor(backgroundColor);
+    }
+
+    private long toMillis(DateTime date)
+    {
+        if (date == null) {
+            return NO_DATE;
+        }
+        this.zone = date.getZone();
+        return date.getMillis();
     }
 
+    private DateTime toDateTime(long millis)
+    {
+        return (millis == NO_DATE) ? null : new DateTime(millis, zone);
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar;
+
+import java.util.List;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * One page of events of a paginated query.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Unstable
+public class EventPage
+{
+    private final List<EventInstance> events;
+
+    private final String nextCursor;
+
+    /**
+     * @param events the events in this page
+     * @param nextCursor the cursor to fetch the next page; null if this is the last page
+     */
+    public EventPage(List<EventInstance> events, String nextCursor)
+    {
+        this.events = events;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * The events in this page, in the requested order.
+     *
+     * @return a list of events; might be empty but never null
+     */
+    public List<EventInstance> getEvents()
+    {
+        return events;
+    }
+
+    /**
+     * An opaque string to pass to the query to get the next page.
+     *
+     * @return the cursor for the next page, or null if there are no more events
+     */
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /**
+     * Check if there are more events after this page.
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasMore()
+    {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar;
+
+import java.util.function.Supplier;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.stability.Unstable;
+
+/**
+ * The data of an event which is the same for all instances of a recurrent event: everything but the dates.
+ * <p>
+ * Objects of this class are immutable, so the instances of a series can share one of them, see
+ * {@link EventInstance#shareSeriesData()}. Changes to one event instance are kept by the instance itself.
+ * A title or description computed by a supplier is computed once for all instances sharing the object,
+ * even if they are used by several threads, e.g. if they are cached.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Unstable
+public final class EventSeries
+{
+    /** the data of an event where nothing has been set. */
+    static final EventSeries EMPTY = new Builder().build();
+
+    private final DocumentReference eventDocRef;
+
+    private final boolean allDay;
+    private final boolean recurrent;
+
+    private final LazyText title;
+    private final LazyText description;
+    private final LazyText descriptionHtml;
+
+    private final String textColor;
+    private final String backgroundColor;
+
+    private EventSeries(Builder builder)
+    {
+        this.eventDocRef = builder.eventDocRef;
+        this.allDay = builder.allDay;
+        this.recurrent = builder.recurrent;
+        this.title = builder.title;
+        this.description = builder.description;
+        this.descriptionHtml = builder.descriptionHtml;
+        this.textColor = builder.textColor;
+        this.backgroundColor = builder.backgroundColor;
+    }
+
+    /**
+     * @return a copy without the title and descriptions set with a supplier
+     */
+    EventSeries withoutSuppliers()
+    {
+        Builder builder = new Builder(this);
+        builder.dropSuppliers();
+        return builder.build();
+    }
+
+    DocumentReference getEventDocRef()
+    {
+        return eventDocRef;
+    }
+
+    boolean isAllDay()
+    {
+        return allDay;
+    }
+
+    boolean isRecurrent()
+    {
+        return recurrent;
+    }
+
+    String getTitle()
+    {
+        return LazyText.get(title);
+    }
+
+    boolean hasTitle()
+    {
+        return title != null;
+    }
+
+    String getDescription()
+    {
+        return LazyText.get(description);
+    }
+
+    boolean hasDescription()
+    {
+        return description != null;
+    }
+
+    String getDescriptionHtml()
+    {
+        return LazyText.get(descriptionHtml);
+    }
+
+    String getTextColor()
+    {
+        return textColor;
+    }
+
+    String getBackgroundColor()
+    {
+        return backgroundColor;
+    }
+
+    /**
+     * the data of one event instance which has been changed; it starts with the data of the series
+     * the instance belongs to.
+     */
+    static final class Builder
+    {
+        private DocumentReference eventDocRef;
+
+        private boolean allDay;
+        private boolean recurrent;
+
+        private LazyText title;
+        private LazyText description;
+        private LazyText descriptionHtml;
+
+        private String textColor;
+        private String backgroundColor;
+
+        Builder()
+        {
+        }
+
+        Builder(EventSeries series)
+        {
+            this.eventDocRef = series.eventDocRef;
+            this.allDay = series.allDay;
+            this.recurrent = series.recurrent;
+            this.title = series.title;
+            this.description = series.description;
+            this.descriptionHtml = series.descriptionHtml;
+            this.textColor = series.textColor;
+            this.backgroundColor = series.backgroundColor;
+        }
+
+        /**
+         * @return a copy which does not share the texts still to be computed with this one
+         */
+        Builder copy()
+        {
+            Builder copy = new Builder();
+            copy.eventDocRef = this.eventDocRef;
+            copy.allDay = this.allDay;
+            copy.recurrent = this.recurrent;
+            copy.title = (this.title == null) ? null : this.title.copy();
+            copy.description = (this.description == null) ? null : this.description.copy();
+            copy.descriptionHtml = (this.descriptionHtml == null) ? null : this.descriptionHtml.copy();
+            copy.textColor = this.textColor;
+            copy.backgroundColor = this.backgroundColor;
+            return copy;
+        }
+
+        EventSeries build()
+        {
+            return new EventSeries(this);
+        }
+
+        void dropSuppliers()
+        {
+            this.title = withoutSupplier(this.title);
+            this.description = withoutSupplier(this.description);
+            this.descriptionHtml = withoutSupplier(this.descriptionHtml);
+        }
+
+        private static LazyText withoutSupplier(LazyText text)
+        {
+            return (text == null || text.isSupplied()) ? null : text;
+        }
+
+        DocumentReference getEventDocRef()
+        {
+            return eventDocRef;
+        }
+
+        void setEventDocRef(DocumentReference eventDocRef)
+        {
+            this.eventDocRef = eventDocRef;
+        }
+
+        boolean isAllDay()
+        {
+            return allDay;
+        }
+
+        void setAllDay(boolean allDay)
+        {
+            this.allDay = allDay;
+        }
+
+        boolean isRecurrent()
+        {
+            return recurrent;
+        }
+
+        void setRecurrent(boolean recurrent)
+        {
+            this.recurrent = recurrent;
+        }
+
+        String getTitle()
+        {
+            return LazyText.get(title);
+        }
+
+        void setTitle(String title)
+        {
+            this.title = LazyText.of(title);
+        }
+
+        void setTitleSupplier(Supplier<String> title)
+        {
+            this.title = LazyText.of(title);
+        }
+
+        boolean hasTitle()
+        {
+            return title != null;
+        }
+
+        String getDescription()
+        {
+            return LazyText.get(description);
+        }
+
+        void setDescription(String description)
+        {
+            this.description = LazyText.of(description);
+        }
+
+        void setDescriptionSupplier(Supplier<String> description)
+        {
+            this.description = LazyText.of(description);
+        }
+
+        boolean hasDescription()
+        {
+            return description != null;
+        }
+
+        String getDescriptionHtml()
+        {
+            return LazyText.get(descriptionHtml);
+        }
+
+        void setDescriptionHtml(String descriptionHtml)
+        {
+            this.descriptionHtml = LazyText.of(descriptionHtml);
+        }
+
+        void setDescriptionHtmlSupplier(Supplier<String> descriptionHtml)
+        {
+            this.descriptionHtml = LazyText.of(descriptionHtml);
+        }
+
+        String getTextColor()
+        {
+            return textColor;
+        }
+
+        void setTextColor(String textColor)
+        {
+            this.textColor = textColor;
+        }
+
+        String getBackgroundColor()
+        {
+            return backgroundColor;
+        }
+
+        void setBackgroundColor(String backgroundColor)
+        {
+            this.backgroundColor = backgroundColor;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar;
+
+import java.util.function.Supplier;
+
+/**
+ * A text which is either given or computed by a supplier when it is requested the first time.
+ * It can be used by several threads; the supplier is called at most once.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+final class LazyText
+{
+    private final boolean supplied;
+
+    private Supplier<String> supplier;
+
+    private String value;
+
+    private LazyText(String value, Supplier<String> supplier)
+    {
+        this.supplied = supplier != null;
+        this.value = value;
+        this.supplier = supplier;
+    }
+
+    /**
+     * @return the text, or null if there is no text
+     */
+    static LazyText of(String value)
+    {
+        return (value == null) ? null : new LazyText(value, null);
+    }
+
+    static LazyText of(Supplier<String> supplier)
+    {
+        return new LazyText(null, supplier);
+    }
+
+    /**
+     * @return the text of the given lazy text, or null if there is none
+     */
+    static String get(LazyText text)
+    {
+        return (text == null) ? null : text.get();
+    }
+
+    /**
+     * @return true if the text is computed by a supplier, whether it has been computed already or not
+     */
+    boolean isSupplied()
+    {
+        return supplied;
+    }
+
+    /**
+     * @return a text which does not share any state with this one: this text if it has been computed already,
+     *     otherwise a new one using the same supplier
+     */
+    synchronized LazyText copy()
+    {
+        return (supplier == null) ? this : new LazyText(null, supplier);
+    }
+
+    synchronized String get()
+    {
+        if (supplier != null) {
+            value = supplier.get();
+            supplier = null;
+        }
+        return value;
+    }
+}
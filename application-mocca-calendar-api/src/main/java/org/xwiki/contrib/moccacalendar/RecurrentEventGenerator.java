@@ -20,6 +20,7 @@
 package org.xwiki.contrib.moccacalendar;
 
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
@@ -51,4 +52,24 @@ public interface RecurrentEventGenerator
      * @return a list of event instances; might be empty but should not be null
      */
     List<EventInstance> generate(XWikiDocument event, Date dateFrom, Date dateTo);
+
+    /**
+     * iterate over the event instances happening between {@code dateFrom} and {@code dateTo}, in the order of
+     * their start dates. The instances are created on demand, and unlike {@link #generate(XWikiDocument, Date, Date)}
+     * their number is not limited, so the caller decides how many it needs.
+     * The default implementation iterates over the result of {@link #generate(XWikiDocument, Date, Date)}.
+     *
+     * @param event
+     *            the document describing the recurrent event; see {@link #generate(XWikiDocument, Date, Date)}
+     * @param dateFrom
+     *            the date after which generated event instances should end
+     * @param dateTo
+     *            the date before which generated event instances should start
+     * @return an iterator over the event instances; might be empty but should not be null
+     * @since 2.9.12
+     */
+    default Iterator<EventInstance> iterate(XWikiDocument event, Date dateFrom, Date dateTo)
+    {
+        return generate(event, dateFrom, dateTo).iterator();
+    }
 }
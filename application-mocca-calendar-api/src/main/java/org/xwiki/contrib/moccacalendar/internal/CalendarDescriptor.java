@@ -0,0 +1,111 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * The settings of a calendar needed to display its events, read once from the calendar document.
+ * Instances are immutable; a changed calendar gets a new descriptor, see {@link CalendarDescriptorCache}.
+ * <p>
+ * Access rights are not part of the descriptor, as they depend on the user and on other documents;
+ * they are checked on the {@link #getCalendarDocRef() calendar document} instead.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public final class CalendarDescriptor
+{
+    private final DocumentReference calendarDocRef;
+
+    private final String title;
+
+    private final String color;
+
+    private final String textColor;
+
+    private final String holidays;
+
+    private final String timeZone;
+
+    /**
+     * @param calendarDocRef the reference to the calendar document
+     * @param calendarData the calendar object of the document
+     */
+    public CalendarDescriptor(DocumentReference calendarDocRef, BaseObject calendarData)
+    {
+        this.calendarDocRef = calendarDocRef;
+        this.title = calendarData.getStringValue(EventConstants.PROPERTY_TITLE_NAME);
+        this.color = calendarData.getStringValue(EventConstants.PROPERTY_COLOR_NAME);
+        this.textColor = calendarData.getStringValue(EventConstants.PROPERTY_TEXTCOLOR_NAME);
+        this.holidays = calendarData.getLargeStringValue(EventConstants.PROPERTY_HOLIDAYS_NAME);
+        this.timeZone = calendarData.getStringValue(EventConstants.PROPERTY_TIMEZONE_NAME);
+    }
+
+    /**
+     * @return the reference to the calendar document
+     */
+    public DocumentReference getCalendarDocRef()
+    {
+        return calendarDocRef;
+    }
+
+    /**
+     * @return the title of the calendar
+     */
+    public String getTitle()
+    {
+        return title;
+    }
+
+    /**
+     * @return the background color of the events in the calendar
+     */
+    public String getColor()
+    {
+        return color;
+    }
+
+    /**
+     * @return the text color of the events in the calendar; can be empty
+     */
+    public String getTextColor()
+    {
+        return textColor;
+    }
+
+    /**
+     * @return the list of holidays as entered in the calendar; can be empty
+     */
+    public String getHolidays()
+    {
+        return holidays;
+    }
+
+    /**
+     * @return the id of the time zone of the calendar; can be empty
+     */
+    public String getTimeZone()
+    {
+        return timeZone;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceProvider;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * A cache for the settings of calendars, so the calendar document is not loaded again for every event
+ * shown from the calendar.
+ * <p>
+ * The entries are kept by the space of the calendar, including spaces without a calendar, and are removed
+ * when the default page of the space changes, see {@link CalendarDescriptorCacheInvalidationListener}.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = CalendarDescriptorCache.class)
+@Singleton
+public class CalendarDescriptorCache implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "moccacalendar.calendars";
+
+    private static final int CACHE_SIZE = 500;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private EntityReferenceProvider defaultEntityReferenceProvider;
+
+    private Cache<Entry> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache = cacheManager.createNewCache(new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE));
+        } catch (CacheException e) {
+            throw new InitializationException("failed to create the calendar cache", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * get the settings of the calendar an event belongs to.
+     *
+     * @param eventDocRef the reference to the event document
+     * @return the settings of the calendar, or null if the event does not belong to a calendar
+     * @throws XWikiException if the calendar document cannot be loaded
+     */
+    public CalendarDescriptor getCalendarOf(DocumentReference eventDocRef) throws XWikiException
+    {
+        final DocumentReference calendarDocRef = Utils.calendarDocumentOf(eventDocRef, getDefaultPageName());
+        if (calendarDocRef == null) {
+            return null;
+        }
+
+        final String key = serializer.serialize(calendarDocRef.getLastSpaceReference());
+        Entry entry = this.cache.get(key);
+        if (entry == null) {
+            final XWikiContext context = xcontextProvider.get();
+            XWikiDocument calendarDoc = context.getWiki().getDocument(calendarDocRef, context);
+            BaseObject calendarData = calendarDoc
+                .getXObject(calendarDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_CLASS_NAME));
+            entry = new Entry((calendarData == null) ? null
+                : new CalendarDescriptor(calendarDocRef, calendarData));
+            this.cache.set(key, entry);
+            logger.debug("loaded calendar settings for [{}]", calendarDocRef);
+        }
+        return entry.descriptor;
+    }
+
+    /**
+     * remove the settings of a calendar, e.g. because the calendar document has changed.
+     *
+     * @param docRef the reference to a document; if it is the default page of a space,
+     *     the settings of the calendar in that space are removed
+     */
+    public void invalidate(DocumentReference docRef)
+    {
+        if (getDefaultPageName().equals(docRef.getName())) {
+            SpaceReference spaceRef = docRef.getLastSpaceReference();
+            this.cache.remove(serializer.serialize(spaceRef));
+        }
+    }
+
+    private String getDefaultPageName()
+    {
+        return defaultEntityReferenceProvider.getDefaultReference(EntityType.DOCUMENT).getName();
+    }
+
+    /**
+     * a cache entry, which is also needed for spaces without calendar.
+     */
+    private static final class Entry
+    {
+        private final CalendarDescriptor descriptor;
+
+        Entry(CalendarDescriptor descriptor)
+        {
+            this.descriptor = descriptor;
+        }
+    }
+}
@@ -62,10 +62,22 @@ public final class EventConstants
     public static final String PROPERTY_FIRSTINSTANCE_NAME = "firstInstance";
     /** the name of the last instance date property for event recurrency objects. */
     public static final String PROPERTY_LASTINSTANCE_NAME = "lastInstance";
+    /** the name of the frequency property for event recurrency objects. */
+    public static final String PROPERTY_FREQUENCY_NAME = "frequency";
+    /** the name of the recurrence rule property for event recurrency objects with the "rrule" frequency. */
+    public static final String PROPERTY_RRULE_NAME = "rrule";
     /** the name of the start date property for event deletion objects. */
     public static final String PROPERTY_STARTDATE_OF_DELETED_NAME = "eventOrigStartDate";
     /** the name of the original start date property for event modification objects. */
     public static final String PROPERTY_ORIG_STARTDATE_OF_MODIFIED_NAME = PROPERTY_STARTDATE_OF_DELETED_NAME;
+    /** the name of the background color property for calendar objects. */
+    public static final String PROPERTY_COLOR_NAME = "color";
+    /** the name of the text color property for calendar objects. */
+    public static final String PROPERTY_TEXTCOLOR_NAME = "textColor";
+    /** the name of the holidays property for calendar objects. */
+    public static final String PROPERTY_HOLIDAYS_NAME = "holidays";
+    /** the name of the time zone property for calendar objects. */
+    public static final String PROPERTY_TIMEZONE_NAME = "timeZone";
     // public static final String PROPERTY__NAME = "";
 
     private EventConstants()
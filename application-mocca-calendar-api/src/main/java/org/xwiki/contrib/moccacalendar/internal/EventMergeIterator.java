@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.xwiki.contrib.moccacalendar.EventInstance;
+
+/**
+ * Merge several lists of events, each sorted by start date, into one sorted sequence.
+ * <p>
+ * Typically there is one list for all single events and one for each recurrent event. Each step only costs
+ * a logarithm of the number of lists. This replaces sorting the concatenated lists for the queries returning
+ * all events of a date range; the paged and upcoming event queries keep only the events of their page
+ * in an {@link EventPageCollector} instead. Events without start date come first in ascending order.
+ * Events with the same start date are returned in the order of their lists.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public class EventMergeIterator implements Iterator<EventInstance>
+{
+    private final boolean ascending;
+
+    private final PriorityQueue<Position> positions;
+
+    /**
+     * @param series the lists of events to merge. lists which are not sorted in the requested order
+     *     are sorted in place, or reversed if they are sorted the other way round; for already sorted lists
+     *     this only costs a linear check.
+     * @param ascending if the events should be sorted ascending by start date
+     */
+    public EventMergeIterator(List<List<EventInstance>> series, boolean ascending)
+    {
+        this.ascending = ascending;
+        this.positions = new PriorityQueue<>(Math.max(series.size(), 1));
+
+        final Comparator<EventInstance> order = ascending ? new StartDateOrder()
+            : Collections.reverseOrder(new StartDateOrder());
+        for (int i = 0; i < series.size(); i++) {
+            List<EventInstance> events = series.get(i);
+            if (!events.isEmpty()) {
+                // the single events are sorted by the query already
+                if (!isSorted(events, order, false)) {
+                    sortInPlace(events, order);
+                }
+                positions.add(new Position(events, i));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return !positions.isEmpty();
+    }
+
+    @Override
+    public EventInstance next()
+    {
+        Position position = positions.poll();
+        if (position == null) {
+            throw new NoSuchElementException();
+        }
+        EventInstance event = position.events.get(position.index++);
+        if (position.index < position.events.size()) {
+            positions.add(position);
+        }
+        return event;
+    }
+
+    private static void sortInPlace(List<EventInstance> events, Comparator<EventInstance> order)
+    {
+        if (isSorted(events, Collections.reverseOrder(order), true)) {
+            // e.g. the instances of a recurrent event, which are generated ascending, for a descending order
+            Collections.reverse(events);
+        } else {
+            Collections.sort(events, order);
+        }
+    }
+
+    /**
+     * @param strict if events with the same start date are not allowed; reversing a list would change their order,
+     *     while sorting keeps it
+     * @return true if the events are sorted in the given order
+     */
+    private static boolean isSorted(List<EventInstance> events, Comparator<EventInstance> order, boolean strict)
+    {
+        Iterator<EventInstance> iterator = events.iterator();
+        EventInstance previous = iterator.next();
+        while (iterator.hasNext()) {
+            EventInstance event = iterator.next();
+            final int comparison = order.compare(previous, event);
+            if (comparison > 0 || (strict && comparison == 0)) {
+                return false;
+            }
+            previous = event;
+        }
+        return true;
+    }
+
+    private static long startOf(EventInstance event)
+    {
+        return event.getStartMillis();
+    }
+
+    /**
+     * the current position in one of the lists.
+     */
+    private final class Position implements Comparable<Position>
+    {
+        private final List<EventInstance> events;
+
+        private final int seriesIndex;
+
+        private int index;
+
+        Position(List<EventInstance> events, int seriesIndex)
+        {
+            this.events = events;
+            this.seriesIndex = seriesIndex;
+        }
+
+        @Override
+        public int compareTo(Position other)
+        {
+            long start = startOf(events.get(index));
+            long otherStart = startOf(other.events.get(other.index));
+            int result = ascending ? Long.compare(start, otherStart) : Long.compare(otherStart, start);
+            if (result == 0) {
+                result = Integer.compare(seriesIndex, other.seriesIndex);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * ascending order by start date.
+     */
+    private static final class StartDateOrder implements Comparator<EventInstance>
+    {
+        @Override
+        public int compare(EventInstance event1, EventInstance event2)
+        {
+            return Long.compare(startOf(event1), startOf(event2));
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.xwiki.contrib.moccacalendar.EventInstance;
+import org.xwiki.contrib.moccacalendar.EventPage;
+
+/**
+ * Collect the events for one page of a paginated event query.
+ * <p>
+ * Only the events needed for the page are kept, so the memory used is bounded by the page size.
+ * The events are ordered by start date, and events with the same start date by their document and original
+ * start date, so the order is the same for each request.
+ * The cursor consists of the start date of the last event of the previous page, and the number of events with this
+ * start date which have already been returned.
+ * Events without a start date have no place in this order and are not collected; the date range queries feeding
+ * the pages only find events with a start date anyway.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public class EventPageCollector
+{
+    private static final char CURSOR_SEPARATOR = '_';
+
+    private final Comparator<EventInstance> order;
+
+    private final boolean ascending;
+
+    private final int limit;
+
+    private final Long cursorStart;
+
+    private final int cursorSkip;
+
+    private final int capacity;
+
+    /** the collected events, with the last one in the page order on top, to be removed first. */
+    private final PriorityQueue<EventInstance> events;
+
+    /**
+     * @param ascending if the events should be sorted ascending by start date
+     * @param limit the maximal number of events in the page; must be positive
+     * @param cursor the cursor returned with the previous page; null or empty for the first page
+     * @throws IllegalArgumentException if the cursor cannot be parsed
+     */
+    public EventPageCollector(boolean ascending, int limit, String cursor)
+    {
+        this.ascending = ascending;
+        this.limit = limit;
+        this.order = ascending ? new EventOrder() : Collections.reverseOrder(new EventOrder());
+
+        if (cursor == null || cursor.isEmpty()) {
+            this.cursorStart = null;
+            this.cursorSkip = 0;
+        } else {
+            int separatorIndex = cursor.indexOf(CURSOR_SEPARATOR);
+            try {
+                this.cursorStart = Long.valueOf(cursor.substring(0, Math.max(separatorIndex, 0)));
+                this.cursorSkip = Integer.parseInt(cursor.substring(separatorIndex + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("invalid cursor [%s]", cursor), e);
+            }
+        }
+
+        // one more than needed, to find out if there is a next page
+        this.capacity = this.cursorSkip + limit + 1;
+        this.events = new PriorityQueue<>(this.capacity + 1, Collections.reverseOrder(this.order));
+    }
+
+    /**
+     * The start date of the last event of the previous page.
+     *
+     * @return the date or null if this is the first page
+     */
+    public Date getCursorDate()
+    {
+        return (cursorStart == null) ? null : new Date(cursorStart);
+    }
+
+    /**
+     * @return true if the events are sorted ascending by start date
+     */
+    public boolean isAscending()
+    {
+        return ascending;
+    }
+
+    /**
+     * The maximal number of events which might be needed from each source of events.
+     *
+     * @return the number of events
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Add an event; it is only kept if it belongs to this page. Events without a start date are ignored.
+     *
+     * @param event the event
+     */
+    public void add(EventInstance event)
+    {
+        if (event.getStartMillis() == EventInstance.NO_DATE || isBeforeCursor(event.getStartMillis())) {
+            return;
+        }
+        events.add(event);
+        if (events.size() > capacity) {
+            events.poll();
+        }
+    }
+
+    /**
+     * The start date after which (in page order) no more events can become part of this page.
+     * Events starting exactly at this date might still be needed.
+     *
+     * @return the date, or null if more events are needed
+     */
+    public Date getHorizon()
+    {
+        return (events.size() < capacity) ? null : new Date(events.peek().getStartMillis());
+    }
+
+    /**
+     * Check if an event with the given start date would be dropped right away, as the page is full
+     * with events before it (in page order).
+     *
+     * @param start the start date of the event in epoch milliseconds
+     * @return true if the event cannot become part of this page
+     */
+    public boolean isBeyondHorizon(long start)
+    {
+        if (events.size() < capacity) {
+            return false;
+        }
+        final long horizon = events.peek().getStartMillis();
+        return ascending ? start > horizon : start < horizon;
+    }
+
+    /**
+     * Limit the date range for fetching more events to the part relevant for this page.
+     *
+     * @param dateFrom the start of the range
+     * @param dateTo the end of the range
+     * @return the start and end date of the relevant range; as events starting exactly at the horizon might
+     *     still be needed, the range does not become empty when the page is full
+     */
+    public Date[] narrowRange(Date dateFrom, Date dateTo)
+    {
+        Date from = dateFrom;
+        Date to = dateTo;
+        Date cursorDate = getCursorDate();
+        Date horizon = getHorizon();
+        if (ascending) {
+            from = later(from, cursorDate);
+            to = earlier(to, horizon);
+        } else {
+            from = later(from, horizon);
+            to = earlier(to, cursorDate);
+        }
+        return new Date[] { from, to };
+    }
+
+    /**
+     * Create the page from the collected events.
+     *
+     * @return the page
+     */
+    public EventPage createPage()
+    {
+        List<EventInstance> sortedEvents = new ArrayList<>(events);
+        Collections.sort(sortedEvents, order);
+
+        // skip the events already returned with the previous page
+        int first = 0;
+        while (first < cursorSkip && first < sortedEvents.size()
+            && cursorStart.equals(sortedEvents.get(first).getStartMillis())) {
+            first++;
+        }
+        int last = Math.min(first + limit, sortedEvents.size());
+        List<EventInstance> pageEvents = new ArrayList<>(sortedEvents.subList(first, last));
+
+        String nextCursor = null;
+        if (last < sortedEvents.size() && !pageEvents.isEmpty()) {
+            long lastStart = pageEvents.get(pageEvents.size() - 1).getStartMillis();
+            int skip = 0;
+            for (EventInstance event : pageEvents) {
+                if (event.getStartMillis() == lastStart) {
+                    skip++;
+                }
+            }
+            if (cursorStart != null && cursorStart == lastStart) {
+                skip += first;
+            }
+            nextCursor = String.valueOf(lastStart) + CURSOR_SEPARATOR + skip;
+        }
+
+        return new EventPage(pageEvents, nextCursor);
+    }
+
+    private boolean isBeforeCursor(long start)
+    {
+        if (cursorStart == null) {
+            return false;
+        }
+        return ascending ? start < cursorStart : start > cursorStart;
+    }
+
+    private static Date later(Date date1, Date date2)
+    {
+        return (date2 == null || date1.after(date2)) ? date1 : date2;
+    }
+
+    private static Date earlier(Date date1, Date date2)
+    {
+        return (date2 == null || date1.before(date2)) ? date1 : date2;
+    }
+
+    /**
+     * ascending order by start date, with the document reference and the original start date
+     * to order events with the same start date.
+     */
+    private static final class EventOrder implements Comparator<EventInstance>
+    {
+        @Override
+        public int compare(EventInstance event1, EventInstance event2)
+        {
+            int result = Long.compare(event1.getStartMillis(), event2.getStartMillis());
+            if (result == 0) {
+                result = String.valueOf(event1.getEventDocRef()).compareTo(String.valueOf(event2.getEventDocRef()));
+            }
+            if (result == 0) {
+                result = Long.compare(originalStartOf(event1), originalStartOf(event2));
+            }
+            return result;
+        }
+
+        private long originalStartOf(EventInstance event)
+        {
+            return (event.getOriginalStartMillis() == EventInstance.NO_DATE) ? event.getStartMillis()
+                : event.getOriginalStartMillis();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A small helper to build HQL queries for events together with their parameters.
+ * <p>
+ * Date ranges are expressed as plain comparisons with timestamps, so the database can answer them
+ * with an index on the date values; functions like {@code year(...)} or {@code day(...)} on the
+ * date columns would require a scan of all values instead.
+ * The day boundaries are computed in the time zone of the server, as this is the time zone
+ * the dates are stored in.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public class EventQueryBuilder
+{
+    /** the name of the parameter for the start of the date range. */
+    public static final String PARAM_RANGE_START = "rangeStart";
+
+    /** the name of the parameter for the (exclusive) end of the date range. */
+    public static final String PARAM_RANGE_END = "rangeEnd";
+
+    /** the name of the parameter for the spaces of the calendars. */
+    public static final String PARAM_CALENDAR_SPACES = "calendarspaces";
+
+    private static final String AT_LEAST = " >= :";
+
+    private final StringBuilder hql = new StringBuilder();
+
+    private final Map<String, Object> queryParams = new HashMap<>();
+
+    /**
+     * build the hql query.
+     * @return the string builder to construct the query
+     */
+    public StringBuilder getHql()
+    {
+        return hql;
+    }
+
+    /**
+     * the parameters for the query.
+     * @return a map of parameters
+     */
+    public Map<String, Object> getQueryParams()
+    {
+        return queryParams;
+    }
+
+    /**
+     * Add a filter for events taking place at least partially between the start of the day of {@code dateFrom}
+     * and the end of the day of {@code dateTo}.
+     * Events without an end date are found if their start date is within the range.
+     *
+     * @param startDateField the HQL expression for the start date of the event, e.g. {@code startdate.value}
+     * @param endDateField the HQL expression for the end date of the event, e.g. {@code enddate.value}
+     * @param dateFrom the first day of the range
+     * @param dateTo the last day of the range
+     * @return this builder
+     */
+    public EventQueryBuilder addDateRangeFilter(String startDateField, String endDateField, Date dateFrom,
+        Date dateTo)
+    {
+        // start date / lower limit check: find all events which are not finished before the start date
+        // for this, confusingly, one need to compare the end date of the event with the start date for the range
+        // as a complication: to find events without end date, use the start date for them
+        hql.append(" and (").append(endDateField).append(AT_LEAST).append(PARAM_RANGE_START);
+        hql.append(" or ").append(startDateField).append(AT_LEAST).append(PARAM_RANGE_START).append(')');
+
+        // compared to this the upper limit check is straightforward, as we always have a startDate in the event
+        hql.append(" and ").append(startDateField).append(" < :").append(PARAM_RANGE_END);
+
+        queryParams.put(PARAM_RANGE_START, startOfDay(dateFrom));
+        queryParams.put(PARAM_RANGE_END, startOfNextDay(dateTo));
+
+        return this;
+    }
+
+    /**
+     * Add a filter for events in the given calendars, i.e. in the spaces nested below the spaces of the calendars.
+     * Events are pages nested directly below their calendar, so one {@code IN} predicate on the parent of their
+     * space finds them. Only for calendars containing spaces nested more deeply, these spaces are matched by
+     * their prefix, too.
+     *
+     * @param calendarSpaces the local references of the spaces of the calendars; must not be empty
+     * @param deeplyNestedCalendarSpaces the ones of the calendar spaces which contain spaces nested more than
+     *     one level below them
+     * @return this builder
+     */
+    public EventQueryBuilder addCalendarFilter(Collection<String> calendarSpaces,
+        Collection<String> deeplyNestedCalendarSpaces)
+    {
+        hql.insert(0, ", XWikiSpace as eventspace");
+        hql.append(" and doc.space = eventspace.reference and (eventspace.parent in (:")
+            .append(PARAM_CALENDAR_SPACES).append(')');
+        queryParams.put(PARAM_CALENDAR_SPACES, new ArrayList<>(calendarSpaces));
+
+        int index = 0;
+        for (String calendarSpace : deeplyNestedCalendarSpaces) {
+            String spaceParamName = "nestedcalendarspace" + index++;
+            hql.append(" or doc.space like :").append(spaceParamName).append(" escape '!'");
+            queryParams.put(spaceParamName, nestedSpacesPattern(calendarSpace));
+        }
+        hql.append(')');
+
+        return this;
+    }
+
+    /**
+     * Create a {@code LIKE} pattern for the spaces nested below the given space, to be used with {@code escape '!'}.
+     *
+     * @param spaceRefStr the local reference of a space
+     * @return the pattern
+     */
+    public static String nestedSpacesPattern(String spaceRefStr)
+    {
+        return spaceRefStr.replaceAll("([%_!])", "!$1").concat(".%");
+    }
+
+    /**
+     * Compute the start of the day of the given date in the time zone of the server.
+     *
+     * @param date a date; should not be null
+     * @return the start of the same day
+     */
+    public static Date startOfDay(Date date)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        return cal.getTime();
+    }
+
+    /**
+     * Compute the start of the day after the given date in the time zone of the server.
+     * This is not necessarily 24 hours after the start of the day, e.g. when daylight saving time starts or ends.
+     *
+     * @param date a date; should not be null
+     * @return the start of the next day
+     */
+    public static Date startOfNextDay(Date date)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(startOfDay(date));
+        cal.add(Calendar.DAY_OF_MONTH, 1);
+        return cal.getTime();
+    }
+}
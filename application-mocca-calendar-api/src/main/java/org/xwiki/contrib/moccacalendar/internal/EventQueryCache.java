@@ -0,0 +1,215 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * A cache for the results of event queries.
+ * <p>
+ * The entries are shared by all users: the key of an entry contains all query parameters and the current wiki,
+ * and the cached events are the ones found before checking the access rights. Callers have to drop the events
+ * the current user cannot view. The cache keeps only the plain data of the events, see
+ * {@link EventInstance#copyPlainData()}: titles and descriptions which are rendered on demand depend on the user
+ * and would keep the event documents in memory, so callers have to fill them in again for the current request.
+ * As an event change can affect any date range, the cache is cleared completely if an event, calendar
+ * or rights related document changes, see {@link EventQueryCacheInvalidationListener}.
+ * The cache keeps its own copies of the event instances, so callers can change the events they get.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = EventQueryCache.class)
+@Singleton
+public class EventQueryCache implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "moccacalendar.events";
+
+    private static final int CACHE_SIZE = 500;
+
+    /** entries expire after one hour, in case the rendered data depends on something we do not track. */
+    private static final int CACHE_LIFESPAN_SECONDS = 3600;
+
+    private static final char KEY_SEPARATOR = ':';
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    private Cache<List<EventInstance>> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration configuration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        configuration.getLRUEvictionConfiguration().setLifespan(CACHE_LIFESPAN_SECONDS);
+        try {
+            this.cache = cacheManager.createNewCache(configuration);
+        } catch (CacheException e) {
+            throw new InitializationException("failed to create the event query cache", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * Create the cache key for a query in the current wiki.
+     *
+     * @param kind the kind of query, to distinguish queries which return differently filled event instances
+     * @param dateFrom the start range
+     * @param dateTo the end range
+     * @param filter the location filter
+     * @param parentReference the page reference for the location filter
+     * @param sortAscending the sort order
+     * @param calendars the calendars to display events from
+     * @return the key
+     */
+    public String createKey(String kind, Date dateFrom, Date dateTo, String filter, String parentReference,
+        boolean sortAscending, Collection<String> calendars)
+    {
+        StringBuilder key = new StringBuilder();
+        appendKeyPart(key, kind);
+        appendKeyPart(key, xcontextProvider.get().getWikiId());
+        appendKeyPart(key, (dateFrom == null) ? null : String.valueOf(dateFrom.getTime()));
+        appendKeyPart(key, (dateTo == null) ? null : String.valueOf(dateTo.getTime()));
+        appendKeyPart(key, filter);
+        appendKeyPart(key, parentReference);
+        appendKeyPart(key, String.valueOf(sortAscending));
+
+        // the calendars are a filter, so their order does not matter
+        List<String> sortedCalendars = new ArrayList<>(calendars);
+        Collections.sort(sortedCalendars);
+        for (String calendar : sortedCalendars) {
+            appendKeyPart(key, calendar);
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * prefix each part with its length, so parts containing the separator cannot produce the same key.
+     */
+    private void appendKeyPart(StringBuilder key, String part)
+    {
+        if (part == null) {
+            key.append('-').append(KEY_SEPARATOR);
+        } else {
+            key.append(part.length()).append(KEY_SEPARATOR).append(part);
+        }
+    }
+
+    /**
+     * Get the cached events for a query.
+     *
+     * @param key the key created by {@link #createKey}
+     * @return a copy of the plain data of the cached events, or null if the query is not cached
+     */
+    public List<EventInstance> get(String key)
+    {
+        List<EventInstance> events = this.cache.get(key);
+        if (events == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return copyOf(events);
+    }
+
+    /**
+     * Store the result of a query; only the plain data of the events is kept.
+     *
+     * @param key the key created by {@link #createKey}
+     * @param events the events found by the query, before checking the access rights
+     */
+    public void put(String key, List<EventInstance> events)
+    {
+        List<EventInstance> copies = new ArrayList<>(events.size());
+        for (EventInstance event : events) {
+            copies.add(event.copyPlainData());
+        }
+        this.cache.set(key, copies);
+    }
+
+    private List<EventInstance> copyOf(List<EventInstance> events)
+    {
+        List<EventInstance> copies = new ArrayList<>(events.size());
+        for (EventInstance event : events) {
+            copies.add(event.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void invalidateAll()
+    {
+        this.cache.removeAll();
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of queries not found in the cache
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+}
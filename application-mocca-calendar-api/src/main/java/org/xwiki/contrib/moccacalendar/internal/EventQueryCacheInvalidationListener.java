@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Clear the {@link EventQueryCache} if a document changes which might affect the result of an event query.
+ * These are the events and calendars, and also documents with rights or group memberships,
+ * as the results depend on the access rights of the user.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Named("org.xwiki.contrib.moccacalendar.internal.EventQueryCacheInvalidationListener")
+@Singleton
+@Component
+public class EventQueryCacheInvalidationListener implements EventListener
+{
+    private static final List<String> RELEVANT_CLASS_NAMES = Arrays.asList(
+        EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME,
+        EventConstants.MOCCA_CALENDAR_EVENT_RECURRENCY_CLASS_NAME,
+        EventConstants.MOCCA_CALENDAR_CLASS_NAME,
+        "XWiki.XWikiRights",
+        "XWiki.XWikiGlobalRights",
+        "XWiki.XWikiGroups");
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private EventQueryCache eventQueryCache;
+
+    @Override
+    public String getName()
+    {
+        return getClass().getName();
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.asList(new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument doc = (XWikiDocument) source;
+
+        // for deleted documents the objects are only found in the original document
+        if (isRelevant(doc) || isRelevant(doc.getOriginalDocument())) {
+            logger.debug("document [{}] changed; clear the event query cache", doc.getDocumentReference());
+            eventQueryCache.invalidateAll();
+        }
+    }
+
+    private boolean isRelevant(XWikiDocument doc)
+    {
+        if (doc == null) {
+            return false;
+        }
+        for (String className : RELEVANT_CLASS_NAMES) {
+            if (doc.getXObject(doc.resolveClassReference(className)) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
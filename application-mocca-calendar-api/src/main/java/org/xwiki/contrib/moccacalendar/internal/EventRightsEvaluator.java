@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceProvider;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Check access rights for many event or calendar documents at once.
+ * <p>
+ * Documents without rights objects of their own have the same rights as their space, so the rights
+ * are checked only once per space for them. For nested pages this goes one level further up, if the space of
+ * the page has no rights defined in its preferences either. Documents which have rights objects of their own,
+ * or where this cannot be determined, are checked one by one.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = EventRightsEvaluator.class)
+@Singleton
+public class EventRightsEvaluator
+{
+    private static final String SPACE_PREFERENCES_NAME = "WebPreferences";
+
+    /** the maximal number of document names used in one query. */
+    private static final int MAX_NAMES_PER_QUERY = 500;
+
+    private static final String RIGHTS_QUERY = "select distinct obj.name from BaseObject as obj"
+        + " where obj.className in ('XWiki.XWikiRights', 'XWiki.XWikiGlobalRights') and obj.name in (:names)";
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @Inject
+    private EntityReferenceProvider defaultEntityReferenceProvider;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Filter the given documents by the access right of the user.
+     *
+     * @param right the right to check
+     * @param userReference the user; can be null for the guest user
+     * @param references the documents to check
+     * @return the documents where the user has the given right, in the order of the given references
+     */
+    public List<DocumentReference> filterAccessible(Right right, DocumentReference userReference,
+        Collection<DocumentReference> references)
+    {
+        final Set<String> namesWithRights = namesWithRightObjects(references);
+        final Map<EntityReference, Boolean> accessByEntity = new HashMap<>();
+        final List<DocumentReference> accessibleRefs = new ArrayList<>();
+
+        for (DocumentReference reference : references) {
+            EntityReference rightsEntity = (namesWithRights == null)
+                ? reference : rightsEntityOf(reference, namesWithRights);
+            Boolean access = accessByEntity.get(rightsEntity);
+            if (access == null) {
+                access = authorizationManager.hasAccess(right, userReference, rightsEntity);
+                accessByEntity.put(rightsEntity, access);
+            }
+            if (access) {
+                accessibleRefs.add(reference);
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("checked [{}] right for [{}] documents with [{}] checks", right, references.size(),
+                accessByEntity.size());
+        }
+
+        return accessibleRefs;
+    }
+
+    /**
+     * find the entity which defines the rights of the document.
+     */
+    private EntityReference rightsEntityOf(DocumentReference reference, Set<String> namesWithRights)
+    {
+        if (!isInCurrentWiki(reference) || namesWithRights.contains(localSerializer.serialize(reference))) {
+            return reference;
+        }
+
+        final SpaceReference spaceRef = reference.getLastSpaceReference();
+        if (isDefaultPage(reference) && spaceRef.getParent() instanceof SpaceReference
+            && !namesWithRights.contains(localSerializer.serialize(preferencesOf(spaceRef)))) {
+            return spaceRef.getParent();
+        }
+
+        return spaceRef;
+    }
+
+    /**
+     * find all documents which might contain rights relevant for the given documents:
+     * the documents themselves, and for nested pages the preferences of their space.
+     * @return the local names of all these documents with rights objects; null if this cannot be determined
+     */
+    private Set<String> namesWithRightObjects(Collection<DocumentReference> references)
+    {
+        final Set<String> names = new HashSet<>();
+        for (DocumentReference reference : references) {
+            if (isInCurrentWiki(reference)) {
+                names.add(localSerializer.serialize(reference));
+                if (isDefaultPage(reference)) {
+                    names.add(localSerializer.serialize(preferencesOf(reference.getLastSpaceReference())));
+                }
+            }
+        }
+
+        final Set<String> namesWithRights = new HashSet<>();
+        final List<String> allNames = new ArrayList<>(names);
+        try {
+            for (int i = 0; i < allNames.size(); i += MAX_NAMES_PER_QUERY) {
+                Query query = queryManager.createQuery(RIGHTS_QUERY, Query.HQL);
+                query.bindValue("names", allNames.subList(i, Math.min(i + MAX_NAMES_PER_QUERY, allNames.size())));
+                List<String> results = query.execute();
+                namesWithRights.addAll(results);
+            }
+        } catch (QueryException qe) {
+            logger.warn("could not look up rights objects; checking every document separately", qe);
+            return null;
+        }
+
+        return namesWithRights;
+    }
+
+    private boolean isInCurrentWiki(DocumentReference reference)
+    {
+        return reference.getWikiReference().getName().equals(xcontextProvider.get().getWikiId());
+    }
+
+    private boolean isDefaultPage(DocumentReference reference)
+    {
+        return defaultEntityReferenceProvider.getDefaultReference(EntityType.DOCUMENT).getName()
+            .equals(reference.getName());
+    }
+
+    private DocumentReference preferencesOf(SpaceReference spaceRef)
+    {
+        return new DocumentReference(SPACE_PREFERENCES_NAME, spaceRef);
+    }
+}
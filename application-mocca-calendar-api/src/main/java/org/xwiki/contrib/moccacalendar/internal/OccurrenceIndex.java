@@ -0,0 +1,268 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.moccacalendar.internal.generators.ModificationIndex;
+import org.xwiki.contrib.moccacalendar.internal.generators.RecurrenceSpec;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * An in-memory index of the occurrences of recurrent events in the date ranges they have been expanded for,
+ * so a query can skip the recurrent events without an instance in its date range without loading their documents.
+ * <p>
+ * An event is indexed with the instances found while expanding it for a query; nothing is expanded only to fill
+ * the index. Until then, and for date ranges outside the indexed range, the index cannot tell and the event has
+ * to be expanded. Each entry keeps the version of the event document it has been built from and is ignored
+ * for any other version, so an entry built from an outdated document never hides an instance, even if it has been
+ * stored after {@link OccurrenceIndexListener} has removed the entries of the changed document.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = OccurrenceIndex.class)
+@Singleton
+public class OccurrenceIndex implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "moccacalendar.occurrences";
+
+    private static final int CACHE_SIZE = 10000;
+
+    /** unused entries expire after one day. */
+    private static final int CACHE_LIFESPAN_SECONDS = 24 * 3600;
+
+    /** entries are not extended beyond this many instances. */
+    private static final int MAX_OCCURRENCES = 10000;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    private Cache<Entry> cache;
+
+    /** incremented whenever all entries are removed; entries computed before are not stored. */
+    private long generation;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration configuration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        configuration.getLRUEvictionConfiguration().setLifespan(CACHE_LIFESPAN_SECONDS);
+        try {
+            this.cache = cacheManager.createNewCache(configuration);
+        } catch (CacheException e) {
+            throw new InitializationException("failed to create the occurrence index", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * check if a recurrent event might have an instance in the given date range.
+     *
+     * @param eventDocRef the reference to the document of the recurrent event
+     * @param version the current version of the document of the recurrent event
+     * @param dateFrom the start of the date range
+     * @param dateTo the end of the date range
+     * @return false if the event is known to have no instance in the date range, true otherwise
+     */
+    public boolean mayOccurIn(DocumentReference eventDocRef, String version, Date dateFrom, Date dateTo)
+    {
+        final Entry entry = this.cache.get(serializer.serialize(eventDocRef));
+        return entry == null || entry.mayOccurIn(version, dateFrom.getTime(), dateTo.getTime());
+    }
+
+    /**
+     * get the value to pass to {@link #index(XWikiDocument, long, RecurrenceSpec, Date, Date, long[])}.
+     * it has to be taken before the recurrence of the event is read, so the instances are not stored
+     * if the calendar of the event has changed meanwhile.
+     *
+     * @return the current generation of the index
+     */
+    public synchronized long getGeneration()
+    {
+        return this.generation;
+    }
+
+    /**
+     * add the instances of a recurrent event found in a date range to the index.
+     * if the event is indexed already for an adjacent or overlapping date range, the ranges are merged.
+     *
+     * @param eventDoc the document of the recurrent event
+     * @param indexGeneration the value of {@link #getGeneration()} before the instances have been computed
+     * @param spec the recurrence of the event the instances have been computed from
+     * @param dateFrom the start of the date range
+     * @param dateTo the end of the date range
+     * @param starts the sorted start dates of all instances in the date range which are not excluded
+     */
+    public void index(XWikiDocument eventDoc, long indexGeneration, RecurrenceSpec spec, Date dateFrom,
+        Date dateTo, long[] starts)
+    {
+        if (eventDoc.isNew() || eventDoc.isMetaDataDirty() || starts.length > MAX_OCCURRENCES) {
+            return;
+        }
+        final String key = serializer.serialize(eventDoc.getDocumentReference());
+        Entry entry = new Entry(eventDoc.getVersion(), dateFrom.getTime(), dateTo.getTime(), starts,
+            spec.getDuration(), spec.getModificationIndex());
+        synchronized (this) {
+            if (indexGeneration != this.generation) {
+                return;
+            }
+            final Entry previous = this.cache.get(key);
+            if (previous != null) {
+                final Entry merged = previous.merge(entry);
+                if (merged == previous) {
+                    return;
+                }
+                if (merged != null) {
+                    entry = merged;
+                } else {
+                    logger.debug("index of event [{}] restarted with range [{}, {}]", key, dateFrom, dateTo);
+                }
+            }
+            this.cache.set(key, entry);
+        }
+    }
+
+    /**
+     * remove a recurrent event from the index, e.g. because its document has changed.
+     *
+     * @param eventDocRef the reference to the document of the recurrent event
+     */
+    public void invalidate(DocumentReference eventDocRef)
+    {
+        this.cache.remove(serializer.serialize(eventDocRef));
+    }
+
+    /**
+     * remove all events from the index, e.g. because the time zone or the holidays of a calendar have changed.
+     */
+    public synchronized void invalidateAll()
+    {
+        this.generation++;
+        this.cache.removeAll();
+    }
+
+    /**
+     * the instances of one version of a recurrent event in a date range: the start dates of the generated instances
+     * and the modified instances. the original dates of modified instances are kept, too, so the index
+     * might return an event which has no instance in a date range, but never the other way round.
+     */
+    static final class Entry
+    {
+        private final String version;
+
+        private final long windowFrom;
+
+        private final long windowTo;
+
+        private final long[] starts;
+
+        private final long duration;
+
+        private final ModificationIndex modifications;
+
+        Entry(String version, long windowFrom, long windowTo, long[] starts, long duration,
+            ModificationIndex modifications)
+        {
+            this.version = version;
+            this.windowFrom = windowFrom;
+            this.windowTo = windowTo;
+            this.starts = starts;
+            this.duration = duration;
+            this.modifications = modifications;
+        }
+
+        boolean mayOccurIn(String documentVersion, long dateFrom, long dateTo)
+        {
+            if (!version.equals(documentVersion) || dateFrom < windowFrom || dateTo > windowTo) {
+                return true;
+            }
+            int index = Arrays.binarySearch(starts, dateFrom - duration);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return (index < starts.length && starts[index] <= dateTo)
+                || !modifications.overlapping(dateFrom, dateTo).isEmpty();
+        }
+
+        /**
+         * @return this entry if it covers the other one already, an entry covering both date ranges
+         *         if they overlap or touch, or null if they cannot be merged
+         */
+        Entry merge(Entry other)
+        {
+            if (!version.equals(other.version) || other.windowFrom > windowTo || other.windowTo < windowFrom) {
+                return null;
+            }
+            if (other.windowFrom >= windowFrom && other.windowTo <= windowTo) {
+                return this;
+            }
+            final long[] merged = new long[starts.length + other.starts.length];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < starts.length || j < other.starts.length) {
+                final long next;
+                if (j == other.starts.length || (i < starts.length && starts[i] <= other.starts[j])) {
+                    next = starts[i++];
+                } else {
+                    next = other.starts[j++];
+                }
+                if (size == 0 || merged[size - 1] != next) {
+                    merged[size++] = next;
+                }
+            }
+            if (size > MAX_OCCURRENCES) {
+                return null;
+            }
+            return new Entry(version, Math.min(windowFrom, other.windowFrom), Math.max(windowTo, other.windowTo),
+                Arrays.copyOf(merged, size), other.duration, other.modifications);
+        }
+    }
+}
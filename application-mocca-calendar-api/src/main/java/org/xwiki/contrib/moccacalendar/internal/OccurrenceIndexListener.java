@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keep the {@link OccurrenceIndex} current: remove an event from the index when its document is updated
+ * or deleted, and clear the index when a calendar changes, as the instances depend on the time zone
+ * and the holidays of the calendar.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Named("org.xwiki.contrib.moccacalendar.internal.OccurrenceIndexListener")
+@Singleton
+@Component
+public class OccurrenceIndexListener implements EventListener
+{
+    @Inject
+    private OccurrenceIndex occurrenceIndex;
+
+    @Override
+    public String getName()
+    {
+        return getClass().getName();
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.asList(new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument doc = (XWikiDocument) source;
+        if (Utils.isCalendar(doc) || Utils.isCalendar(doc.getOriginalDocument())) {
+            occurrenceIndex.invalidateAll();
+        } else {
+            occurrenceIndex.invalidate(doc.getDocumentReference());
+        }
+    }
+}
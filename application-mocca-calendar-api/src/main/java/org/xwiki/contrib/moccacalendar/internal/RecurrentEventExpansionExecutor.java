@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+
+/**
+ * Run the expansion of recurrent events in parallel, if there are enough of them.
+ * <p>
+ * The number of threads and the minimal number of recurrent events for a parallel expansion can be set
+ * in {@code xwiki.properties} with {@code moccacalendar.expansion.parallelism} and
+ * {@code moccacalendar.expansion.parallelThreshold}. The parallel expansion is disabled by default;
+ * a parallelism of one or less keeps it disabled.
+ * Each task runs with its own clone of the execution context of the caller, so rendering and access to documents
+ * behave as in the request thread.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = RecurrentEventExpansionExecutor.class)
+@Singleton
+public class RecurrentEventExpansionExecutor implements Initializable, Disposable
+{
+    private static final String PARALLELISM_PROPERTY = "moccacalendar.expansion.parallelism";
+
+    private static final String THRESHOLD_PROPERTY = "moccacalendar.expansion.parallelThreshold";
+
+    private static final int DEFAULT_PARALLELISM = 1;
+
+    private static final int DEFAULT_THRESHOLD = 50;
+
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private static final String UNEXPECTED_ERROR_MESSAGE = "unexpected error while expanding recurrent events";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private Logger logger;
+
+    private ThreadPoolExecutor executor;
+
+    private int threshold;
+
+    @Override
+    public void initialize()
+    {
+        final int parallelism = configuration.getProperty(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM);
+        this.threshold = configuration.getProperty(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+
+        if (parallelism > 1) {
+            this.executor = new ThreadPoolExecutor(parallelism, parallelism, THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ExpansionThreadFactory());
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+        logger.debug("expand recurrent events with [{}] threads if there are at least [{}] of them", parallelism,
+            threshold);
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Check if the given number of tasks should be run in parallel.
+     *
+     * @param taskCount the number of tasks
+     * @return true if {@link #invokeAll(List)} runs the tasks in parallel
+     */
+    public boolean isParallel(int taskCount)
+    {
+        return this.executor != null && taskCount >= this.threshold;
+    }
+
+    /**
+     * Run the given tasks and wait until all are done. The tasks run in parallel if {@link #isParallel(int)}
+     * is true for their number, otherwise one after the other in the current thread.
+     *
+     * @param <T> the type of the results
+     * @param tasks the tasks; they should handle their expected errors themselves
+     * @return the results of the tasks in the order of the tasks; results of tasks which failed are missing
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks)
+    {
+        if (isParallel(tasks.size())) {
+            try {
+                return invokeInParallel(tasks);
+            } catch (ExecutionContextException e) {
+                logger.warn("cannot clone the execution context; expanding recurrent events one after the other", e);
+            }
+        }
+
+        final List<T> results = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            try {
+                results.add(task.call());
+            } catch (Exception e) {
+                logger.error(UNEXPECTED_ERROR_MESSAGE, e);
+            }
+        }
+        return results;
+    }
+
+    private <T> List<T> invokeInParallel(List<Callable<T>> tasks) throws ExecutionContextException
+    {
+        // clone the context in the calling thread, as it is not thread safe
+        final ExecutionContext callerContext = execution.getContext();
+        final List<Callable<T>> contextualTasks = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            contextualTasks.add(withContext(task, executionContextManager.clone(callerContext)));
+        }
+
+        final List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : this.executor.invokeAll(contextualTasks)) {
+                addResult(results, future);
+            }
+        } catch (InterruptedException e) {
+            logger.warn("expansion of recurrent events has been interrupted");
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    private <T> void addResult(List<T> results, Future<T> future) throws InterruptedException
+    {
+        try {
+            results.add(future.get());
+        } catch (ExecutionException e) {
+            logger.error(UNEXPECTED_ERROR_MESSAGE, e.getCause());
+        }
+    }
+
+    /**
+     * wrap the task to run it with the given execution context, which is removed from the thread afterwards.
+     */
+    private <T> Callable<T> withContext(final Callable<T> task, final ExecutionContext context)
+    {
+        return new Callable<T>()
+        {
+            @Override
+            public T call() throws Exception
+            {
+                execution.setContext(context);
+                try {
+                    return task.call();
+                } finally {
+                    execution.removeContext();
+                }
+            }
+        };
+    }
+
+    /**
+     * create named daemon threads, so they are easy to spot in thread dumps and do not block a shutdown.
+     */
+    private static final class ExpansionThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "Mocca Calendar event expansion " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.rendering.syntax.Syntax;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * A cache for the rendered titles and descriptions of events and event modifications, so the same
+ * wiki markup is not rendered again for each instance of a recurrent event.
+ * <p>
+ * There is one entry per document, checked against the version of the document, with the renderings of the title
+ * and of the properties of its objects by target syntax. As macros in the content might depend on who views it,
+ * the current user and locale are part of the key, too. The entry of a document is removed when the document
+ * is updated or deleted, see {@link RenderedContentCacheInvalidationListener}. Documents which are new or have
+ * unsaved changes are never cached.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = RenderedContentCache.class)
+@Singleton
+public class RenderedContentCache implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "moccacalendar.renderedcontent";
+
+    private static final int CACHE_SIZE = 1000;
+
+    /** entries expire after one hour, in case the rendered content depends on other documents. */
+    private static final int CACHE_LIFESPAN_SECONDS = 3600;
+
+    /** the maximal number of renderings kept for one document; they are all dropped if there are more. */
+    private static final int MAX_RENDERINGS_PER_DOCUMENT = 500;
+
+    private static final char KEY_SEPARATOR = ':';
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    @Named("compact")
+    private EntityReferenceSerializer<String> compactWikiSerializer;
+
+    private Cache<DocumentRenderings> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration configuration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        configuration.getLRUEvictionConfiguration().setLifespan(CACHE_LIFESPAN_SECONDS);
+        try {
+            this.cache = cacheManager.createNewCache(configuration);
+        } catch (CacheException e) {
+            throw new InitializationException("failed to create the rendered content cache", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * render a property of an object in the syntax of its document.
+     *
+     * @param source the object with the property, e.g. an event or an event modification
+     * @param propertyName the name of the property to render
+     * @param targetSyntax the syntax to render to
+     * @return the rendered content of the property
+     */
+    public String render(BaseObject source, String propertyName, Syntax targetSyntax)
+    {
+        final XWikiContext context = xcontextProvider.get();
+        final DocumentRenderings renderings = getRenderings(source.getOwnerDocument());
+        if (renderings == null) {
+            return doRender(source, propertyName, targetSyntax, context);
+        }
+
+        StringBuilder key = new StringBuilder();
+        appendKeyPart(key, compactWikiSerializer.serialize(source.getXClassReference(), source.getDocumentReference()));
+        appendKeyPart(key, String.valueOf(source.getNumber()));
+        appendKeyPart(key, propertyName);
+        final String contextKey = appendContextKey(key, targetSyntax, context);
+        String rendered = renderings.get(contextKey);
+        if (rendered == null) {
+            rendered = doRender(source, propertyName, targetSyntax, context);
+            renderings.put(contextKey, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * render the title of a document.
+     *
+     * @param doc the document, e.g. of an event
+     * @param targetSyntax the syntax to render to
+     * @return the rendered title of the document
+     */
+    public String renderTitle(XWikiDocument doc, Syntax targetSyntax)
+    {
+        final XWikiContext context = xcontextProvider.get();
+        final DocumentRenderings renderings = getRenderings(doc);
+        if (renderings == null) {
+            return doc.getRenderedTitle(targetSyntax, context);
+        }
+
+        // a missing first part tells the title apart from the properties of objects
+        StringBuilder key = new StringBuilder();
+        appendKeyPart(key, null);
+        final String contextKey = appendContextKey(key, targetSyntax, context);
+        String rendered = renderings.get(contextKey);
+        if (rendered == null) {
+            rendered = doc.getRenderedTitle(targetSyntax, context);
+            renderings.put(contextKey, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * remove the renderings of a document.
+     *
+     * @param docRef the reference to the document
+     */
+    public void invalidate(DocumentReference docRef)
+    {
+        this.cache.remove(serializer.serialize(docRef));
+    }
+
+    private String doRender(BaseObject source, String propertyName, Syntax targetSyntax, XWikiContext context)
+    {
+        final XWikiDocument doc = source.getOwnerDocument();
+        return doc.getRenderedContent(source.getStringValue(propertyName), doc.getSyntax().toIdString(),
+            targetSyntax.toIdString(), context);
+    }
+
+    /**
+     * @return the renderings of the current version of the document, or null if it must not be cached
+     */
+    private DocumentRenderings getRenderings(XWikiDocument doc)
+    {
+        if (doc.isNew() || doc.isMetaDataDirty()) {
+            return null;
+        }
+
+        final String docKey = serializer.serialize(doc.getDocumentReference());
+        DocumentRenderings renderings = this.cache.get(docKey);
+        if (renderings == null || !renderings.isOf(doc)) {
+            renderings = new DocumentRenderings(doc.getVersion());
+            this.cache.set(docKey, renderings);
+        }
+        return renderings;
+    }
+
+    private String appendContextKey(StringBuilder key, Syntax targetSyntax, XWikiContext context)
+    {
+        final DocumentReference userReference = context.getUserReference();
+        final Locale locale = context.getLocale();
+
+        appendKeyPart(key, targetSyntax.toIdString());
+        appendKeyPart(key, (userReference == null) ? null : compactWikiSerializer.serialize(userReference));
+        appendKeyPart(key, (locale == null) ? null : locale.toString());
+        return key.toString();
+    }
+
+    /**
+     * prefix each part with its length, so parts containing the separator cannot produce the same key.
+     */
+    private void appendKeyPart(StringBuilder key, String part)
+    {
+        if (part == null) {
+            key.append('-').append(KEY_SEPARATOR);
+        } else {
+            key.append(part.length()).append(KEY_SEPARATOR).append(part);
+        }
+    }
+
+    /**
+     * the renderings of one version of a document.
+     */
+    private static final class DocumentRenderings
+    {
+        private final String version;
+
+        private final ConcurrentMap<String, String> renderings = new ConcurrentHashMap<>();
+
+        DocumentRenderings(String version)
+        {
+            this.version = version;
+        }
+
+        boolean isOf(XWikiDocument doc)
+        {
+            return version != null && version.equals(doc.getVersion());
+        }
+
+        String get(String key)
+        {
+            return renderings.get(key);
+        }
+
+        void put(String key, String rendered)
+        {
+            if (renderings.size() >= MAX_RENDERINGS_PER_DOCUMENT) {
+                renderings.clear();
+            }
+            if (rendered != null) {
+                renderings.put(key, rendered);
+            }
+        }
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+import org.xwiki.contrib.moccacalendar.RecurrentEventGenerator;
+import org.xwiki.contrib.moccacalendar.internal.generators.RecurrenceSpec;
+import org.xwiki.contrib.moccacalendar.internal.generators.RecurrenceSpecCache;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * An in-memory index of the upcoming occurrences of all recurrent events of a wiki.
+ * <p>
+ * Each recurrent event is represented by a cursor on its next occurrence, and the cursors are kept
+ * in a priority queue ordered by these occurrences. The cursors only compute as many occurrences as have been
+ * asked for, and are moved forward lazily when their occurrence has ended. So finding the next few occurrences
+ * of all events only touches the events which actually have one of them, no matter how many events exist.
+ * <p>
+ * The index of a wiki is built when it is first used, so starting the wiki does not have to load all
+ * recurrent events, and kept current by {@link UpcomingOccurrenceIndexListener}. Changes arriving while
+ * the index is built are recorded and applied once it is complete.
+ * Occurrences are ordered by their original start date; deleted occurrences are skipped,
+ * but modified occurrences are not moved.
+ * Only occurrences within a horizon of some years are indexed.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = UpcomingOccurrenceIndex.class)
+@Singleton
+public class UpcomingOccurrenceIndex
+{
+    /** how many years after the build of the index the occurrences are indexed. */
+    private static final int HORIZON_YEARS = 10;
+
+    private static final String RECURRENT_EVENTS_QUERY = String.format(
+        "select distinct doc.fullName from Document doc, doc.object(%s) as event where event.recurrent = 1"
+            + " and doc.fullName <> 'MoccaCalendar.MoccaCalendarEventTemplate'",
+        EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME);
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Inject
+    private Map<String, RecurrentEventGenerator> eventGenerators;
+
+    @Inject
+    private RecurrenceSpecCache recurrenceSpecCache;
+
+    private final Map<String, WikiIndex> indexes = new ConcurrentHashMap<>();
+
+    /** the changes to the wikis whose index is being built. */
+    private final Map<String, PendingChanges> pendingChanges = new ConcurrentHashMap<>();
+
+    /**
+     * An occurrence of a recurrent event.
+     */
+    public static final class Occurrence
+    {
+        private final DocumentReference eventDocRef;
+
+        private final long start;
+
+        private Occurrence(DocumentReference eventDocRef, long start)
+        {
+            this.eventDocRef = eventDocRef;
+            this.start = start;
+        }
+
+        /**
+         * @return the reference to the document of the recurrent event
+         */
+        public DocumentReference getEventDocRef()
+        {
+            return eventDocRef;
+        }
+
+        /**
+         * @return the original start date of the occurrence in epoch milliseconds
+         */
+        public long getStart()
+        {
+            return start;
+        }
+    }
+
+    /**
+     * build the index of the given wiki from scratch.
+     */
+    private WikiIndex build(String wikiId)
+    {
+        final XWikiContext context = xcontextProvider.get();
+        final Date now = new Date();
+        final WikiIndex index = new WikiIndex(horizonOf(now));
+
+        List<String> eventNames = Collections.emptyList();
+        try {
+            Query query = queryManager.createQuery(RECURRENT_EVENTS_QUERY, Query.XWQL);
+            query.setWiki(wikiId);
+            eventNames = query.execute();
+        } catch (QueryException e) {
+            logger.error("cannot find the recurrent events of wiki [{}]", wikiId, e);
+        }
+
+        final WikiReference wikiReference = new WikiReference(wikiId);
+        for (String eventName : eventNames) {
+            DocumentReference eventDocRef = documentReferenceResolver.resolve(eventName, wikiReference);
+            try {
+                index.put(eventDocRef, createCursor(context.getWiki().getDocument(eventDocRef, context), now,
+                    index.horizon));
+            } catch (XWikiException e) {
+                logger.warn("cannot load recurrent event [{}]", eventDocRef, e);
+            }
+        }
+
+        logger.debug("indexed [{}] recurrent events of wiki [{}]", eventNames.size(), wikiId);
+        return index;
+    }
+
+    /**
+     * Drop the index of the given wiki, e.g. if a calendar has changed in a way which affects its events.
+     * The index is built again when it is used the next time.
+     *
+     * @param wikiId the id of the wiki
+     */
+    public void removeWiki(String wikiId)
+    {
+        // first the pending changes, as a build in progress removes them after it has added its index
+        final PendingChanges changes = pendingChanges.get(wikiId);
+        if (changes != null) {
+            changes.wikiChanged = true;
+        }
+        indexes.remove(wikiId);
+    }
+
+    /**
+     * Update the index for an event document which has been created or changed.
+     * Documents which are not (or no longer) recurrent events are removed from the index.
+     *
+     * @param eventDoc the document
+     */
+    public void update(XWikiDocument eventDoc)
+    {
+        final DocumentReference eventDocRef = eventDoc.getDocumentReference();
+        final WikiIndex index = getIndexOrRecord(eventDocRef);
+        if (index != null) {
+            index.put(eventDocRef, createCursor(eventDoc, new Date(), index.horizon));
+        }
+    }
+
+    /**
+     * Remove an event document from the index.
+     *
+     * @param eventDocRef the reference to the document
+     */
+    public void remove(DocumentReference eventDocRef)
+    {
+        final WikiIndex index = getIndexOrRecord(eventDocRef);
+        if (index != null) {
+            index.put(eventDocRef, null);
+        }
+    }
+
+    /**
+     * @return the index of the wiki of the event, or null if there is none yet; if it is being built,
+     *     the event is recorded to be updated once the index is complete
+     */
+    private WikiIndex getIndexOrRecord(DocumentReference eventDocRef)
+    {
+        final String wikiId = eventDocRef.getWikiReference().getName();
+        WikiIndex index = indexes.get(wikiId);
+        if (index == null) {
+            final PendingChanges changes = pendingChanges.get(wikiId);
+            if (changes != null) {
+                changes.events.add(eventDocRef);
+            }
+            // the build might have completed meanwhile; then its index has to be updated directly
+            index = indexes.get(wikiId);
+        }
+        return index;
+    }
+
+    /**
+     * Find the next occurrences of all recurrent events in a wiki.
+     *
+     * @param wikiId the id of the wiki
+     * @param count the maximal number of occurrences
+     * @param now the date after which the occurrences should end
+     * @param filter a filter for the events, e.g. to check the access rights; it is called for many events at once
+     *     and at most once per event, and returns the accepted ones
+     * @return the occurrences ordered by their start date
+     */
+    public List<Occurrence> next(String wikiId, int count, Date now,
+        Function<Collection<DocumentReference>, Collection<DocumentReference>> filter)
+    {
+        return getIndex(wikiId).next(count, now.getTime(), filter);
+    }
+
+    /**
+     * get the index of a wiki, and build it if there is none yet.
+     */
+    private WikiIndex getIndex(String wikiId)
+    {
+        WikiIndex index = indexes.get(wikiId);
+        if (index != null) {
+            return index;
+        }
+
+        // builds are rare, so one at a time is enough
+        synchronized (this) {
+            index = indexes.get(wikiId);
+            if (index != null) {
+                return index;
+            }
+            final PendingChanges changes = new PendingChanges();
+            pendingChanges.put(wikiId, changes);
+            try {
+                index = build(wikiId);
+                indexes.put(wikiId, index);
+            } finally {
+                pendingChanges.remove(wikiId);
+            }
+
+            // changes arriving from now on update the index directly; the ones recorded so far are applied here
+            if (changes.wikiChanged) {
+                indexes.remove(wikiId, index);
+            } else {
+                applyChanges(index, changes.events);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * update the index for events which have changed while it has been built.
+     */
+    private void applyChanges(WikiIndex index, Set<DocumentReference> eventDocRefs)
+    {
+        final XWikiContext context = xcontextProvider.get();
+        for (DocumentReference eventDocRef : eventDocRefs) {
+            try {
+                index.put(eventDocRef, createCursor(context.getWiki().getDocument(eventDocRef, context),
+                    new Date(), index.horizon));
+            } catch (XWikiException e) {
+                logger.warn("cannot load recurrent event [{}]", eventDocRef, e);
+                index.put(eventDocRef, null);
+            }
+        }
+    }
+
+    /**
+     * @param now the current date
+     * @return the date up to which occurrences are indexed
+     */
+    public Date horizonOf(Date now)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(now);
+        cal.add(Calendar.YEAR, HORIZON_YEARS);
+        return cal.getTime();
+    }
+
+    /**
+     * @return a cursor on the occurrences of the event, or null if the document is not a usable recurrent event
+     */
+    private SeriesCursor createCursor(XWikiDocument eventDoc, Date dateFrom, Date dateTo)
+    {
+        BaseObject eventData = eventDoc
+            .getXObject(eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
+        BaseObject eventRecData = eventDoc
+            .getXObject(eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_RECURRENCY_CLASS_NAME));
+        if (eventData == null || eventRecData == null
+            || eventData.getIntValue(EventConstants.PROPERTY_RECURRENT_NAME) != 1
+            || eventData.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME) == null) {
+            return null;
+        }
+
+        final RecurrenceSpec spec = recurrenceSpecCache.get(eventDoc);
+        final RecurrentEventGenerator generator = eventGenerators.get(spec.getFrequency());
+        if (generator == null) {
+            logger.debug("no generator for frequency [{}] of event [{}]; not indexed", spec.getFrequency(),
+                eventDoc.getDocumentReference());
+            return null;
+        }
+
+        return new SeriesCursor(eventDoc.getDocumentReference(), spec.getDuration(),
+            generator.iterate(eventDoc, dateFrom, dateTo), spec.newExclusionFilter());
+    }
+
+    /**
+     * the changes to a wiki while its index is being built.
+     */
+    private static final class PendingChanges
+    {
+        private final Set<DocumentReference> events = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean wikiChanged;
+    }
+
+    /**
+     * the index of one wiki.
+     */
+    static final class WikiIndex
+    {
+        private static final Comparator<SeriesCursor> BY_NEXT_START = new Comparator<SeriesCursor>()
+        {
+            @Override
+            public int compare(SeriesCursor cursor1, SeriesCursor cursor2)
+            {
+                return Long.compare(cursor1.getStart(0), cursor2.getStart(0));
+            }
+        };
+
+        private static final Comparator<long[]> BY_START = new Comparator<long[]>()
+        {
+            @Override
+            public int compare(long[] position1, long[] position2)
+            {
+                return Long.compare(position1[0], position2[0]);
+            }
+        };
+
+        private final Date horizon;
+
+        private final Map<DocumentReference, SeriesCursor> cursors = new HashMap<>();
+
+        private final PriorityQueue<SeriesCursor> queue = new PriorityQueue<>(BY_NEXT_START);
+
+        WikiIndex(Date horizon)
+        {
+            this.horizon = horizon;
+        }
+
+        synchronized void put(DocumentReference eventDocRef, SeriesCursor cursor)
+        {
+            SeriesCursor previous = cursors.remove(eventDocRef);
+            if (previous != null) {
+                queue.remove(previous);
+            }
+            if (cursor != null && cursor.hasNext()) {
+                cursors.put(eventDocRef, cursor);
+                queue.add(cursor);
+            }
+        }
+
+        /**
+         * find the next occurrences of the events accepted by the filter.
+         * the filter is called without holding the lock of the index, so it can take its time.
+         */
+        List<Occurrence> next(int count, long now,
+            Function<Collection<DocumentReference>, Collection<DocumentReference>> filter)
+        {
+            final Set<DocumentReference> accepted = new HashSet<>();
+            final Set<DocumentReference> rejected = new HashSet<>();
+            while (true) {
+                final List<Occurrence> occurrences = candidates(count, now, rejected);
+                final Set<DocumentReference> unchecked = new LinkedHashSet<>();
+                for (Occurrence occurrence : occurrences) {
+                    if (!accepted.contains(occurrence.eventDocRef)) {
+                        unchecked.add(occurrence.eventDocRef);
+                    }
+                }
+                if (unchecked.isEmpty()) {
+                    return occurrences;
+                }
+
+                accepted.addAll(filter.apply(unchecked));
+                boolean allAccepted = true;
+                for (DocumentReference eventDocRef : unchecked) {
+                    if (!accepted.contains(eventDocRef)) {
+                        rejected.add(eventDocRef);
+                        allAccepted = false;
+                    }
+                }
+                if (allAccepted) {
+                    return occurrences;
+                }
+                // look again without the rejected events; each round rejects at least one more event
+            }
+        }
+
+        /**
+         * find the next occurrences of all events but the rejected ones.
+         */
+        synchronized List<Occurrence> candidates(int count, long now, Set<DocumentReference> rejected)
+        {
+            // merge the occurrences of the cursors in the queue, without moving the cursors:
+            // the first occurrence of each cursor comes from the queue, the following ones from a second queue
+            // of positions, each being the start date, the index of the cursor and the index of the occurrence
+            final List<Occurrence> occurrences = new ArrayList<>();
+            final List<SeriesCursor> polled = new ArrayList<>();
+            final PriorityQueue<long[]> following = new PriorityQueue<>(BY_START);
+            while (occurrences.size() < count) {
+                final SeriesCursor head = queue.peek();
+                final long[] position = following.peek();
+                if (head == null && position == null) {
+                    break;
+                }
+                if (position == null || (head != null && head.getStart(0) <= position[0])) {
+                    queue.poll();
+                    if (head.hasEndedBefore(now)) {
+                        // the queue is ordered by start, so an ended occurrence might be behind one still going on;
+                        // move the cursor forward and look at it again later
+                        head.skipEndedBefore(now);
+                        if (head.hasNext()) {
+                            queue.add(head);
+                        } else {
+                            cursors.remove(head.eventDocRef);
+                        }
+                        continue;
+                    }
+                    polled.add(head);
+                    if (!rejected.contains(head.eventDocRef)) {
+                        occurrences.add(new Occurrence(head.eventDocRef, head.getStart(0)));
+                        addPosition(following, polled.size() - 1, head, 1);
+                    }
+                } else {
+                    following.poll();
+                    final SeriesCursor cursor = polled.get((int) position[1]);
+                    occurrences.add(new Occurrence(cursor.eventDocRef, position[0]));
+                    addPosition(following, (int) position[1], cursor, (int) position[2] + 1);
+                }
+            }
+            queue.addAll(polled);
+
+            return occurrences;
+        }
+
+        private void addPosition(PriorityQueue<long[]> following, int cursorIndex, SeriesCursor cursor, int index)
+        {
+            if (cursor.hasNext(index)) {
+                following.add(new long[] {cursor.getStart(index), cursorIndex, index});
+            }
+        }
+    }
+
+    /**
+     * the occurrences of one recurrent event which have been computed and have not ended yet,
+     * together with the iterator to compute the following ones.
+     */
+    static final class SeriesCursor
+    {
+        private final DocumentReference eventDocRef;
+
+        private final long duration;
+
+        private final Iterator<EventInstance> instances;
+
+        private final LongPredicate excluded;
+
+        private long[] starts = new long[4];
+
+        private int offset;
+
+        private int size;
+
+        SeriesCursor(DocumentReference eventDocRef, long duration, Iterator<EventInstance> instances,
+            LongPredicate excluded)
+        {
+            this.eventDocRef = eventDocRef;
+            this.duration = duration;
+            this.instances = instances;
+            this.excluded = excluded;
+        }
+
+        boolean hasNext()
+        {
+            return hasNext(0);
+        }
+
+        /**
+         * @return true if there is an occurrence with the given index, counted from the first one not ended
+         */
+        boolean hasNext(int index)
+        {
+            while (size <= index && instances.hasNext()) {
+                final long start = instances.next().getStartMillis();
+                if (!excluded.test(start)) {
+                    append(start);
+                }
+            }
+            return index < size;
+        }
+
+        long getStart(int index)
+        {
+            return hasNext(index) ? starts[offset + index] : Long.MAX_VALUE;
+        }
+
+        boolean hasEndedBefore(long now)
+        {
+            return hasNext() && starts[offset] + duration < now;
+        }
+
+        void skipEndedBefore(long now)
+        {
+            while (hasEndedBefore(now)) {
+                offset++;
+                size--;
+            }
+        }
+
+        private void append(long start)
+        {
+            if (offset + size == starts.length) {
+                // drop the ended occurrences at the start, and grow only if more than half is still in use
+                if (size >= starts.length / 2) {
+                    starts = Arrays.copyOf(starts, 2 * starts.length);
+                }
+                System.arraycopy(starts, offset, starts, 0, size);
+                offset = 0;
+            }
+            starts[offset + size++] = start;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keep the {@link UpcomingOccurrenceIndex} current: update it when an event document is saved or deleted,
+ * and drop the index of a wiki when a calendar changes, as the time zone and the holidays of the calendar
+ * affect the occurrences of its events.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Named("org.xwiki.contrib.moccacalendar.internal.UpcomingOccurrenceIndexListener")
+@Singleton
+@Component
+public class UpcomingOccurrenceIndexListener implements EventListener
+{
+    @Inject
+    private UpcomingOccurrenceIndex upcomingOccurrenceIndex;
+
+    @Override
+    public String getName()
+    {
+        return getClass().getName();
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.asList(new WikiDeletedEvent(), new DocumentCreatedEvent(), new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof WikiDeletedEvent) {
+            upcomingOccurrenceIndex.removeWiki(((WikiDeletedEvent) event).getWikiId());
+            return;
+        }
+
+        final XWikiDocument doc = (XWikiDocument) source;
+        if (Utils.isCalendar(doc) || Utils.isCalendar(doc.getOriginalDocument())) {
+            // we do not know which events are affected, so build the complete index again when it is used
+            upcomingOccurrenceIndex.removeWiki(doc.getDocumentReference().getWikiReference().getName());
+        } else if (event instanceof DocumentDeletedEvent) {
+            upcomingOccurrenceIndex.remove(doc.getDocumentReference());
+        } else {
+            // the index drops documents which are no event (anymore) by itself
+            upcomingOccurrenceIndex.update(doc);
+        }
+    }
+}
@@ -21,11 +21,11 @@ package org.xwiki.contrib.moccacalendar.internal;
 
 import java.util.Date;
 
-import org.xwiki.contrib.moccacalendar.EventInstance;
-import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.stability.Unstable;
 
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -93,22 +93,42 @@ public final class Utils
     }
 
     /**
-     * fill the description of the event instance from the value in the given base object.
-     * The base object should either be a MoccaCalendarEvent or a MoccaCalendarEventModification.
+     * find the calendar document an event belongs to.
+     * the calendar page should be the default page of the parent space.
+     * this is the space of the page if the event page is terminal, and the parent
+     * of the events page space, if the page is non-terminal.
      *
-     * @param eventData the xwiki object to get the information from
-     * @param context the current context
-     * @param event the event instance whose description will be set
+     * @param eventDocRef the reference to the event document
+     * @param defaultPageName the name of the default page of a space
+     * @return the reference to the calendar document, or null if the event cannot belong to a calendar
+     * @since 2.9.12
      */
-    public static void fillDescription(BaseObject eventData, XWikiContext context, EventInstance event)
+    public static DocumentReference calendarDocumentOf(DocumentReference eventDocRef, String defaultPageName)
     {
-        XWikiDocument eventDoc = eventData.getOwnerDocument();
-        String idString = eventDoc.getSyntax().toIdString();
-        String description = eventData.getStringValue(EventConstants.PROPERTY_DESCRIPTION_NAME);
-        event.setDescription(
-            eventDoc.getRenderedContent(description, idString, Syntax.PLAIN_1_0.toIdString(), context));
-        event.setDescriptionHtml(
-            eventDoc.getRenderedContent(description, idString, Syntax.HTML_5_0.toIdString(), context));
+        SpaceReference parentSpaceRef = null;
+        if (defaultPageName.equals(eventDocRef.getName())) {
+            EntityReference parentRef = eventDocRef.getLastSpaceReference().getParent();
+            if ((parentRef != null) && (parentRef instanceof SpaceReference)) {
+                parentSpaceRef = (SpaceReference) parentRef;
+            }
+        } else {
+            parentSpaceRef = eventDocRef.getLastSpaceReference();
+        }
+
+        return (parentSpaceRef == null) ? null : new DocumentReference(defaultPageName, parentSpaceRef);
+    }
+
+    /**
+     * check if a document contains a calendar.
+     *
+     * @param doc a document; can be null
+     * @return true if the document has a calendar object
+     * @since 2.9.12
+     */
+    public static boolean isCalendar(XWikiDocument doc)
+    {
+        return doc != null
+            && doc.getXObject(doc.resolveClassReference(EventConstants.MOCCA_CALENDAR_CLASS_NAME)) != null;
     }
 
 }
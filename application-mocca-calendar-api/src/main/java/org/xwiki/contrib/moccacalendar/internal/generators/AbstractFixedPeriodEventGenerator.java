@@ -0,0 +1,155 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Base class for recurrent events with a period of a fixed number of days, weeks, months or years.
+ * <p>
+ * The day of each instance is computed from the start of the series by date arithmetic,
+ * so the generator can jump directly to the requested date range instead of stepping through all
+ * earlier periods. As the arithmetic is done on local dates, the instances keep their
+ * local time across daylight saving time changes.
+ * <p>
+ * The results are the same as if the series was stepped through one period at a time, as the generators
+ * did before: a monthly event on the 31st moves to the 30th after the first month with 30 days,
+ * and to the 28th after the first February, and stays there. The deleted and modified instances of
+ * existing events are stored with these dates.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public abstract class AbstractFixedPeriodEventGenerator extends AbstractRecurrentEventGenerator
+{
+    private static final int DAYS_PER_WEEK = 7;
+
+    private static final int MONTHS_PER_YEAR = 12;
+
+    /**
+     * no month is shorter, so a day of month up to this one never moves.
+     */
+    private static final int SHORTEST_MONTH = 28;
+
+    /**
+     * after this number of periods a series has passed the shortest of the months it visits; even for yearly
+     * events in February this includes a year which is not a leap year.
+     */
+    private static final int MAX_PERIODS_TO_SHORTEST_MONTH = 48;
+
+    private final ChronoUnit unit;
+
+    private final int amount;
+
+    /**
+     * @param unit the unit of the period; one of {@link ChronoUnit#DAYS}, {@link ChronoUnit#WEEKS},
+     *     {@link ChronoUnit#MONTHS} or {@link ChronoUnit#YEARS}
+     * @param amount the number of units in one period
+     */
+    protected AbstractFixedPeriodEventGenerator(ChronoUnit unit, int amount)
+    {
+        this.unit = unit;
+        this.amount = amount;
+    }
+
+    /**
+     * increment the day by one period.
+     */
+    @Override
+    protected long incrementByOnePeriod(long epochDay)
+    {
+        return addPeriods(epochDay, 1);
+    }
+
+    @Override
+    protected int countPeriodsBefore(long startDay, long targetDay)
+    {
+        final long units;
+        switch (unit) {
+            case MONTHS:
+                units = monthsBetween(startDay, targetDay);
+                break;
+            case YEARS:
+                units = monthsBetween(startDay, targetDay) / MONTHS_PER_YEAR;
+                break;
+            case WEEKS:
+                units = (targetDay - startDay) / DAYS_PER_WEEK;
+                break;
+            default:
+                units = targetDay - startDay;
+                break;
+        }
+        // the period in the month (or on the day) of the target might start after the target
+        return (int) Math.max(0, units / amount - 1);
+    }
+
+    /**
+     * compute the period from the start of the series. For periods of months and years the day of month
+     * is the one a step by step computation reaches: the smallest length of the months passed so far.
+     */
+    @Override
+    protected long getDayOfPeriod(long startDay, int period, long previousDay)
+    {
+        if (unit != ChronoUnit.MONTHS && unit != ChronoUnit.YEARS) {
+            return addPeriods(startDay, period);
+        }
+
+        final LocalDate start = LocalDate.ofEpochDay(startDay);
+        final YearMonth startMonth = YearMonth.from(start);
+        int dayOfMonth = start.getDayOfMonth();
+        final int steps = Math.min(period, MAX_PERIODS_TO_SHORTEST_MONTH);
+        for (int i = 1; i <= steps && dayOfMonth > SHORTEST_MONTH; i++) {
+            dayOfMonth = Math.min(dayOfMonth, addPeriods(startMonth, i).lengthOfMonth());
+        }
+        final YearMonth month = addPeriods(startMonth, period);
+        return month.atDay(Math.min(dayOfMonth, month.lengthOfMonth())).toEpochDay();
+    }
+
+    private YearMonth addPeriods(YearMonth month, int periods)
+    {
+        final long months = (long) amount * periods;
+        return month.plusMonths((unit == ChronoUnit.YEARS) ? months * MONTHS_PER_YEAR : months);
+    }
+
+    private long addPeriods(long epochDay, int periods)
+    {
+        final long units = (long) amount * periods;
+        switch (unit) {
+            case MONTHS:
+                return LocalDate.ofEpochDay(epochDay).plusMonths(units).toEpochDay();
+            case YEARS:
+                return LocalDate.ofEpochDay(epochDay).plusYears(units).toEpochDay();
+            case WEEKS:
+                return epochDay + DAYS_PER_WEEK * units;
+            default:
+                return epochDay + units;
+        }
+    }
+
+    private static long monthsBetween(long startDay, long targetDay)
+    {
+        LocalDate start = LocalDate.ofEpochDay(startDay);
+        LocalDate target = LocalDate.ofEpochDay(targetDay);
+        return (target.getYear() - start.getYear()) * (long) MONTHS_PER_YEAR
+            + target.getMonthValue() - start.getMonthValue();
+    }
+}
@@ -19,27 +19,29 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 import javax.inject.Inject;
 
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.xwiki.contrib.moccacalendar.EventInstance;
 import org.xwiki.contrib.moccacalendar.RecurrentEventGenerator;
-import org.xwiki.contrib.moccacalendar.internal.EventConstants;
-import org.xwiki.contrib.moccacalendar.internal.Utils;
 
 import com.xpn.xwiki.doc.XWikiDocument;
-import com.xpn.xwiki.objects.BaseObject;
 
 /**
  * Base class to create recurrent events if the frequency is sufficient regular allow this.
- * Concrete subclasses must implement the {@link #incrementCalendarByOnePeriod(Calendar)} method.
+ * Concrete subclasses must implement the {@link #incrementByOnePeriod(long)} method;
+ * subclasses with a period of fixed calendar length should extend {@link AbstractFixedPeriodEventGenerator}
+ * instead, which jumps directly to the requested date range.
+ * <p>
+ * The instances are computed as epoch milliseconds in the local time zone, and event instances are only created
+ * for the result, so generating a large number of instances creates little garbage.
  *
  * @version $Id: $
  * @since 2.7
@@ -47,106 +49,199 @@ import com.xpn.xwiki.objects.BaseObject;
 public abstract class AbstractRecurrentEventGenerator implements RecurrentEventGenerator
 {
 
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private RecurrenceSpecCache recurrenceSpecCache;
+
+    @Inject
+    private RecurrenceConfiguration recurrenceConfiguration;
+
     /**
-     * a limit for the maximum of generated instance.
-     * this is mainly used to avoid crashes due to a runaway generator.
+     * increment the day of an instance by the period of the event.
+     * E.g. in case of weekly events add seven days.
+     * @param epochDay the local day of an instance, counted in days from 1970-01-01
+     * @return the local day of the next instance
      */
-    protected static final int MAX_INSTANCES = 1000;
+    protected abstract long incrementByOnePeriod(long epochDay);
 
-    @Inject
-    private Logger logger;
+    /**
+     * count the periods which can be skipped from the start of the series without passing the target day.
+     * The result may be smaller than the actual number of periods; the remaining ones are stepped through.
+     * The default implementation skips nothing, so the series is stepped through from its start.
+     * Subclasses overriding this method must also override {@link #getDayOfPeriod(long, int, long)}.
+     *
+     * @param startDay the local day of the first instance of the series, counted in days from 1970-01-01
+     * @param targetDay the local day to seek to
+     * @return the number of periods which start strictly before the target day, or less; never negative
+     * @since 2.9.12
+     */
+    protected int countPeriodsBefore(long startDay, long targetDay)
+    {
+        return 0;
+    }
 
     /**
-     * increment the calendar by the period of the event.
-     * E.g. in case of weekly events increment it by one week.
-     * @param cal the calendar to increment; should never be null
+     * compute the local day of the given period of the series.
+     * The default implementation increments the day of the previous period, which is only correct if
+     * the periods are requested one after the other; this is always the case unless
+     * {@link #countPeriodsBefore(long, long)} has been overridden.
+     *
+     * @param startDay the local day of the first instance of the series, counted in days from 1970-01-01
+     * @param period the number of the period, counted from zero for the first instance
+     * @param previousDay the local day of the previous period
+     * @return the local day of the period
+     * @since 2.9.12
      */
-    protected abstract void incrementCalendarByOnePeriod(Calendar cal);
-    
+    protected long getDayOfPeriod(long startDay, int period, long previousDay)
+    {
+        return incrementByOnePeriod(previousDay);
+    }
+
     /**
      * generate a list of event instances for the given date range
-     * by incrementing the calendar from the start date until it has covered
-     * the complete date range.
+     * by seeking the first period in the date range and incrementing the day
+     * from there until it has covered the complete date range.
      * @see {@link RecurrentEventGenerator#generate(XWikiDocument, Date, Date)}
      */
     @Override
     public List<EventInstance> generate(final XWikiDocument event, final Date dateFrom, final Date dateTo)
     {
-        BaseObject eventData = event
-            .getXObject(event.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
-        BaseObject eventRecData = event
-            .getXObject(event.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_RECURRENCY_CLASS_NAME));
-    
-        Date startDate = eventData.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME);
-        Date endDate = eventData.getDateValue(EventConstants.PROPERTY_ENDDATE_NAME);
-        final boolean allDay = eventData.getIntValue(EventConstants.PROPERTY_ALLDAY_NAME) == 1;
-        if (allDay) {
-            // we need to cut out the start time:
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(startDate);
-            cal.set(Calendar.MILLISECOND, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.HOUR_OF_DAY, 0);
-            startDate = cal.getTime();
-        }
-        if (endDate == null) {
-            endDate = Utils.guessEndDate(startDate, allDay);
-        }
-        final long duration = endDate.getTime() - startDate.getTime();
-    
-        Date firstInstance = eventRecData.getDateValue(EventConstants.PROPERTY_FIRSTINSTANCE_NAME);
-        Date lastInstance = eventRecData.getDateValue(EventConstants.PROPERTY_LASTINSTANCE_NAME);
-    
-        Date actualDateFrom = dateFrom;
-        if (firstInstance != null && firstInstance.after(dateFrom)) {
-            actualDateFrom = firstInstance;
+        final RecurrenceSpec spec = recurrenceSpecCache.get(event);
+        final LocalTimeConverter converter = new LocalTimeConverter(spec.getZone());
+
+        final long actualDateFrom = spec.rangeStart(dateFrom);
+        if (dateTo.getTime() < actualDateFrom) {
+            return Collections.emptyList();
         }
-        Date actualDateTo = dateTo;
-        // FIXME: this is likely not to be correct
-        if (lastInstance != null && lastInstance.before(dateTo)) {
-            actualDateTo = lastInstance;
+
+        final int maxInstances = recurrenceConfiguration.getMaxInstances();
+        OccurrenceList occurrences = new OccurrenceList();
+        occurrences.addAll(iterateStarts(event, spec, converter, actualDateFrom, spec.rangeEnd(dateTo)),
+            spec.getDuration(), maxInstances);
+        if (occurrences.size() >= maxInstances) {
+            logger.info("maximal number of events generated for [{}]; stopping", event);
         }
-    
-        if (dateTo.before(actualDateFrom)) {
-            return Collections.emptyList();
+
+        // only now create the objects for the instances
+        return occurrences.toEventInstances(spec.getDateTimeZone());
+    }
+
+    /**
+     * {@inheritDoc} The instances are computed one period at a time, when they are requested.
+     */
+    @Override
+    public Iterator<EventInstance> iterate(final XWikiDocument event, final Date dateFrom, final Date dateTo)
+    {
+        final RecurrenceSpec spec = recurrenceSpecCache.get(event);
+        final LocalTimeConverter converter = new LocalTimeConverter(spec.getZone());
+
+        final long actualDateFrom = spec.rangeStart(dateFrom);
+        if (dateTo.getTime() < actualDateFrom) {
+            return Collections.emptyIterator();
         }
-    
-        return createEventInstances(event, startDate, duration, actualDateFrom, actualDateTo);
+
+        return new EventInstanceIterator(iterateStarts(event, spec, converter, actualDateFrom, spec.rangeEnd(dateTo)),
+            spec.getDuration(), spec.getDateTimeZone());
     }
 
-    // separate helper method to actually create the events
-    // to keep checkstyle from complaining
-    private List<EventInstance> createEventInstances(final XWikiDocument event, final Date startDate,
-        final long duration, final Date dateFrom, final Date dateTo)
+    /**
+     * iterate over the start dates of the instances of the event in the given date range.
+     * The default implementation steps through the periods of the series; subclasses can override this
+     * if the instances depend on more than the series itself.
+     *
+     * @param event the document of the event
+     * @param spec the compiled data of the series
+     * @param converter the converter for the time zone of the series; it must not be used elsewhere meanwhile
+     * @param dateFrom the date after which the instances should end
+     * @param dateTo the date before which the instances should start
+     * @return the start dates of the instances in epoch milliseconds
+     */
+    PrimitiveIterator.OfLong iterateStarts(XWikiDocument event, RecurrenceSpec spec, LocalTimeConverter converter,
+        long dateFrom, long dateTo)
     {
-        Calendar cal = Calendar.getInstance();
-    
-        cal.setTime(startDate);
-    
-        // stupid, inefficient, but should work
-        while (cal.getTimeInMillis() + duration < dateFrom.getTime()) {
-            incrementCalendarByOnePeriod(cal);
+        return iterateStarts(converter, spec.getStart(), spec.getDuration(), dateFrom, dateTo);
+    }
+
+    /**
+     * iterate over the start dates of the instances of the series in the given date range.
+     * the iterator keeps only the current period, so it does not matter how many instances the range contains.
+     *
+     * @param converter the converter for the time zone of the series; it must not be used elsewhere meanwhile
+     * @param start the start of the first instance of the series
+     * @param duration the duration of an instance
+     * @param dateFrom the date after which the instances should end
+     * @param dateTo the date before which the instances should start
+     * @return the start dates of the instances in epoch milliseconds
+     */
+    PrimitiveIterator.OfLong iterateStarts(LocalTimeConverter converter, long start, long duration, long dateFrom,
+        long dateTo)
+    {
+        return new PeriodIterator(converter, start, duration, dateFrom, dateTo);
+    }
+
+    /**
+     * step through the periods of the series, starting with the first one in the date range.
+     */
+    private final class PeriodIterator implements PrimitiveIterator.OfLong
+    {
+        private final LocalTimeConverter converter;
+
+        private final long startDay;
+
+        private final long millisOfDay;
+
+        private final long dateTo;
+
+        private int period;
+
+        private long day;
+
+        private long nextStart;
+
+        PeriodIterator(LocalTimeConverter converter, long start, long duration, long dateFrom, long dateTo)
+        {
+            this.converter = converter;
+            this.dateTo = dateTo;
+            // all instances start at the same local time; only the day changes
+            this.startDay = converter.toEpochDay(start);
+            this.millisOfDay = converter.toMillisOfDay(start);
+
+            this.period = countPeriodsBefore(startDay, converter.toEpochDay(dateFrom - duration));
+            this.day = startDay;
+            this.nextStart = start;
+            if (period > 0) {
+                day = getDayOfPeriod(startDay, period, day);
+                nextStart = converter.toEpochMilli(day, millisOfDay);
+            }
+            while (nextStart + duration < dateFrom) {
+                moveToNextPeriod();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            // FIXME: isn't it endDate instead of the start date that should be after dateFrom instead ?
+            return nextStart <= dateTo;
         }
-    
-        List<EventInstance> eventInstances = new ArrayList<>();
-        // FIXME: isn't it endDate instead of the start date that should be after dateFrom instead ?
-        while (cal.getTime().compareTo(dateTo) <= 0) {
-            EventInstance instance = new EventInstance();
-            instance.setStartDate(new DateTime(cal.getTimeInMillis()));
-            instance.setEndDate(new DateTime(cal.getTimeInMillis() + duration));
-    
-            eventInstances.add(instance);
-    
-            if (eventInstances.size() >= MAX_INSTANCES) {
-                logger.info("maximal number of events generated for [{}]; stopping", event);
-                break;
+
+        @Override
+        public long nextLong()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            final long current = nextStart;
+            moveToNextPeriod();
+            return current;
+        }
 
-            incrementCalendarByOnePeriod(cal);
+        private void moveToNextPeriod()
+        {
+            day = getDayOfPeriod(startDay, ++period, day);
+            nextStart = converter.toEpochMilli(day, millisOfDay);
         }
-    
-        return eventInstances;
     }
-
 }
@@ -19,7 +19,7 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.Calendar;
+import java.time.temporal.ChronoUnit;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -35,13 +35,13 @@ import org.xwiki.component.annotation.Component;
 @Component
 @Singleton
 @Named("biweekly")
-public class BiWeeklyEventGenerator extends AbstractRecurrentEventGenerator
+public class BiWeeklyEventGenerator extends AbstractFixedPeriodEventGenerator
 {
     /**
-     * increment the calendar by two weeks.
+     * create a generator with a period of two weeks.
      */
-    protected void incrementCalendarByOnePeriod(Calendar cal)
+    public BiWeeklyEventGenerator()
     {
-        cal.add(Calendar.WEEK_OF_YEAR, 2);
+        super(ChronoUnit.WEEKS, 2);
     }
 }
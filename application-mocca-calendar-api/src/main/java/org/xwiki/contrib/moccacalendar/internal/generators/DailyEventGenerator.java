@@ -19,7 +19,7 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.Calendar;
+import java.time.temporal.ChronoUnit;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -35,13 +35,13 @@ import org.xwiki.component.annotation.Component;
 @Component
 @Singleton
 @Named("daily")
-public class DailyEventGenerator extends AbstractRecurrentEventGenerator
+public class DailyEventGenerator extends AbstractFixedPeriodEventGenerator
 {
     /**
-     * increment the calendar by one day.
+     * create a generator with a period of one day.
      */
-    protected void incrementCalendarByOnePeriod(Calendar cal)
+    public DailyEventGenerator()
     {
-        cal.add(Calendar.DAY_OF_YEAR, 1);
+        super(ChronoUnit.DAYS, 1);
     }
 }
@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of days, kept as a bitmap with one bit per day.
+ * <p>
+ * The days are numbered from zero, e.g. relative to the first day of a series. Only blocks which contain
+ * at least one day are stored, so a few days far apart do not need a large bitmap; looking up a day
+ * is a binary search over the blocks and a bit test, without creating any objects.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public final class DayBitmap
+{
+    /** the bitmap without any days. */
+    public static final DayBitmap EMPTY = new DayBitmap(new int[0], new long[0][], 0);
+
+    private static final int WORD_SHIFT = 6;
+
+    private static final int BLOCK_SHIFT = 12;
+
+    private static final int WORDS_PER_BLOCK = 1 << (BLOCK_SHIFT - WORD_SHIFT);
+
+    private static final long MAX_DAY = ((long) Integer.MAX_VALUE << BLOCK_SHIFT) - 1;
+
+    /** the numbers of the blocks with at least one day, ascending. */
+    private final int[] blockKeys;
+
+    private final long[][] blocks;
+
+    private final int cardinality;
+
+    private DayBitmap(int[] blockKeys, long[][] blocks, int cardinality)
+    {
+        this.blockKeys = blockKeys;
+        this.blocks = blocks;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * create a bitmap for the given days. negative days and duplicates are ignored.
+     *
+     * @param days the numbers of the days, in any order; the array is sorted by this method
+     * @return the bitmap of the days
+     */
+    public static DayBitmap of(long[] days)
+    {
+        Arrays.sort(days);
+        int[] keys = new int[days.length];
+        long[][] blocks = new long[days.length][];
+        int blockCount = 0;
+        int cardinality = 0;
+        for (long day : days) {
+            if (day < 0 || day > MAX_DAY) {
+                continue;
+            }
+            final int key = (int) (day >>> BLOCK_SHIFT);
+            if (blockCount == 0 || keys[blockCount - 1] != key) {
+                keys[blockCount] = key;
+                blocks[blockCount] = new long[WORDS_PER_BLOCK];
+                blockCount++;
+            }
+            final long[] block = blocks[blockCount - 1];
+            final int bit = (int) (day & ((1 << BLOCK_SHIFT) - 1));
+            final long mask = 1L << bit;
+            if ((block[bit >>> WORD_SHIFT] & mask) == 0) {
+                block[bit >>> WORD_SHIFT] |= mask;
+                cardinality++;
+            }
+        }
+        if (cardinality == 0) {
+            return EMPTY;
+        }
+        return new DayBitmap(Arrays.copyOf(keys, blockCount), Arrays.copyOf(blocks, blockCount), cardinality);
+    }
+
+    /**
+     * @param day the number of a day
+     * @return true if the day is in the set
+     */
+    public boolean contains(long day)
+    {
+        if (day < 0 || day > MAX_DAY || cardinality == 0) {
+            return false;
+        }
+        final int index = Arrays.binarySearch(blockKeys, (int) (day >>> BLOCK_SHIFT));
+        if (index < 0) {
+            return false;
+        }
+        final int bit = (int) (day & ((1 << BLOCK_SHIFT) - 1));
+        return (blocks[index][bit >>> WORD_SHIFT] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the number of days in the set
+     */
+    public int cardinality()
+    {
+        return cardinality;
+    }
+}
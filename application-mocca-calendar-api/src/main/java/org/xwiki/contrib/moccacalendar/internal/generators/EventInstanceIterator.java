@@ -0,0 +1,73 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+import org.joda.time.DateTimeZone;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+
+/**
+ * Create the event instances for the start dates of a series one by one, when they are requested.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public class EventInstanceIterator implements Iterator<EventInstance>
+{
+    private final PrimitiveIterator.OfLong starts;
+
+    private final long duration;
+
+    private final DateTimeZone zone;
+
+    /**
+     * @param starts the start dates of the instances in epoch milliseconds
+     * @param duration the duration of each instance
+     * @param zone the time zone of the instances
+     */
+    public EventInstanceIterator(PrimitiveIterator.OfLong starts, long duration, DateTimeZone zone)
+    {
+        this.starts = starts;
+        this.duration = duration;
+        this.zone = zone;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return starts.hasNext();
+    }
+
+    /**
+     * @return an event instance with only start and end date and the time zone set
+     */
+    @Override
+    public EventInstance next()
+    {
+        final long start = starts.nextLong();
+        EventInstance instance = new EventInstance();
+        instance.setTimeZone(zone);
+        instance.setStartMillis(start);
+        instance.setEndMillis(start + duration);
+        return instance;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.moccacalendar.internal.CalendarDescriptor;
+import org.xwiki.contrib.moccacalendar.internal.CalendarDescriptorCache;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Provide the time zone of an event: the instances of a recurrent event are generated in it, so they keep their
+ * local time and all day events start at midnight, no matter in which time zone the server runs, and the dates
+ * of all event instances are returned in it.
+ * <p>
+ * The time zone is taken from the calendar the event belongs to; if the calendar does not set one,
+ * the time zone of the server is used, as the forms of the events read and show dates in it.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = EventTimeZoneProvider.class)
+@Singleton
+public class EventTimeZoneProvider
+{
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private CalendarDescriptorCache calendarDescriptorCache;
+
+    /**
+     * @param event the document of a recurrent event
+     * @return the time zone for the instances of the event
+     */
+    public ZoneId get(XWikiDocument event)
+    {
+        return get(event.getDocumentReference());
+    }
+
+    /**
+     * @param eventDocRef the reference to the document of an event
+     * @return the time zone for the instances of the event
+     */
+    public ZoneId get(DocumentReference eventDocRef)
+    {
+        ZoneId zone = null;
+        try {
+            CalendarDescriptor calendar = calendarDescriptorCache.getCalendarOf(eventDocRef);
+            if (calendar != null) {
+                zone = parseZone(calendar.getTimeZone(), eventDocRef);
+            }
+        } catch (XWikiException e) {
+            logger.warn("could not load the calendar to read the time zone of event [{}]: [{}]", eventDocRef,
+                e.getMessage());
+        }
+        return (zone == null) ? TimeZone.getDefault().toZoneId() : zone;
+    }
+
+    /**
+     * @param zone a time zone
+     * @return the same time zone for Joda Time, as used by the event instances
+     */
+    public static DateTimeZone toDateTimeZone(ZoneId zone)
+    {
+        return DateTimeZone.forTimeZone(TimeZone.getTimeZone(zone));
+    }
+
+    private ZoneId parseZone(String zoneId, DocumentReference eventDocRef)
+    {
+        if (zoneId == null || zoneId.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return ZoneId.of(zoneId.trim());
+        } catch (DateTimeException e) {
+            logger.warn("invalid time zone [{}] for event [{}]; ignored", zoneId, eventDocRef);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convert between instants and local days and times of a time zone, as epoch milliseconds and epoch days.
+ * <p>
+ * The offset of the last conversion is kept together with the range where it is valid, so as long as
+ * the dates stay within one daylight saving time period, a conversion is plain arithmetic.
+ * The offsets are taken from precomputed tables of the transitions per zone and year, shared by all converters.
+ * Local times which fall into a gap are moved forward by the length of the gap, and local times
+ * which occur twice use the earlier offset, as {@link ZonedDateTime#ofLocal(LocalDateTime, ZoneId, ZoneOffset)}.
+ * Instances are not thread safe.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public class LocalTimeConverter
+{
+    /**
+     * the milliseconds of one day.
+     */
+    public static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final long SECOND_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private static final int NANOS_PER_MILLI = 1000000;
+
+    private final ZoneId zone;
+
+    private long offset;
+
+    private long validFrom = Long.MAX_VALUE;
+
+    private long validTo = Long.MIN_VALUE;
+
+    /**
+     * @param zone the time zone for the local dates
+     */
+    public LocalTimeConverter(ZoneId zone)
+    {
+        this.zone = zone;
+        final ZoneRules rules = zone.getRules();
+        if (rules.isFixedOffset()) {
+            this.offset = rules.getOffset(Instant.EPOCH).getTotalSeconds() * SECOND_MILLIS;
+            this.validFrom = Long.MIN_VALUE;
+            this.validTo = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return the time zone for the local dates
+     */
+    public ZoneId getZone()
+    {
+        return zone;
+    }
+
+    /**
+     * @param epochMilli an instant
+     * @return the local day of the instant, counted in days from 1970-01-01
+     */
+    public long toEpochDay(long epochMilli)
+    {
+        return Math.floorDiv(toLocalMillis(epochMilli), DAY_MILLIS);
+    }
+
+    /**
+     * @param epochMilli an instant
+     * @return the local time of the instant, in milliseconds since midnight
+     */
+    public long toMillisOfDay(long epochMilli)
+    {
+        return Math.floorMod(toLocalMillis(epochMilli), DAY_MILLIS);
+    }
+
+    /**
+     * @param epochDay a local day, counted in days from 1970-01-01
+     * @param millisOfDay a local time in milliseconds since midnight
+     * @return the instant of the given local date and time
+     */
+    public long toEpochMilli(long epochDay, long millisOfDay)
+    {
+        final long localMillis = epochDay * DAY_MILLIS + millisOfDay;
+        long epochMilli = localMillis - offset;
+        // close to a change of the offset a local time might be missing or ambiguous; let the zone rules decide
+        if (epochMilli - DAY_MILLIS < validFrom || epochMilli + DAY_MILLIS >= validTo) {
+            LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(localMillis, SECOND_MILLIS),
+                (int) Math.floorMod(localMillis, SECOND_MILLIS) * NANOS_PER_MILLI, ZoneOffset.UTC);
+            epochMilli = ZonedDateTime.ofLocal(localDateTime, zone, null).toInstant().toEpochMilli();
+            updateOffset(epochMilli);
+        }
+        return epochMilli;
+    }
+
+    private long toLocalMillis(long epochMilli)
+    {
+        if (epochMilli < validFrom || epochMilli >= validTo) {
+            updateOffset(epochMilli);
+        }
+        return epochMilli + offset;
+    }
+
+    private void updateOffset(long epochMilli)
+    {
+        final ZoneTransitionTable table = ZoneTransitionTable.of(zone, epochMilli);
+        final int index = table.indexOf(epochMilli);
+        this.offset = table.getOffset(index);
+        this.validFrom = table.getValidFrom(index);
+        this.validTo = table.getValidTo(index);
+    }
+}
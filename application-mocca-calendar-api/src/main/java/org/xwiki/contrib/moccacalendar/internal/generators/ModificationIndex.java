@@ -0,0 +1,121 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An index of the modified instances of a series by their modified date range, to find the modified instances
+ * in a date range no matter where their original instance is.
+ * <p>
+ * The modifications are sorted by their modified start, and for each position the latest end of all
+ * modifications up to it is kept. A query searches the last modification starting in the range and walks back
+ * until no earlier modification can reach into the range; modifications far outside the range are never looked at.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public final class ModificationIndex
+{
+    /** the index without any modifications. */
+    public static final ModificationIndex EMPTY =
+        new ModificationIndex(Collections.<RecurrenceSpec.Modification>emptyList());
+
+    private static final Comparator<RecurrenceSpec.Modification> BY_START =
+        new Comparator<RecurrenceSpec.Modification>()
+        {
+            @Override
+            public int compare(RecurrenceSpec.Modification modification1, RecurrenceSpec.Modification modification2)
+            {
+                return Long.compare(modification1.getStart(), modification2.getStart());
+            }
+        };
+
+    private final RecurrenceSpec.Modification[] modifications;
+
+    private final long[] starts;
+
+    /** the latest end of the modifications up to each index. */
+    private final long[] maxEnds;
+
+    /**
+     * @param modifications the modifications to index
+     */
+    public ModificationIndex(Collection<RecurrenceSpec.Modification> modifications)
+    {
+        this.modifications = modifications.toArray(new RecurrenceSpec.Modification[modifications.size()]);
+        Arrays.sort(this.modifications, BY_START);
+        this.starts = new long[this.modifications.length];
+        this.maxEnds = new long[this.modifications.length];
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < this.modifications.length; i++) {
+            starts[i] = this.modifications[i].getStart();
+            maxEnd = Math.max(maxEnd, this.modifications[i].getEnd());
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    /**
+     * find the modified instances which end at or after the start of the date range
+     * and start at or before its end, the same as for generated instances.
+     *
+     * @param dateFrom the start of the date range in epoch milliseconds
+     * @param dateTo the end of the date range in epoch milliseconds
+     * @return the modifications in the date range, ordered by their modified start
+     */
+    public List<RecurrenceSpec.Modification> overlapping(long dateFrom, long dateTo)
+    {
+        if (modifications.length == 0) {
+            return Collections.emptyList();
+        }
+
+        // the index after the last modification starting at or before the end of the range
+        int index = Arrays.binarySearch(starts, dateTo);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            while (index < starts.length && starts[index] == dateTo) {
+                index++;
+            }
+        }
+
+        List<RecurrenceSpec.Modification> result = new ArrayList<>();
+        for (int i = index - 1; i >= 0 && maxEnds[i] >= dateFrom; i--) {
+            if (modifications[i].getEnd() >= dateFrom) {
+                result.add(modifications[i]);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * @return the number of indexed modifications
+     */
+    public int size()
+    {
+        return modifications.length;
+    }
+}
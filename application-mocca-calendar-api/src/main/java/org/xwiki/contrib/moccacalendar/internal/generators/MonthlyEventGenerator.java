@@ -19,7 +19,7 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.Calendar;
+import java.time.temporal.ChronoUnit;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -35,14 +35,13 @@ import org.xwiki.component.annotation.Component;
 @Component
 @Singleton
 @Named("monthly")
-public class MonthlyEventGenerator extends AbstractRecurrentEventGenerator
+public class MonthlyEventGenerator extends AbstractFixedPeriodEventGenerator
 {
-
     /**
-     * increment the calendar by one month.
+     * create a generator with a period of one month.
      */
-    protected void incrementCalendarByOnePeriod(Calendar cal)
+    public MonthlyEventGenerator()
     {
-        cal.add(Calendar.MONTH, 1);
+        super(ChronoUnit.MONTHS, 1);
     }
 }
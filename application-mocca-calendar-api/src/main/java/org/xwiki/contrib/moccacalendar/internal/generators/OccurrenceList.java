@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.joda.time.DateTimeZone;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+
+/**
+ * The start and end dates of the instances of a recurrent event, kept as epoch milliseconds
+ * in one primitive array, so generating them does not create any objects per instance.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public class OccurrenceList
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] dates = new long[2 * INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * add an occurrence at the end of the list.
+     *
+     * @param start the start of the occurrence in epoch milliseconds
+     * @param end the end of the occurrence in epoch milliseconds
+     */
+    public void add(long start, long end)
+    {
+        if (2 * size == dates.length) {
+            dates = Arrays.copyOf(dates, 2 * dates.length);
+        }
+        dates[2 * size] = start;
+        dates[2 * size + 1] = end;
+        size++;
+    }
+
+    /**
+     * add occurrences from the given start dates until there are none left or the list has reached the given size.
+     *
+     * @param starts the start dates of the occurrences in epoch milliseconds
+     * @param duration the duration of each occurrence
+     * @param maxSize the maximal size of the list
+     */
+    public void addAll(PrimitiveIterator.OfLong starts, long duration, int maxSize)
+    {
+        while (size < maxSize && starts.hasNext()) {
+            final long start = starts.nextLong();
+            add(start, start + duration);
+        }
+    }
+
+    /**
+     * @return the number of occurrences
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param index the index of the occurrence
+     * @return the start of the occurrence in epoch milliseconds
+     */
+    public long getStart(int index)
+    {
+        checkIndex(index);
+        return dates[2 * index];
+    }
+
+    /**
+     * @param index the index of the occurrence
+     * @return the end of the occurrence in epoch milliseconds
+     */
+    public long getEnd(int index)
+    {
+        checkIndex(index);
+        return dates[2 * index + 1];
+    }
+
+    /**
+     * create the event instances for the occurrences; only their start and end dates and the time zone are set.
+     *
+     * @param zone the time zone of the instances
+     * @return a new list of event instances in the order of the occurrences
+     */
+    public List<EventInstance> toEventInstances(DateTimeZone zone)
+    {
+        List<EventInstance> eventInstances = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            EventInstance instance = new EventInstance();
+            instance.setTimeZone(zone);
+            instance.setStartMillis(dates[2 * i]);
+            instance.setEndMillis(dates[2 * i + 1]);
+            eventInstances.add(instance);
+        }
+        return eventInstances;
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("no occurrence at index " + index + " of " + size);
+        }
+    }
+}
@@ -19,7 +19,7 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.Calendar;
+import java.time.temporal.ChronoUnit;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -35,13 +35,13 @@ import org.xwiki.component.annotation.Component;
 @Component
 @Singleton
 @Named("quarterly")
-public class QuarterlyEventGenerator extends AbstractRecurrentEventGenerator
+public class QuarterlyEventGenerator extends AbstractFixedPeriodEventGenerator
 {
     /**
-     * increment the calendar by three months.
+     * create a generator with a period of three months.
      */
-    protected void incrementCalendarByOnePeriod(Calendar cal)
+    public QuarterlyEventGenerator()
     {
-        cal.add(Calendar.MONTH, 3);
+        super(ChronoUnit.MONTHS, 3);
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+import org.xwiki.contrib.moccacalendar.RecurrentEventGenerator;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * A generator for events following a recurrence rule as defined by RFC 5545, like "every 2nd Tuesday"
+ * or "the last Friday of the month". The rule is stored in the {@code rrule} property of the recurrency object.
+ * See {@link RecurrenceRule} for the supported parts of the rule.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component
+@Singleton
+@Named("rrule")
+public class RRuleEventGenerator implements RecurrentEventGenerator
+{
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private RecurrenceSpecCache recurrenceSpecCache;
+
+    @Inject
+    private RecurrenceConfiguration recurrenceConfiguration;
+
+    @Override
+    public List<EventInstance> generate(XWikiDocument event, Date dateFrom, Date dateTo)
+    {
+        final RecurrenceSpec spec = recurrenceSpecCache.get(event);
+        final LocalTimeConverter converter = new LocalTimeConverter(spec.getZone());
+        final PrimitiveIterator.OfLong starts = iterateStarts(event, spec, converter, dateFrom, dateTo);
+        if (starts == null) {
+            return Collections.emptyList();
+        }
+
+        final int maxInstances = recurrenceConfiguration.getMaxInstances();
+        OccurrenceList occurrences = new OccurrenceList();
+        occurrences.addAll(starts, spec.getDuration(), maxInstances);
+        if (occurrences.size() >= maxInstances) {
+            logger.info("maximal number of events generated for [{}]; stopping", event);
+        }
+
+        return occurrences.toEventInstances(spec.getDateTimeZone());
+    }
+
+    @Override
+    public Iterator<EventInstance> iterate(XWikiDocument event, Date dateFrom, Date dateTo)
+    {
+        final RecurrenceSpec spec = recurrenceSpecCache.get(event);
+        final LocalTimeConverter converter = new LocalTimeConverter(spec.getZone());
+        final PrimitiveIterator.OfLong starts = iterateStarts(event, spec, converter, dateFrom, dateTo);
+        if (starts == null) {
+            return Collections.emptyIterator();
+        }
+
+        return new EventInstanceIterator(starts, spec.getDuration(), spec.getDateTimeZone());
+    }
+
+    /**
+     * @return the start dates of the instances in the date range, or null if there are none
+     */
+    private PrimitiveIterator.OfLong iterateStarts(XWikiDocument event, RecurrenceSpec spec,
+        LocalTimeConverter converter, Date dateFrom, Date dateTo)
+    {
+        final RecurrenceRule rule = spec.getRule();
+        if (rule == null) {
+            logger.warn("invalid recurrence rule [{}] for event [{}]; no instances generated", spec.getRuleText(),
+                event.getDocumentReference());
+            return null;
+        }
+
+        final long actualDateFrom = spec.rangeStart(dateFrom);
+        if (dateTo.getTime() < actualDateFrom) {
+            return null;
+        }
+
+        return rule.iterator(converter, spec.getStart(), spec.getDuration(), actualDateFrom,
+            spec.rangeEnd(dateTo));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * The configuration for the expansion of recurrent events.
+ * <p>
+ * The maximal number of instances created for one recurrent event and one request can be set in
+ * {@code xwiki.properties} with {@code moccacalendar.recurrence.maxInstances}. The limit is mainly used to avoid
+ * running out of memory due to a runaway generator, or a request for a very large date range.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = RecurrenceConfiguration.class)
+@Singleton
+public class RecurrenceConfiguration
+{
+    /** the maximal number of instances of one recurrent event, if not configured otherwise. */
+    static final int DEFAULT_MAX_INSTANCES = 1000;
+
+    private static final String MAX_INSTANCES_PROPERTY = "moccacalendar.recurrence.maxInstances";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * @return the maximal number of instances to create for one recurrent event and one request
+     */
+    public int getMaxInstances()
+    {
+        return configuration.getProperty(MAX_INSTANCES_PROPERTY, DEFAULT_MAX_INSTANCES);
+    }
+}
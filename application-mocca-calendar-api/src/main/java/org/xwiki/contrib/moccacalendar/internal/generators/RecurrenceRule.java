@@ -0,0 +1,753 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled recurrence rule as defined for the {@code RRULE} property in RFC 5545.
+ * <p>
+ * Supported are the frequencies {@code DAILY}, {@code WEEKLY}, {@code MONTHLY} and {@code YEARLY} together with
+ * {@code INTERVAL}, {@code COUNT}, {@code UNTIL}, {@code BYDAY}, {@code BYMONTHDAY}, {@code BYMONTH},
+ * {@code BYSETPOS} and {@code WKST}. All instances start at the local time of the first instance.
+ * The first instance always counts as an occurrence, even if it does not match the rule.
+ * <p>
+ * The rule is expanded period by period, and each period only looks at the days the rule can select in it.
+ * Without {@code COUNT} the expansion starts directly at the period of the requested date range;
+ * with {@code COUNT} it has to start at the first instance to count the occurrences.
+ * Instances are immutable and can be shared between threads.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public final class RecurrenceRule
+{
+    /**
+     * the supported frequencies.
+     */
+    enum Frequency
+    {
+        /** every day. */
+        DAILY,
+        /** every week. */
+        WEEKLY,
+        /** every month. */
+        MONTHLY,
+        /** every year. */
+        YEARLY
+    }
+
+    private static final String RRULE_PREFIX = "RRULE:";
+
+    private static final String LIST_SEPARATOR = ",";
+
+    private static final Pattern BYDAY_PATTERN = Pattern.compile("([+-]?\\d{1,2})?(MO|TU|WE|TH|FR|SA|SU)");
+
+    private static final String[] DAY_NAMES = { "MO", "TU", "WE", "TH", "FR", "SA", "SU" };
+
+    private static final DateTimeFormatter UNTIL_DATE = DateTimeFormatter.ofPattern("yyyyMMdd", Locale.ROOT);
+
+    private static final DateTimeFormatter UNTIL_DATE_TIME =
+        DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss", Locale.ROOT);
+
+    private static final int DAYS_PER_WEEK = 7;
+
+    private static final int MONTHS_PER_YEAR = 12;
+
+    private static final int MAX_MONTH_DAY = 31;
+
+    private static final int MAX_SET_POSITION = 366;
+
+    private static final int MAX_ORDINAL = 53;
+
+    private final Frequency frequency;
+
+    private final int interval;
+
+    private final int count;
+
+    /** the last possible start in local epoch millis, or Long.MAX_VALUE. */
+    private final long untilLocal;
+
+    /** the last possible start in epoch millis, or Long.MAX_VALUE. */
+    private final long untilInstant;
+
+    /** the ISO day of week values (1 = Monday) of BYDAY. */
+    private final int[] byDayWeekdays;
+
+    /** the ordinals of BYDAY, or 0 for every such weekday. */
+    private final int[] byDayOrdinals;
+
+    /** bit n set for every BYDAY entry without ordinal of ISO day of week n. */
+    private final int byDayMask;
+
+    private final int[] byMonthDays;
+
+    /** bit n set for month n in BYMONTH; 0 if there is no BYMONTH. */
+    private final int byMonthMask;
+
+    private final int[] bySetPositions;
+
+    private final int weekStart;
+
+    private RecurrenceRule(Builder builder)
+    {
+        this.frequency = builder.frequency;
+        this.interval = builder.interval;
+        this.count = builder.count;
+        this.untilLocal = builder.untilLocal;
+        this.untilInstant = builder.untilInstant;
+        this.byDayWeekdays = builder.byDayWeekdays;
+        this.byDayOrdinals = builder.byDayOrdinals;
+        int mask = 0;
+        for (int i = 0; i < byDayWeekdays.length; i++) {
+            if (byDayOrdinals[i] == 0) {
+                mask |= 1 << byDayWeekdays[i];
+            }
+        }
+        this.byDayMask = mask;
+        this.byMonthDays = builder.byMonthDays;
+        this.byMonthMask = builder.byMonthMask;
+        this.bySetPositions = builder.bySetPositions;
+        this.weekStart = builder.weekStart;
+    }
+
+    /**
+     * compile the given rule.
+     *
+     * @param rule the rule, e.g. {@code FREQ=MONTHLY;BYDAY=-1FR}; an {@code RRULE:} prefix is ignored
+     * @return the compiled rule
+     * @throws IllegalArgumentException if the rule is invalid or uses unsupported parts
+     */
+    public static RecurrenceRule parse(String rule)
+    {
+        if (rule == null || rule.trim().isEmpty()) {
+            throw new IllegalArgumentException("the recurrence rule is empty");
+        }
+        String value = rule.trim().toUpperCase(Locale.ROOT);
+        if (value.startsWith(RRULE_PREFIX)) {
+            value = value.substring(RRULE_PREFIX.length());
+        }
+
+        Builder builder = new Builder();
+        for (String part : value.split(";")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            int separator = part.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("invalid part [" + part + "] in recurrence rule [" + rule + "]");
+            }
+            builder.set(part.substring(0, separator), part.substring(separator + 1));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return true if the number of occurrences is limited by {@code COUNT}
+     */
+    public boolean hasCount()
+    {
+        return count > 0;
+    }
+
+    /**
+     * iterate over the start dates of the occurrences of the rule in the given date range.
+     * the occurrences are computed one period at a time, when they are requested.
+     *
+     * @param converter the converter for the time zone of the event; it must not be used elsewhere meanwhile
+     * @param start the start of the first instance
+     * @param duration the duration of each instance
+     * @param dateFrom the date after which the instances should end
+     * @param dateTo the date before which the instances should start
+     * @return the start dates of the occurrences in epoch milliseconds
+     */
+    public PrimitiveIterator.OfLong iterator(LocalTimeConverter converter, long start, long duration, long dateFrom,
+        long dateTo)
+    {
+        return new RuleIterator(converter, start, duration, dateFrom, dateTo);
+    }
+
+    private boolean isAfterUntil(long day, long millisOfDay, long instanceStart)
+    {
+        return instanceStart > untilInstant || day * LocalTimeConverter.DAY_MILLIS + millisOfDay > untilLocal;
+    }
+
+    /**
+     * the period which contains the given day, or the first one if the day is before the start.
+     */
+    private long firstPeriodFor(LocalDate startDate, long targetDay)
+    {
+        final LocalDate target = LocalDate.ofEpochDay(targetDay);
+        final long units;
+        switch (frequency) {
+            case DAILY:
+                units = targetDay - startDate.toEpochDay();
+                break;
+            case WEEKLY:
+                units = (weekStartOf(targetDay) - weekStartOf(startDate.toEpochDay())) / DAYS_PER_WEEK;
+                break;
+            case MONTHLY:
+                units = (target.getYear() - startDate.getYear()) * (long) MONTHS_PER_YEAR
+                    + target.getMonthValue() - startDate.getMonthValue();
+                break;
+            default:
+                units = target.getYear() - startDate.getYear();
+                break;
+        }
+        return Math.max(0, Math.floorDiv(units, interval));
+    }
+
+    private long firstDayOfPeriod(LocalDate startDate, long period)
+    {
+        final long units = period * interval;
+        switch (frequency) {
+            case DAILY:
+                return startDate.toEpochDay() + units;
+            case WEEKLY:
+                return weekStartOf(startDate.toEpochDay()) + DAYS_PER_WEEK * units;
+            case MONTHLY:
+                return startDate.withDayOfMonth(1).plusMonths(units).toEpochDay();
+            default:
+                return startDate.withDayOfYear(1).plusYears(units).toEpochDay();
+        }
+    }
+
+    private void addCandidates(LocalDate startDate, long period, DayList days)
+    {
+        final long firstDay = firstDayOfPeriod(startDate, period);
+        switch (frequency) {
+            case DAILY:
+                if (matchesMonth(firstDay) && matchesMonthDay(firstDay) && matchesWeekday(firstDay)) {
+                    days.add(firstDay);
+                }
+                break;
+            case WEEKLY:
+                for (long day = firstDay; day < firstDay + DAYS_PER_WEEK; day++) {
+                    boolean weekdayMatches = (byDayWeekdays.length == 0)
+                        ? dayOfWeek(day) == startDate.getDayOfWeek().getValue() : matchesWeekday(day);
+                    if (weekdayMatches && matchesMonth(day)) {
+                        days.add(day);
+                    }
+                }
+                break;
+            case MONTHLY:
+                if (matchesMonth(firstDay)) {
+                    addMonthCandidates(LocalDate.ofEpochDay(firstDay), startDate, days);
+                }
+                break;
+            default:
+                addYearCandidates(LocalDate.ofEpochDay(firstDay), startDate, days);
+                break;
+        }
+    }
+
+    private void addYearCandidates(LocalDate firstDate, LocalDate startDate, DayList days)
+    {
+        if (byMonthMask == 0 && byMonthDays.length == 0 && byDayWeekdays.length > 0) {
+            // weekdays in the whole year
+            addWeekdays(firstDate.toEpochDay(), firstDate.plusYears(1).toEpochDay() - 1, days);
+            return;
+        }
+        for (int month = 1; month <= MONTHS_PER_YEAR; month++) {
+            boolean selected = (byMonthMask != 0) ? (byMonthMask & (1 << month)) != 0
+                : (byMonthDays.length > 0 || month == startDate.getMonthValue());
+            if (selected) {
+                addMonthCandidates(firstDate.withMonth(month), startDate, days);
+            }
+        }
+    }
+
+    private void addMonthCandidates(LocalDate firstDate, LocalDate startDate, DayList days)
+    {
+        final long firstDay = firstDate.toEpochDay();
+        final int length = firstDate.lengthOfMonth();
+        final long lastDay = firstDay + length - 1;
+
+        if (byMonthDays.length > 0) {
+            for (int monthDay : byMonthDays) {
+                int dayOfMonth = (monthDay > 0) ? monthDay : length + monthDay + 1;
+                long day = firstDay + dayOfMonth - 1;
+                if (dayOfMonth >= 1 && dayOfMonth <= length
+                    && (byDayWeekdays.length == 0 || matchesWeekdayIn(day, firstDay, lastDay))) {
+                    days.add(day);
+                }
+            }
+        } else if (byDayWeekdays.length > 0) {
+            addWeekdays(firstDay, lastDay, days);
+        } else if (startDate.getDayOfMonth() <= length) {
+            // invalid dates like February 30th are skipped
+            days.add(firstDay + startDate.getDayOfMonth() - 1);
+        }
+    }
+
+    /**
+     * add the days in the given range matching one of the BYDAY entries.
+     */
+    private void addWeekdays(long firstDay, long lastDay, DayList days)
+    {
+        for (int i = 0; i < byDayWeekdays.length; i++) {
+            final int weekday = byDayWeekdays[i];
+            final int ordinal = byDayOrdinals[i];
+            final long firstMatch = firstDay + Math.floorMod(weekday - dayOfWeek(firstDay), DAYS_PER_WEEK);
+            if (ordinal == 0) {
+                for (long day = firstMatch; day <= lastDay; day += DAYS_PER_WEEK) {
+                    days.add(day);
+                }
+            } else if (ordinal > 0) {
+                long day = firstMatch + DAYS_PER_WEEK * (ordinal - 1L);
+                if (day <= lastDay) {
+                    days.add(day);
+                }
+            } else {
+                long lastMatch = lastDay - Math.floorMod(dayOfWeek(lastDay) - weekday, DAYS_PER_WEEK);
+                long day = lastMatch - DAYS_PER_WEEK * (-ordinal - 1L);
+                if (day >= firstDay) {
+                    days.add(day);
+                }
+            }
+        }
+    }
+
+    private boolean matchesWeekdayIn(long day, long firstDay, long lastDay)
+    {
+        final int weekday = dayOfWeek(day);
+        for (int i = 0; i < byDayWeekdays.length; i++) {
+            if (byDayWeekdays[i] == weekday) {
+                final int ordinal = byDayOrdinals[i];
+                if (ordinal == 0 || (ordinal > 0 && (day - firstDay) / DAYS_PER_WEEK + 1 == ordinal)
+                    || (ordinal < 0 && (lastDay - day) / DAYS_PER_WEEK + 1 == -ordinal)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesWeekday(long day)
+    {
+        return byDayWeekdays.length == 0 || (byDayMask & (1 << dayOfWeek(day))) != 0;
+    }
+
+    private boolean matchesMonth(long day)
+    {
+        return byMonthMask == 0 || (byMonthMask & (1 << LocalDate.ofEpochDay(day).getMonthValue())) != 0;
+    }
+
+    private boolean matchesMonthDay(long day)
+    {
+        if (byMonthDays.length == 0) {
+            return true;
+        }
+        final LocalDate date = LocalDate.ofEpochDay(day);
+        for (int monthDay : byMonthDays) {
+            int dayOfMonth = (monthDay > 0) ? monthDay : date.lengthOfMonth() + monthDay + 1;
+            if (dayOfMonth == date.getDayOfMonth()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long weekStartOf(long day)
+    {
+        return day - Math.floorMod(dayOfWeek(day) - weekStart, DAYS_PER_WEEK);
+    }
+
+    /**
+     * the ISO day of week (1 = Monday) of the given epoch day; 1970-01-01 was a Thursday.
+     */
+    private static int dayOfWeek(long epochDay)
+    {
+        return (int) Math.floorMod(epochDay + 3, (long) DAYS_PER_WEEK) + 1;
+    }
+
+    /**
+     * the expansion of the rule; it keeps the candidates of the current period and the next occurrence.
+     */
+    private final class RuleIterator implements PrimitiveIterator.OfLong
+    {
+        private final LocalTimeConverter converter;
+
+        private final long startDay;
+
+        private final long millisOfDay;
+
+        private final LocalDate startDate;
+
+        private final long lastDay;
+
+        private final long duration;
+
+        private final long dateFrom;
+
+        private final long dateTo;
+
+        private final DayList days = new DayList();
+
+        private long period;
+
+        private int index;
+
+        private int counted;
+
+        private boolean available;
+
+        private long nextStart;
+
+        RuleIterator(LocalTimeConverter converter, long start, long duration, long dateFrom, long dateTo)
+        {
+            this.converter = converter;
+            this.duration = duration;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateTo;
+            this.startDay = converter.toEpochDay(start);
+            this.millisOfDay = converter.toMillisOfDay(start);
+            this.startDate = LocalDate.ofEpochDay(startDay);
+            this.lastDay = converter.toEpochDay(dateTo);
+
+            period = hasCount() ? 0 : firstPeriodFor(startDate, converter.toEpochDay(dateFrom - duration));
+            if (period == 0) {
+                // the first instance is always an occurrence
+                counted++;
+                if (start <= dateTo && !isAfterUntil(startDay, millisOfDay, start) && start + duration >= dateFrom) {
+                    nextStart = start;
+                    available = true;
+                    return;
+                }
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return available;
+        }
+
+        @Override
+        public long nextLong()
+        {
+            if (!available) {
+                throw new NoSuchElementException();
+            }
+            final long current = nextStart;
+            advance();
+            return current;
+        }
+
+        private void advance()
+        {
+            available = false;
+            while (true) {
+                if (index >= days.size()) {
+                    if (firstDayOfPeriod(startDate, period) > lastDay) {
+                        return;
+                    }
+                    nextPeriod();
+                    continue;
+                }
+                final long day = days.get(index++);
+                if (day <= startDay) {
+                    // the first instance has been handled at the start
+                    continue;
+                }
+                final long instanceStart = converter.toEpochMilli(day, millisOfDay);
+                if (instanceStart > dateTo || isAfterUntil(day, millisOfDay, instanceStart)
+                    || (hasCount() && ++counted > count)) {
+                    // all following instances are out of range, too
+                    return;
+                }
+                if (instanceStart + duration >= dateFrom) {
+                    nextStart = instanceStart;
+                    available = true;
+                    return;
+                }
+            }
+        }
+
+        private void nextPeriod()
+        {
+            days.clear();
+            addCandidates(startDate, period, days);
+            days.sortUnique();
+            if (bySetPositions.length > 0) {
+                days.selectPositions(bySetPositions);
+            }
+            index = 0;
+            period++;
+        }
+    }
+
+    /**
+     * the candidate days of one period.
+     */
+    private static final class DayList
+    {
+        private long[] days = new long[MAX_MONTH_DAY];
+
+        private int size;
+
+        void clear()
+        {
+            size = 0;
+        }
+
+        void add(long day)
+        {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, 2 * size);
+            }
+            days[size++] = day;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        long get(int index)
+        {
+            return days[index];
+        }
+
+        void sortUnique()
+        {
+            Arrays.sort(days, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || days[i] != days[unique - 1]) {
+                    days[unique++] = days[i];
+                }
+            }
+            size = unique;
+        }
+
+        void selectPositions(int[] positions)
+        {
+            long[] selected = new long[positions.length];
+            int selectedSize = 0;
+            for (int position : positions) {
+                int index = (position > 0) ? position - 1 : size + position;
+                if (index >= 0 && index < size) {
+                    selected[selectedSize++] = days[index];
+                }
+            }
+            System.arraycopy(selected, 0, days, 0, selectedSize);
+            size = selectedSize;
+            sortUnique();
+        }
+    }
+
+    /**
+     * collect the parts of the rule while parsing.
+     */
+    private static final class Builder
+    {
+        private Frequency frequency;
+
+        private int interval = 1;
+
+        private int count;
+
+        private long untilLocal = Long.MAX_VALUE;
+
+        private long untilInstant = Long.MAX_VALUE;
+
+        private int[] byDayWeekdays = new int[0];
+
+        private int[] byDayOrdinals = new int[0];
+
+        private int[] byMonthDays = new int[0];
+
+        private int byMonthMask;
+
+        private int[] bySetPositions = new int[0];
+
+        private int weekStart = DayOfWeek.MONDAY.getValue();
+
+        void set(String name, String value)
+        {
+            switch (name) {
+                case "FREQ":
+                    frequency = parseFrequency(value);
+                    break;
+                case "INTERVAL":
+                    interval = parseNumber(name, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "COUNT":
+                    count = parseNumber(name, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "UNTIL":
+                    parseUntil(value);
+                    break;
+                case "BYDAY":
+                    parseByDay(value);
+                    break;
+                case "BYMONTHDAY":
+                    byMonthDays = parseNumbers(name, value, MAX_MONTH_DAY);
+                    break;
+                case "BYMONTH":
+                    for (int month : parseNumbers(name, value, MONTHS_PER_YEAR)) {
+                        if (month < 0) {
+                            throw new IllegalArgumentException("invalid month [" + month + "]");
+                        }
+                        byMonthMask |= 1 << month;
+                    }
+                    break;
+                case "BYSETPOS":
+                    bySetPositions = parseNumbers(name, value, MAX_SET_POSITION);
+                    break;
+                case "WKST":
+                    weekStart = parseWeekday(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported recurrence rule part [" + name + "]");
+            }
+        }
+
+        RecurrenceRule build()
+        {
+            if (frequency == null) {
+                throw new IllegalArgumentException("the recurrence rule has no FREQ");
+            }
+            if (count > 0 && (untilInstant != Long.MAX_VALUE || untilLocal != Long.MAX_VALUE)) {
+                throw new IllegalArgumentException("COUNT and UNTIL must not be used together");
+            }
+            if (frequency == Frequency.WEEKLY && byMonthDays.length > 0) {
+                throw new IllegalArgumentException("BYMONTHDAY cannot be used with weekly frequency");
+            }
+            if (frequency == Frequency.DAILY || frequency == Frequency.WEEKLY) {
+                for (int ordinal : byDayOrdinals) {
+                    if (ordinal != 0) {
+                        throw new IllegalArgumentException("BYDAY with ordinal needs monthly or yearly frequency");
+                    }
+                }
+            }
+            return new RecurrenceRule(this);
+        }
+
+        private static Frequency parseFrequency(String value)
+        {
+            try {
+                return Frequency.valueOf(value);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unsupported frequency [" + value + "]", e);
+            }
+        }
+
+        private void parseUntil(String value)
+        {
+            try {
+                if (!value.contains("T")) {
+                    // the whole day is included
+                    long day = LocalDate.parse(value, UNTIL_DATE).toEpochDay();
+                    untilLocal = (day + 1) * LocalTimeConverter.DAY_MILLIS - 1;
+                } else if (value.endsWith("Z")) {
+                    untilInstant = LocalDateTime.parse(value.substring(0, value.length() - 1), UNTIL_DATE_TIME)
+                        .toInstant(ZoneOffset.UTC).toEpochMilli();
+                } else {
+                    untilLocal = LocalDateTime.parse(value, UNTIL_DATE_TIME).toInstant(ZoneOffset.UTC)
+                        .toEpochMilli();
+                }
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("invalid UNTIL [" + value + "]", e);
+            }
+        }
+
+        private void parseByDay(String value)
+        {
+            List<int[]> entries = new ArrayList<>();
+            for (String entry : value.split(LIST_SEPARATOR)) {
+                Matcher matcher = BYDAY_PATTERN.matcher(entry.trim());
+                if (!matcher.matches()) {
+                    throw invalidByDay(entry);
+                }
+                int ordinal = 0;
+                if (matcher.group(1) != null) {
+                    ordinal = Integer.parseInt(matcher.group(1));
+                    if (ordinal == 0 || Math.abs(ordinal) > MAX_ORDINAL) {
+                        throw invalidByDay(entry);
+                    }
+                }
+                entries.add(new int[] { parseWeekday(matcher.group(2)), ordinal });
+            }
+            byDayWeekdays = new int[entries.size()];
+            byDayOrdinals = new int[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                byDayWeekdays[i] = entries.get(i)[0];
+                byDayOrdinals[i] = entries.get(i)[1];
+            }
+        }
+
+        private static IllegalArgumentException invalidByDay(String entry)
+        {
+            return new IllegalArgumentException("invalid BYDAY entry [" + entry + "]");
+        }
+
+        private static int parseWeekday(String value)
+        {
+            int index = Arrays.asList(DAY_NAMES).indexOf(value);
+            if (index < 0) {
+                throw new IllegalArgumentException("invalid weekday [" + value + "]");
+            }
+            return index + 1;
+        }
+
+        private static int[] parseNumbers(String name, String value, int max)
+        {
+            String[] entries = value.split(LIST_SEPARATOR);
+            int[] numbers = new int[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                numbers[i] = parseNumber(name, entries[i].trim(), -max, max);
+                if (numbers[i] == 0) {
+                    throw new IllegalArgumentException("invalid value [0] in " + name);
+                }
+            }
+            return numbers;
+        }
+
+        private static int parseNumber(String name, String value, int min, int max)
+        {
+            try {
+                int number = Integer.parseInt(value);
+                if (number < min || number > max) {
+                    throw new IllegalArgumentException("value [" + value + "] out of range for " + name);
+                }
+                return number;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid number [" + value + "] for " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.LongPredicate;
+
+import org.joda.time.DateTimeZone;
+import org.xwiki.contrib.moccacalendar.internal.EventConstants;
+import org.xwiki.contrib.moccacalendar.internal.Utils;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * The compiled data of a recurrent event: the first instance, the range and the rule of the series,
+ * and the deleted and modified instances. It is read once from a given version of the event document
+ * and does not change afterwards, so it can be cached, see {@link RecurrenceSpecCache}.
+ * <p>
+ * As all generators create at most one instance per day, the deleted instances are kept by their day,
+ * counted from the day of the first instance, in a {@link DayBitmap}.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public final class RecurrenceSpec
+{
+    private static final LongPredicate NOTHING_EXCLUDED = new LongPredicate()
+    {
+        @Override
+        public boolean test(long instanceStart)
+        {
+            return false;
+        }
+    };
+
+    private final String version;
+
+    private final long modificationDate;
+
+    private final ZoneId zone;
+
+    private final DateTimeZone dateTimeZone;
+
+    private final long start;
+
+    private final long duration;
+
+    private final long startDay;
+
+    private final long firstInstance;
+
+    private final long lastInstance;
+
+    private final String frequency;
+
+    private final String ruleText;
+
+    private final RecurrenceRule rule;
+
+    private final DayBitmap exclusions;
+
+    private final NavigableMap<Long, Modification> modifications;
+
+    private final ModificationIndex modificationIndex;
+
+    private RecurrenceSpec(XWikiDocument event, ZoneId zone, long start, long duration, long startDay,
+        BaseObject eventRecData, DayBitmap exclusions, NavigableMap<Long, Modification> modifications)
+    {
+        this.version = event.getVersion();
+        this.modificationDate = (event.getDate() == null) ? 0 : event.getDate().getTime();
+        this.zone = zone;
+        this.dateTimeZone = EventTimeZoneProvider.toDateTimeZone(zone);
+        this.start = start;
+        this.duration = duration;
+        this.startDay = startDay;
+
+        Date firstInstanceDate = eventRecData.getDateValue(EventConstants.PROPERTY_FIRSTINSTANCE_NAME);
+        Date lastInstanceDate = eventRecData.getDateValue(EventConstants.PROPERTY_LASTINSTANCE_NAME);
+        this.firstInstance = (firstInstanceDate == null) ? Long.MIN_VALUE : firstInstanceDate.getTime();
+        this.lastInstance = (lastInstanceDate == null) ? Long.MAX_VALUE : lastInstanceDate.getTime();
+
+        this.frequency = eventRecData.getStringValue(EventConstants.PROPERTY_FREQUENCY_NAME);
+        this.ruleText = eventRecData.getStringValue(EventConstants.PROPERTY_RRULE_NAME);
+        this.rule = parseRule(ruleText);
+
+        this.exclusions = exclusions;
+        this.modifications = modifications;
+        this.modificationIndex = modifications.isEmpty() ? ModificationIndex.EMPTY
+            : new ModificationIndex(modifications.values());
+    }
+
+    /**
+     * read the data of the series from the event document.
+     *
+     * @param event the document of the recurrent event
+     * @param converter the converter for the time zone of the event; used to find the start of the day
+     *     for all day events
+     * @return the compiled data of the event
+     */
+    public static RecurrenceSpec fromDocument(XWikiDocument event, LocalTimeConverter converter)
+    {
+        BaseObject eventData = event
+            .getXObject(event.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
+        BaseObject eventRecData = event
+            .getXObject(event.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_RECURRENCY_CLASS_NAME));
+
+        Date startDate = eventData.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME);
+        Date endDate = eventData.getDateValue(EventConstants.PROPERTY_ENDDATE_NAME);
+        final boolean allDay = eventData.getIntValue(EventConstants.PROPERTY_ALLDAY_NAME) == 1;
+        if (allDay) {
+            // we need to cut out the start time:
+            startDate = new Date(converter.toEpochMilli(converter.toEpochDay(startDate.getTime()), 0));
+        }
+        if (endDate == null) {
+            endDate = Utils.guessEndDate(startDate, allDay);
+        }
+        final long duration = endDate.getTime() - startDate.getTime();
+        final long startDay = converter.toEpochDay(startDate.getTime());
+
+        return new RecurrenceSpec(event, converter.getZone(), startDate.getTime(), duration, startDay, eventRecData,
+            readExclusions(event, converter, startDay), readModifications(event, eventData));
+    }
+
+    private static DayBitmap readExclusions(XWikiDocument event, LocalTimeConverter converter, long startDay)
+    {
+        final List<BaseObject> deleteNotices = event
+            .getXObjects(event.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_DELETION_CLASS_NAME));
+        if (deleteNotices == null || deleteNotices.isEmpty()) {
+            return DayBitmap.EMPTY;
+        }
+
+        long[] deletedDays = new long[deleteNotices.size()];
+        int size = 0;
+        for (BaseObject deleteNotice : deleteNotices) {
+            Date deleted = (deleteNotice == null)
+                ? null : deleteNotice.getDateValue(EventConstants.PROPERTY_STARTDATE_OF_DELETED_NAME);
+            if (deleted != null) {
+                deletedDays[size++] = converter.toEpochDay(deleted.getTime()) - startDay;
+            }
+        }
+        return DayBitmap.of(Arrays.copyOf(deletedDays, size));
+    }
+
+    private static NavigableMap<Long, Modification> readModifications(XWikiDocument event, BaseObject eventData)
+    {
+        final List<BaseObject> modificationNotices = event
+            .getXObjects(event.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_MODIFICATION_CLASS_NAME));
+        if (modificationNotices == null || modificationNotices.isEmpty()) {
+            return Collections.emptyNavigableMap();
+        }
+
+        NavigableMap<Long, Modification> modifications = new TreeMap<>();
+        for (BaseObject modificationNotice : modificationNotices) {
+            Date originalStartDate = (modificationNotice == null)
+                ? null : modificationNotice.getDateValue(EventConstants.PROPERTY_ORIG_STARTDATE_OF_MODIFIED_NAME);
+            if (originalStartDate != null) {
+                modifications.put(originalStartDate.getTime(),
+                    Modification.of(eventData, modificationNotice, originalStartDate));
+            }
+        }
+        return Collections.unmodifiableNavigableMap(modifications);
+    }
+
+    private static RecurrenceRule parseRule(String ruleText)
+    {
+        if (ruleText == null || ruleText.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return RecurrenceRule.parse(ruleText);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param event the document of the recurrent event
+     * @param zoneId the time zone in which the instances are generated
+     * @return true if this data has been read from the same version of the document for the same time zone
+     */
+    public boolean isCompiledFrom(XWikiDocument event, ZoneId zoneId)
+    {
+        return Objects.equals(version, event.getVersion()) && zone.equals(zoneId)
+            && modificationDate == ((event.getDate() == null) ? 0 : event.getDate().getTime());
+    }
+
+    /**
+     * @return the time zone in which the data has been compiled
+     */
+    public ZoneId getZone()
+    {
+        return zone;
+    }
+
+    /**
+     * @return the time zone in which the data has been compiled, for the dates of the event instances
+     */
+    public DateTimeZone getDateTimeZone()
+    {
+        return dateTimeZone;
+    }
+
+    /**
+     * @return the start of the first instance in epoch milliseconds
+     */
+    public long getStart()
+    {
+        return start;
+    }
+
+    /**
+     * @return the duration of each instance in milliseconds
+     */
+    public long getDuration()
+    {
+        return duration;
+    }
+
+    /**
+     * @return the frequency of the series, i.e. the name of the generator for it
+     */
+    public String getFrequency()
+    {
+        return frequency;
+    }
+
+    /**
+     * @return the text of the recurrence rule, if any
+     */
+    public String getRuleText()
+    {
+        return ruleText;
+    }
+
+    /**
+     * @return the parsed recurrence rule, or null if there is none or it is invalid
+     */
+    public RecurrenceRule getRule()
+    {
+        return rule;
+    }
+
+    /**
+     * create a filter for the deleted instances. The filter converts the start of an instance to its day
+     * and looks the day up in the bitmap of the deleted instances.
+     *
+     * @return a predicate telling by the original start of an instance in epoch milliseconds
+     *     if it has been deleted; it must only be used by one thread at a time
+     */
+    public LongPredicate newExclusionFilter()
+    {
+        if (exclusions.cardinality() == 0) {
+            return NOTHING_EXCLUDED;
+        }
+
+        final LocalTimeConverter converter = new LocalTimeConverter(zone);
+        return new LongPredicate()
+        {
+            @Override
+            public boolean test(long instanceStart)
+            {
+                return exclusions.contains(converter.toEpochDay(instanceStart) - startDay);
+            }
+        };
+    }
+
+    /**
+     * @return the number of deleted instances
+     */
+    public int getExclusionCount()
+    {
+        return exclusions.cardinality();
+    }
+
+    /**
+     * @return the modified instances, by their original start date
+     */
+    public NavigableMap<Long, Modification> getModifications()
+    {
+        return modifications;
+    }
+
+    /**
+     * @return the modified instances, by their modified date range
+     */
+    public ModificationIndex getModificationIndex()
+    {
+        return modificationIndex;
+    }
+
+    /**
+     * @param dateFrom the start of the requested date range
+     * @return the start of the requested range, moved to the first instance date if that comes later
+     */
+    public long rangeStart(Date dateFrom)
+    {
+        return Math.max(dateFrom.getTime(), firstInstance);
+    }
+
+    /**
+     * @param dateTo the end of the requested date range
+     * @return the end of the requested range, moved to the last instance date if that comes earlier
+     */
+    public long rangeEnd(Date dateTo)
+    {
+        // FIXME: this is likely not to be correct
+        return Math.min(dateTo.getTime(), lastInstance);
+    }
+
+    /**
+     * The dates of a modified instance, together with the object holding the modification.
+     */
+    public static final class Modification
+    {
+        private final long originalStart;
+
+        private final long originalEnd;
+
+        private final long start;
+
+        private final long end;
+
+        private final BaseObject notice;
+
+        Modification(long originalStart, long originalEnd, long start, long end, BaseObject notice)
+        {
+            this.originalStart = originalStart;
+            this.originalEnd = originalEnd;
+            this.start = start;
+            this.end = end;
+            this.notice = notice;
+        }
+
+        /**
+         * compute the dates of a modified instance. Dates missing in the modification are taken
+         * from the original instance.
+         *
+         * @param eventData the main event data
+         * @param modificationNotice the object containing the modification
+         * @param originalStartDate the original start date of the instance, must not be null
+         * @return the modification
+         */
+        public static Modification of(BaseObject eventData, BaseObject modificationNotice, Date originalStartDate)
+        {
+            final Date baseStartDate = eventData.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME);
+            final Date baseEndDate = Utils.fetchOrGuessEndDate(eventData);
+            final long baseDuration = baseEndDate.getTime() - baseStartDate.getTime();
+
+            final long originalStart = originalStartDate.getTime();
+            final long originalEnd = originalStart + baseDuration;
+            Date actualStartDate = modificationNotice.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME);
+            if (actualStartDate == null) {
+                actualStartDate = originalStartDate;
+            }
+            // we cannot use Utils.fetchOrGuessEndDate(modificationNotice) as it fails without a start date
+            Date actualEndDate = modificationNotice.getDateValue(EventConstants.PROPERTY_ENDDATE_NAME);
+            long actualEnd;
+            if (actualEndDate != null) {
+                actualEnd = actualEndDate.getTime();
+            } else if (actualStartDate.getTime() == originalStart) {
+                // without modified start and end date the end date is the same as the original end date
+                actualEnd = originalEnd;
+            } else {
+                // XXX: what if the "allDay" flag is changed on the event? currently this is not supported
+                final boolean allDay = eventData.getIntValue(EventConstants.PROPERTY_ALLDAY_NAME) == 1;
+                actualEnd = Utils.guessEndDate(actualStartDate, allDay).getTime();
+            }
+
+            return new Modification(originalStart, originalEnd, actualStartDate.getTime(), actualEnd,
+                modificationNotice);
+        }
+
+        /**
+         * check if either the original or the modified instance is in the given date range.
+         *
+         * @param dateFrom the start of the date range, can be null
+         * @param dateTo the end of the date range, can be null
+         * @return false if both the original and the modified instance end before the date range
+         *     or start after it
+         */
+        public boolean touches(Date dateFrom, Date dateTo)
+        {
+            if (dateFrom != null && end < dateFrom.getTime() && originalEnd < dateFrom.getTime()) {
+                return false;
+            }
+            return dateTo == null || start <= dateTo.getTime() || originalStart <= dateTo.getTime();
+        }
+
+        /**
+         * @param dateFrom the start of the date range in epoch milliseconds
+         * @param dateTo the end of the date range in epoch milliseconds
+         * @return true if the modified instance ends at or after the start and starts at or before the end
+         *     of the date range
+         */
+        public boolean overlaps(long dateFrom, long dateTo)
+        {
+            return end >= dateFrom && start <= dateTo;
+        }
+
+        /**
+         * @return the original start of the instance in epoch milliseconds
+         */
+        public long getOriginalStart()
+        {
+            return originalStart;
+        }
+
+        /**
+         * @return the modified start of the instance in epoch milliseconds
+         */
+        public long getStart()
+        {
+            return start;
+        }
+
+        /**
+         * @return the modified end of the instance in epoch milliseconds
+         */
+        public long getEnd()
+        {
+            return end;
+        }
+
+        /**
+         * @return the object containing the modification, for the other modified properties
+         */
+        public BaseObject getNotice()
+        {
+            return notice;
+        }
+    }
+}
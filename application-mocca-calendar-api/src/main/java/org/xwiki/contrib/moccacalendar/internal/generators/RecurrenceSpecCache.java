@@ -0,0 +1,108 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.ZoneId;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * A cache for the compiled data of recurrent events, so repeated queries over the same events
+ * do not have to read the objects of the event documents again.
+ * <p>
+ * The entries are kept by document reference and checked against the version of the document,
+ * so a changed event is compiled again without the need for an invalidation listener.
+ * Documents which are new or have unsaved changes are never cached.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = RecurrenceSpecCache.class)
+@Singleton
+public class RecurrenceSpecCache implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "moccacalendar.recurrences";
+
+    private static final int CACHE_SIZE = 1000;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private EventTimeZoneProvider eventTimeZoneProvider;
+
+    private Cache<RecurrenceSpec> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache = cacheManager.createNewCache(new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE));
+        } catch (CacheException e) {
+            throw new InitializationException("failed to create the recurrence cache", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * Get the compiled data of a recurrent event, for the time zone of the event, see {@link EventTimeZoneProvider}.
+     *
+     * @param event the document of the recurrent event
+     * @return the compiled data, from the cache if the document has not changed since it was compiled
+     */
+    public RecurrenceSpec get(XWikiDocument event)
+    {
+        final ZoneId zone = eventTimeZoneProvider.get(event);
+        if (event.isNew() || event.isMetaDataDirty()) {
+            return RecurrenceSpec.fromDocument(event, new LocalTimeConverter(zone));
+        }
+
+        final String key = serializer.serialize(event.getDocumentReference());
+        RecurrenceSpec spec = this.cache.get(key);
+        if (spec == null || !spec.isCompiledFrom(event, zone)) {
+            spec = RecurrenceSpec.fromDocument(event, new LocalTimeConverter(zone));
+            this.cache.set(key, spec);
+        }
+        return spec;
+    }
+}
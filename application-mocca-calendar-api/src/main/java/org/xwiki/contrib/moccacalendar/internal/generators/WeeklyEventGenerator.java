@@ -19,7 +19,7 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.Calendar;
+import java.time.temporal.ChronoUnit;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -35,14 +35,14 @@ import org.xwiki.component.annotation.Component;
 @Named("weekly")
 @Singleton
 @Component
-public class WeeklyEventGenerator extends AbstractRecurrentEventGenerator
+public class WeeklyEventGenerator extends AbstractFixedPeriodEventGenerator
 {
     /**
-     * increment the calendar by one week.
+     * create a generator with a period of one week.
      */
-    protected void incrementCalendarByOnePeriod(Calendar cal)
+    public WeeklyEventGenerator()
     {
-        cal.add(Calendar.WEEK_OF_YEAR, 1);
+        super(ChronoUnit.WEEKS, 1);
     }
 }
 
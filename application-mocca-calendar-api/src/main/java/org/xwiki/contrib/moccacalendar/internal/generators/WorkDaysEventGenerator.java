@@ -19,15 +19,21 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.Calendar;
+import java.util.PrimitiveIterator;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
 
+import com.xpn.xwiki.doc.XWikiDocument;
+
 /**
  * A generator for events happening every working day.
+ * The working days are Monday to Saturday, except for the holidays configured in the calendar of the event;
+ * see {@link WorkdayCalendar}. The instances in a date range are found directly by counting the working days,
+ * instead of stepping through all days since the start of the event.
  *
  * @version $Id: $
  * @since 2.7
@@ -37,14 +43,24 @@ import org.xwiki.component.annotation.Component;
 @Named("workdays")
 public class WorkDaysEventGenerator extends AbstractRecurrentEventGenerator
 {
+    @Inject
+    private WorkdayCalendarProvider workdayCalendarProvider;
+
     /**
-     * increment the calendar by one day, skipping weekends.
-     * TODO: configure which days are weekdays
+     * increment the calendar by one day, skipping the days which are no working days.
+     * this does not know about the holidays of the calendar of the event.
      */
-    protected void incrementCalendarByOnePeriod(Calendar cal)
+    @Override
+    protected long incrementByOnePeriod(long epochDay)
+    {
+        return WorkdayCalendar.DEFAULT.nextWorkday(epochDay);
+    }
+
+    @Override
+    PrimitiveIterator.OfLong iterateStarts(XWikiDocument event, RecurrenceSpec spec, LocalTimeConverter converter,
+        long dateFrom, long dateTo)
     {
-        do {
-            cal.add(Calendar.DAY_OF_YEAR, 1);
-        } while (cal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY);
+        return workdayCalendarProvider.get(event).iterator(converter, spec.getStart(), spec.getDuration(), dateFrom,
+            dateTo);
     }
 }
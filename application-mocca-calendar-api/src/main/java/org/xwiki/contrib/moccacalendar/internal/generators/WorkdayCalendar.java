@@ -0,0 +1,347 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The working days of a calendar: a fixed set of days of the week, except for holidays.
+ * <p>
+ * The working days are numbered by ordinals, and the conversion between days and ordinals is done by arithmetic
+ * on the weeks, corrected by the number of holidays before the day. The holidays are kept as one bitset per year,
+ * together with the number of holidays in the earlier years, so both conversions take the same time with or
+ * without holidays, no matter how far the days are apart. Instances are immutable and can be shared between
+ * threads.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+public final class WorkdayCalendar
+{
+    /**
+     * the working days without further configuration: Monday to Saturday, as the workdays generator used to skip
+     * only Sundays.
+     */
+    public static final Set<DayOfWeek> DEFAULT_WORKDAYS = Collections.unmodifiableSet(
+        EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.SATURDAY));
+
+    private static final int DAYS_PER_WEEK = 7;
+
+    /** the epoch day of a Monday, to align the weeks: 1969-12-29. */
+    private static final long MONDAY_EPOCH_DAY = -3;
+
+    private static final int DAYS_PER_LEAP_YEAR = 366;
+
+    private static final int WORDS_PER_YEAR = (DAYS_PER_LEAP_YEAR + Long.SIZE - 1) / Long.SIZE;
+
+    private static final long[][] NO_BITS = new long[0][];
+
+    /** the working days without further configuration and without holidays. */
+    public static final WorkdayCalendar DEFAULT =
+        new WorkdayCalendar(DEFAULT_WORKDAYS, Collections.<LocalDate>emptyList());
+
+    /** bit {@code i} is set if the i-th day of the week, counted from Monday, is a working day. */
+    private final int workdayMask;
+
+    private final int workdaysPerWeek;
+
+    /** the number of working days in the week before the i-th day of the week. */
+    private final int[] workdaysBefore = new int[DAYS_PER_WEEK];
+
+    /** the day of the week of the i-th working day in the week. */
+    private final int[] workdayOfWeek;
+
+    /** the epoch days of the first of January of the years with holidays, ascending. */
+    private final long[] yearStarts;
+
+    /** the holidays of each year, one bit per day of the year; only holidays on working days are set. */
+    private final long[][] holidayBits;
+
+    /** the number of holidays in the years before each year. */
+    private final long[] holidaysBeforeYear;
+
+    /**
+     * @param workdays the days of the week which are working days; must not be empty
+     * @param holidays the holidays; holidays on days of the week which are no working days are ignored
+     */
+    public WorkdayCalendar(Set<DayOfWeek> workdays, Collection<LocalDate> holidays)
+    {
+        if (workdays.isEmpty()) {
+            throw new IllegalArgumentException("there must be at least one working day in the week");
+        }
+
+        int mask = 0;
+        for (DayOfWeek workday : workdays) {
+            mask |= 1 << (workday.getValue() - 1);
+        }
+        this.workdayMask = mask;
+        this.workdaysPerWeek = workdays.size();
+        this.workdayOfWeek = new int[workdaysPerWeek];
+        int count = 0;
+        for (int day = 0; day < DAYS_PER_WEEK; day++) {
+            workdaysBefore[day] = count;
+            if ((workdayMask & (1 << day)) != 0) {
+                workdayOfWeek[count++] = day;
+            }
+        }
+
+        Map<Integer, long[]> bitsByYear = new TreeMap<>();
+        for (LocalDate holiday : holidays) {
+            if (workdays.contains(holiday.getDayOfWeek())) {
+                long[] bits = bitsByYear.get(holiday.getYear());
+                if (bits == null) {
+                    bits = new long[WORDS_PER_YEAR];
+                    bitsByYear.put(holiday.getYear(), bits);
+                }
+                final int index = holiday.getDayOfYear() - 1;
+                bits[index / Long.SIZE] |= 1L << (index % Long.SIZE);
+            }
+        }
+
+        this.yearStarts = new long[bitsByYear.size()];
+        this.holidayBits = bitsByYear.values().toArray(NO_BITS);
+        this.holidaysBeforeYear = new long[bitsByYear.size()];
+        int year = 0;
+        long total = 0;
+        for (Map.Entry<Integer, long[]> bits : bitsByYear.entrySet()) {
+            yearStarts[year] = LocalDate.of(bits.getKey(), 1, 1).toEpochDay();
+            holidaysBeforeYear[year] = total;
+            total += countBits(bits.getValue(), DAYS_PER_LEAP_YEAR);
+            year++;
+        }
+    }
+
+    /**
+     * parse a list of holidays as ISO dates like {@code 2020-12-25}, separated by white space, commas or semicolons.
+     * Invalid dates are skipped.
+     *
+     * @param text the list of holidays; can be null
+     * @return the holidays
+     */
+    public static List<LocalDate> parseHolidays(String text)
+    {
+        List<LocalDate> holidays = new ArrayList<>();
+        if (text == null) {
+            return holidays;
+        }
+        for (String value : text.split("[\\s,;]+")) {
+            if (!value.isEmpty()) {
+                try {
+                    holidays.add(LocalDate.parse(value));
+                } catch (DateTimeParseException e) {
+                    // not a date; skip it
+                }
+            }
+        }
+        return holidays;
+    }
+
+    /**
+     * @param epochDay a day, counted in days from 1970-01-01
+     * @return true if the day is a working day and no holiday
+     */
+    public boolean isWorkday(long epochDay)
+    {
+        return isWorkdayOfWeek(epochDay) && !isHoliday(epochDay);
+    }
+
+    /**
+     * @param epochDay a day, counted in days from 1970-01-01
+     * @return the number of working days from 1970-01-01 up to the given day, excluding the day itself;
+     *     negative for days before 1970. It is also the ordinal of the first working day on or after the day.
+     */
+    public long toOrdinal(long epochDay)
+    {
+        return ordinalOfWeekday(epochDay) - holidaysBefore(epochDay);
+    }
+
+    /**
+     * @param ordinal the ordinal of a working day, as returned by {@link #toOrdinal(long)}
+     * @return the working day with this ordinal, counted in days from 1970-01-01
+     */
+    public long fromOrdinal(long ordinal)
+    {
+        // without holidays the working day is found directly; each holiday before it moves it one working day
+        // further, which might move it over further holidays
+        long weekdayOrdinal = ordinal;
+        while (true) {
+            final long day = weekdayOfOrdinal(weekdayOrdinal);
+            final long next = ordinal + holidaysBefore(day) + (isHoliday(day) ? 1 : 0);
+            if (next == weekdayOrdinal) {
+                return day;
+            }
+            weekdayOrdinal = next;
+        }
+    }
+
+    /**
+     * @param epochDay a day, counted in days from 1970-01-01
+     * @return the first working day after the given day
+     */
+    public long nextWorkday(long epochDay)
+    {
+        return fromOrdinal(toOrdinal(epochDay + 1));
+    }
+
+    /**
+     * iterate over the start dates of the instances of an event happening on every working day.
+     * the first instance is always an instance, even if it is not on a working day.
+     *
+     * @param converter the converter for the time zone of the event; it must not be used elsewhere meanwhile
+     * @param start the start of the first instance
+     * @param duration the duration of each instance
+     * @param dateFrom the date after which the instances should end
+     * @param dateTo the date before which the instances should start
+     * @return the start dates of the instances in epoch milliseconds
+     */
+    public PrimitiveIterator.OfLong iterator(final LocalTimeConverter converter, final long start,
+        final long duration, final long dateFrom, final long dateTo)
+    {
+        final long startDay = converter.toEpochDay(start);
+        final long millisOfDay = converter.toMillisOfDay(start);
+        // seek one day early, as the local day of the range start might differ around time changes
+        final long seekDay = Math.max(startDay + 1, converter.toEpochDay(dateFrom - duration) - 1);
+
+        return new PrimitiveIterator.OfLong()
+        {
+            private long ordinal = toOrdinal(seekDay);
+
+            private long nextStart = start;
+
+            {
+                while (nextStart + duration < dateFrom) {
+                    moveToNextWorkday();
+                }
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return nextStart <= dateTo;
+            }
+
+            @Override
+            public long nextLong()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final long current = nextStart;
+                moveToNextWorkday();
+                return current;
+            }
+
+            private void moveToNextWorkday()
+            {
+                nextStart = converter.toEpochMilli(fromOrdinal(ordinal++), millisOfDay);
+            }
+        };
+    }
+
+    private boolean isWorkdayOfWeek(long epochDay)
+    {
+        return (workdayMask & (1 << dayOfWeek(epochDay))) != 0;
+    }
+
+    /**
+     * the ordinal of the day if there were no holidays.
+     */
+    private long ordinalOfWeekday(long epochDay)
+    {
+        final long weeks = Math.floorDiv(epochDay - MONDAY_EPOCH_DAY, DAYS_PER_WEEK);
+        return weeks * workdaysPerWeek + workdaysBefore[dayOfWeek(epochDay)];
+    }
+
+    /**
+     * the working day with the given ordinal if there were no holidays.
+     */
+    private long weekdayOfOrdinal(long ordinal)
+    {
+        final long weeks = Math.floorDiv(ordinal, workdaysPerWeek);
+        return MONDAY_EPOCH_DAY + weeks * DAYS_PER_WEEK + workdayOfWeek[(int) Math.floorMod(ordinal, workdaysPerWeek)];
+    }
+
+    private long holidaysBefore(long epochDay)
+    {
+        final int year = yearIndexOf(epochDay);
+        if (year < 0) {
+            return 0;
+        }
+        return holidaysBeforeYear[year]
+            + countBits(holidayBits[year], (int) Math.min(epochDay - yearStarts[year], DAYS_PER_LEAP_YEAR));
+    }
+
+    private boolean isHoliday(long epochDay)
+    {
+        final int year = yearIndexOf(epochDay);
+        if (year < 0) {
+            return false;
+        }
+        final long index = epochDay - yearStarts[year];
+        return index < DAYS_PER_LEAP_YEAR
+            && (holidayBits[year][(int) index / Long.SIZE] & (1L << (index % Long.SIZE))) != 0;
+    }
+
+    /**
+     * @return the index of the last year with holidays which starts on or before the given day, or -1
+     */
+    private int yearIndexOf(long epochDay)
+    {
+        final int index = Arrays.binarySearch(yearStarts, epochDay);
+        return (index >= 0) ? index : -index - 2;
+    }
+
+    /**
+     * count the bits below the given index.
+     */
+    private static long countBits(long[] bits, int end)
+    {
+        long count = 0;
+        final int fullWords = end / Long.SIZE;
+        for (int i = 0; i < fullWords; i++) {
+            count += Long.bitCount(bits[i]);
+        }
+        if (fullWords < bits.length && end % Long.SIZE != 0) {
+            count += Long.bitCount(bits[fullWords] & ((1L << (end % Long.SIZE)) - 1));
+        }
+        return count;
+    }
+
+    /**
+     * @return the day of the week, counted from 0 for Monday
+     */
+    private static int dayOfWeek(long epochDay)
+    {
+        return (int) Math.floorMod(epochDay - MONDAY_EPOCH_DAY, DAYS_PER_WEEK);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.moccacalendar.internal.CalendarDescriptor;
+import org.xwiki.contrib.moccacalendar.internal.CalendarDescriptorCache;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Provide the working days for events, with the holidays configured in the calendar the event belongs to.
+ * <p>
+ * The parsed holidays are kept by the text they are parsed from, so calendars with the same holidays share
+ * the same {@link WorkdayCalendar}, and a changed list of holidays is parsed again.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+@Component(roles = WorkdayCalendarProvider.class)
+@Singleton
+public class WorkdayCalendarProvider
+{
+    private static final int CACHE_SIZE = 100;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private CalendarDescriptorCache calendarDescriptorCache;
+
+    private final Map<String, WorkdayCalendar> calendars = new LinkedHashMap<String, WorkdayCalendar>(16, 0.75f,
+        true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WorkdayCalendar> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param event the document of a recurrent event
+     * @return the working days of the calendar of the event; {@link WorkdayCalendar#DEFAULT} if the calendar
+     *     has no holidays or cannot be found
+     */
+    public WorkdayCalendar get(XWikiDocument event)
+    {
+        final String holidays = holidaysOf(event.getDocumentReference());
+        if (holidays == null || holidays.trim().isEmpty()) {
+            return WorkdayCalendar.DEFAULT;
+        }
+
+        synchronized (calendars) {
+            WorkdayCalendar calendar = calendars.get(holidays);
+            if (calendar == null) {
+                calendar = new WorkdayCalendar(WorkdayCalendar.DEFAULT_WORKDAYS,
+                    WorkdayCalendar.parseHolidays(holidays));
+                calendars.put(holidays, calendar);
+            }
+            return calendar;
+        }
+    }
+
+    private String holidaysOf(DocumentReference eventDocRef)
+    {
+        try {
+            CalendarDescriptor calendar = calendarDescriptorCache.getCalendarOf(eventDocRef);
+            return (calendar == null) ? null : calendar.getHolidays();
+        } catch (XWikiException e) {
+            logger.warn("could not load the calendar to read the holidays of event [{}]: [{}]", eventDocRef,
+                e.getMessage());
+            return null;
+        }
+    }
+}
@@ -19,7 +19,7 @@
  */
 package org.xwiki.contrib.moccacalendar.internal.generators;
 
-import java.util.Calendar;
+import java.time.temporal.ChronoUnit;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -35,13 +35,13 @@ import org.xwiki.component.annotation.Component;
 @Component
 @Singleton
 @Named("yearly")
-public class YearlyEventGenerator extends AbstractRecurrentEventGenerator
+public class YearlyEventGenerator extends AbstractFixedPeriodEventGenerator
 {
     /**
-     * increment the calendar by one year.
+     * create a generator with a period of one year.
      */
-    protected void incrementCalendarByOnePeriod(Calendar cal)
+    public YearlyEventGenerator()
     {
-        cal.add(Calendar.YEAR, 1);
+        super(ChronoUnit.YEARS, 1);
     }
 }
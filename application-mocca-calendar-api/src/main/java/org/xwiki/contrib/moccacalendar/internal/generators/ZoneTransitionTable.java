@@ -0,0 +1,155 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The offsets of a time zone during one year, with the instants of the transitions between them.
+ * <p>
+ * The tables are computed once from the zone rules and shared between all converters, so finding the offset
+ * of an instant is a binary search in a few transitions instead of a calculation by the zone rules.
+ * The ranges at the start and the end of the year reach back to the previous and forward to the next transition,
+ * even if these are in another year.
+ *
+ * @version $Id: $
+ * @since 2.9.12
+ */
+final class ZoneTransitionTable
+{
+    /** the maximal number of tables kept; more than enough for some hundred years in all zones in use. */
+    private static final int MAX_TABLES = 10000;
+
+    private static final ConcurrentMap<String, ZoneTransitionTable> TABLES = new ConcurrentHashMap<>();
+
+    private static final long SECOND_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    /** the offsets, in milliseconds; the i-th offset is valid before the i-th transition. */
+    private final long[] offsets;
+
+    /** the start of the range of each offset; the start of all but the first is a transition in the year. */
+    private final long[] validFrom;
+
+    /** the end of the range of the last offset, after the end of the year. */
+    private final long validTo;
+
+    private ZoneTransitionTable(long[] offsets, long[] validFrom, long validTo)
+    {
+        this.offsets = offsets;
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+    }
+
+    /**
+     * get the table of the year containing the given instant, from the shared tables if possible.
+     *
+     * @param zone the time zone
+     * @param epochMilli an instant
+     * @return the table for the zone and the year of the instant in UTC
+     */
+    static ZoneTransitionTable of(ZoneId zone, long epochMilli)
+    {
+        final int year = LocalDate.ofEpochDay(Math.floorDiv(epochMilli, LocalTimeConverter.DAY_MILLIS)).getYear();
+        final String key = zone.getId() + '/' + year;
+        ZoneTransitionTable table = TABLES.get(key);
+        if (table == null) {
+            table = compute(zone.getRules(), year);
+            if (TABLES.size() < MAX_TABLES) {
+                TABLES.putIfAbsent(key, table);
+            }
+        }
+        return table;
+    }
+
+    private static ZoneTransitionTable compute(ZoneRules rules, int year)
+    {
+        final long yearStart = LocalDate.of(year, 1, 1).toEpochDay() * LocalTimeConverter.DAY_MILLIS;
+        final long yearEnd = LocalDate.of(year + 1, 1, 1).toEpochDay() * LocalTimeConverter.DAY_MILLIS;
+
+        long[] offsets = new long[2];
+        long[] validFrom = new long[2];
+        Instant instant = Instant.ofEpochMilli(yearStart);
+        offsets[0] = rules.getOffset(instant).getTotalSeconds() * SECOND_MILLIS;
+        // transitions are at full seconds, so this finds the last transition at or before the start of the year
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+        validFrom[0] = (previous == null) ? Long.MIN_VALUE : previous.toEpochSecond() * SECOND_MILLIS;
+
+        int size = 1;
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        while (next != null && next.toEpochSecond() * SECOND_MILLIS < yearEnd) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * size);
+                validFrom = Arrays.copyOf(validFrom, 2 * size);
+            }
+            offsets[size] = next.getOffsetAfter().getTotalSeconds() * SECOND_MILLIS;
+            validFrom[size] = next.toEpochSecond() * SECOND_MILLIS;
+            size++;
+            next = rules.nextTransition(next.getInstant());
+        }
+        final long validTo = (next == null) ? Long.MAX_VALUE : next.toEpochSecond() * SECOND_MILLIS;
+
+        return new ZoneTransitionTable(Arrays.copyOf(offsets, size), Arrays.copyOf(validFrom, size), validTo);
+    }
+
+    /**
+     * @param epochMilli an instant in the year of the table
+     * @return the index of the offset valid at the instant
+     */
+    int indexOf(long epochMilli)
+    {
+        int index = Arrays.binarySearch(validFrom, epochMilli);
+        return (index >= 0) ? index : Math.max(-index - 2, 0);
+    }
+
+    /**
+     * @param index the index of an offset
+     * @return the offset in milliseconds
+     */
+    long getOffset(int index)
+    {
+        return offsets[index];
+    }
+
+    /**
+     * @param index the index of an offset
+     * @return the first instant at which the offset is valid
+     */
+    long getValidFrom(int index)
+    {
+        return validFrom[index];
+    }
+
+    /**
+     * @param index the index of an offset
+     * @return the first instant after the offset is valid
+     */
+    long getValidTo(int index)
+    {
+        return (index + 1 < validFrom.length) ? validFrom[index + 1] : validTo;
+    }
+}
@@ -20,43 +20,66 @@
 package org.xwiki.contrib.moccacalendar.script;
 
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
-import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.moccacalendar.EventInstance;
+import org.xwiki.contrib.moccacalendar.EventPage;
+import org.xwiki.contrib.moccacalendar.EventSeries;
 import org.xwiki.contrib.moccacalendar.RecurrentEventGenerator;
+import org.xwiki.contrib.moccacalendar.internal.CalendarDescriptor;
+import org.xwiki.contrib.moccacalendar.internal.CalendarDescriptorCache;
 import org.xwiki.contrib.moccacalendar.internal.EventConstants;
+import org.xwiki.contrib.moccacalendar.internal.EventMergeIterator;
+import org.xwiki.contrib.moccacalendar.internal.EventPageCollector;
+import org.xwiki.contrib.moccacalendar.internal.EventQueryBuilder;
+import org.xwiki.contrib.moccacalendar.internal.EventQueryCache;
+import org.xwiki.contrib.moccacalendar.internal.EventRightsEvaluator;
+import org.xwiki.contrib.moccacalendar.internal.OccurrenceIndex;
+import org.xwiki.contrib.moccacalendar.internal.RecurrentEventExpansionExecutor;
+import org.xwiki.contrib.moccacalendar.internal.RenderedContentCache;
+import org.xwiki.contrib.moccacalendar.internal.UpcomingOccurrenceIndex;
 import org.xwiki.contrib.moccacalendar.internal.Utils;
-import org.xwiki.model.EntityType;
+import org.xwiki.contrib.moccacalendar.internal.generators.EventTimeZoneProvider;
+import org.xwiki.contrib.moccacalendar.internal.generators.RecurrenceConfiguration;
+import org.xwiki.contrib.moccacalendar.internal.generators.RecurrenceSpec;
+import org.xwiki.contrib.moccacalendar.internal.generators.RecurrenceSpecCache;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
-import org.xwiki.model.reference.EntityReference;
-import org.xwiki.model.reference.EntityReferenceProvider;
 import org.xwiki.model.reference.EntityReferenceSerializer;
-import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryFilter;
 import org.xwiki.query.QueryManager;
 import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.script.service.ScriptService;
-import org.xwiki.security.authorization.AuthorizationManager;
 import org.xwiki.security.authorization.Right;
 
 import com.xpn.xwiki.XWikiContext;
@@ -83,43 +106,30 @@ public class MoccaCalendarScriptService implements ScriptService
         + " and obj.id=recurrent.id.id and recurrent.id.name='recurrent'"
         + " and doc.fullName=obj.name and doc.fullName!='MoccaCalendar.MoccaCalendarEventTemplate'"
         + " and obj.className='" + EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME + "'";
+    private static final String DEEPLY_NESTED_CALENDARS_QUERY = "select distinct space.parent"
+        + " from XWikiSpace as space, XWikiSpace as nested where nested.parent = space.reference"
+        + " and space.parent in (:" + EventQueryBuilder.PARAM_CALENDAR_SPACES + ")";
+    private static final String SUMMARY_QUERY_SELECT = "select doc.fullName, startdate.value, enddate.value,"
+        + " doc.title, (select allday.value from IntegerProperty as allday"
+        + " where allday.id.id=obj.id and allday.id.name='allDay') from XWikiDocument as doc";
     private static final String CALENDAR_BASE_QUERY = ", BaseObject as obj"
         + " where doc.fullName=obj.name and doc.name!='MoccaCalendarTemplate'" + " and obj.className='"
         + EventConstants.MOCCA_CALENDAR_CLASS_NAME + "' order by doc.title, doc.name";
 
-    private static final String FILTER_WIKI = "wiki";
-    private static final String FILTER_SPACE = "space";
-    private static final String FILTER_PAGE = "page";
-
     /**
-     * a small helper class to keep the data for a HQL query.
+     * titles only containing these characters are shown as they are; all others might contain
+     * markup or scripts and need to be rendered.
      */
-    private static class QueryData
-    {
-        private final StringBuilder hql = new StringBuilder();
-        private final Map<String, Object> queryParams = new HashMap<>();
-        
-        /**
-         * build the hql query.
-         * @return the string builded to construct the query
-         */
-        public StringBuilder getHql()
-        {
-            return hql;
-        }
+    private static final Pattern PLAIN_TITLE = Pattern.compile("[\\p{L}\\p{N} .:;!?'\"&+@]+");
 
-        /**
-         * the parameters for the query.
-         * @return a map of parameters
-         */
-        Map<String, Object> getQueryParams()
-        {
-            return queryParams;
-        }
-    }
+    private static final String CACHE_KIND_EVENTS = "events";
+    private static final String CACHE_KIND_SUMMARIES = "summaries";
 
-    @Inject
-    private AuthorizationManager authorizationManager;
+    private static final String INSTANCE_START_FORMAT = "yyyy-MM-dd'T'HH:mm";
+
+    private static final String FILTER_WIKI = "wiki";
+    private static final String FILTER_SPACE = "space";
+    private static final String FILTER_PAGE = "page";
 
     @Inject
     private Provider<XWikiContext> xcontextProvider;
@@ -136,9 +146,6 @@ public class MoccaCalendarScriptService implements ScriptService
     @Inject
     private QueryManager queryManager;
 
-    @Inject
-    private EntityReferenceProvider defaultEntityReferenceProvider;
-
     @Inject
     @Named("hidden")
     private QueryFilter hidden;
@@ -146,6 +153,36 @@ public class MoccaCalendarScriptService implements ScriptService
     @Inject
     private Map<String, RecurrentEventGenerator> eventGenerators;
 
+    @Inject
+    private EventRightsEvaluator rightsEvaluator;
+
+    @Inject
+    private EventQueryCache eventQueryCache;
+
+    @Inject
+    private RecurrenceSpecCache recurrenceSpecCache;
+
+    @Inject
+    private RecurrenceConfiguration recurrenceConfiguration;
+
+    @Inject
+    private EventTimeZoneProvider eventTimeZoneProvider;
+
+    @Inject
+    private RenderedContentCache renderedContentCache;
+
+    @Inject
+    private CalendarDescriptorCache calendarDescriptorCache;
+
+    @Inject
+    private RecurrentEventExpansionExecutor expansionExecutor;
+
+    @Inject
+    private UpcomingOccurrenceIndex upcomingOccurrenceIndex;
+
+    @Inject
+    private OccurrenceIndex occurrenceIndex;
+
     @Inject
     private Logger logger;
 
@@ -202,63 +239,389 @@ public class MoccaCalendarScriptService implements ScriptService
     public List<EventInstance> queryEvents(Date dateFrom, Date dateTo, String filter, String parentReference,
         boolean sortAscending, List<String> calendars) throws QueryException
     {
-
-        final XWikiContext context = xcontextProvider.get();
-
         if (dateTo == null) {
             dateTo = dateFrom;
         }
 
-        QueryData simpleEvents = new QueryData();
+        final String cacheKey = eventQueryCache.createKey(CACHE_KIND_EVENTS, dateFrom, dateTo, filter,
+            parentReference, sortAscending, calendars);
+        final List<EventInstance> cachedEvents = eventQueryCache.get(cacheKey);
+        if (cachedEvents != null) {
+            return completeCachedEvents(cachedEvents, false);
+        }
 
-        simpleEvents.getHql().append(BASE_QUERY_PREFIX);
+        EventQueryBuilder simpleEvents = createSimpleEventsQuery(dateFrom, dateTo, filter, parentReference,
+            sortAscending, calendars);
 
-        //
-        // filter by date range
-        //
+        List<String> results = Collections.emptyList();
 
-        addDateRangeFilter(simpleEvents, dateFrom, dateTo);
+        try {
+            results = executeQuery(simpleEvents);
+        } catch (QueryException qe) {
+            logger.error("error while fetching regular events", qe);
+        }
 
-        // and search only non-recurrent events
-        simpleEvents.getHql().append(" and recurrent.value = 0 ");
+        // the single events are already sorted by the query; each recurrent event is a sorted series of its own.
+        // the result is cached for all users, so the access rights are checked last
+        List<List<EventInstance>> eventSeries = new ArrayList<>();
+        eventSeries.add(createSingleEvents(resolveAll(results)));
 
         //
-        // now filter by event location
+        // so much for regular single events.
+        // now about recurrent events
         //
 
-        addLocationFilter(simpleEvents, filter, parentReference);
+        eventSeries.addAll(queryRecurrentEvents(dateFrom, dateTo, filter, parentReference, calendars, null, false));
 
-        // Filter by calendar.
-        addCalendarFilter(simpleEvents, calendars);
+        List<EventInstance> events = mergeEvents(eventSeries, sortAscending);
 
-        // finally the ordering
+        eventQueryCache.put(cacheKey, events);
+
+        return filterViewableInstances(events);
+    }
+
+    /**
+     * get a list of events matching the date and filter criteria.
+     *
+     * @param dateFrom the start range
+     * @param dateTo the end range; can be null. in that case dates form a single day are returned
+     * @param filter how to filter the event. if null or "wiki" return all events
+     * @param parentReference the page reference to use for the filter. can be null if filter is null or "wiki".
+     * @param sortAscending if true, sort events ascending by start date, else descending
+     * @return a list of event instances matching the criteria; might be empty but never null
+     * @throws QueryException if an error occurs while fetching the events
+     */
+    public List<EventInstance> queryEvents(Date dateFrom, Date dateTo, String filter, String parentReference,
+        boolean sortAscending) throws QueryException
+    {
+        return queryEvents(dateFrom, dateTo, filter, parentReference, sortAscending, Collections.emptyList());
+    }
+
+    /**
+     * get a list of events matching the date and filter criteria, without loading the documents of single events.
+     * <p>
+     * The start and end date, the all day flag and the title of single events are read directly from the
+     * query results, and the colors from the calendar documents. The description of these events is not filled;
+     * use {@link #fillEventDescription(EventInstance)} for the events where it is needed.
+     * The title is only rendered (and the document loaded for that) if it contains characters which might be
+     * markup or scripts. Recurrent events still need their documents to compute the instances, and are
+     * returned with all data filled in, as by {@link #queryEvents(Date, Date, String, String, boolean, List)}.
+     *
+     * @param dateFrom the start range
+     * @param dateTo the end range; can be null. in that case dates form a single day are returned
+     * @param filter how to filter the event. if null or "wiki" return all events
+     * @param parentReference the page reference to use for the filter. can be null if filter is null or "wiki".
+     * @param sortAscending if true, sort events ascending by start date, else descending
+     * @param calendars the calendars to display events from
+     * @return a list of event instances matching the criteria; might be empty but never null
+     * @since 2.9.12
+     */
+    public List<EventInstance> queryEventSummaries(Date dateFrom, Date dateTo, String filter,
+        String parentReference, boolean sortAscending, List<String> calendars)
+    {
+        if (dateTo == null) {
+            dateTo = dateFrom;
+        }
+
+        final String cacheKey = eventQueryCache.createKey(CACHE_KIND_SUMMARIES, dateFrom, dateTo, filter,
+            parentReference, sortAscending, calendars);
+        final List<EventInstance> cachedEvents = eventQueryCache.get(cacheKey);
+        if (cachedEvents != null) {
+            return completeCachedEvents(cachedEvents, true);
+        }
+
+        EventQueryBuilder simpleEvents = createSimpleEventsFilter(dateFrom, dateTo, filter, parentReference,
+            calendars);
+        // translations share the objects of the original document, so they would show up as duplicates
+        // with their own title; the title of the original document is used, as when rendering it
+        simpleEvents.getHql().append(" and doc.translation = 0");
         addOrderBy(sortAscending, simpleEvents);
+        // the select has to be added last, as the location filter might add tables at the start of the query
+        simpleEvents.getHql().insert(0, SUMMARY_QUERY_SELECT);
 
-        List<String> results = Collections.emptyList();
+        List<Object[]> rows = Collections.emptyList();
+        try {
+            rows = executeQuery(simpleEvents);
+        } catch (QueryException qe) {
+            logger.error("error while fetching regular events", qe);
+        }
 
+        // an event document with several event objects still shows up several times
+        final Map<DocumentReference, Object[]> rowsByEvent = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            DocumentReference eventDocRef = stringDocRefResolver.resolve((String) row[0]);
+            if (row[1] != null && !rowsByEvent.containsKey(eventDocRef)) {
+                rowsByEvent.put(eventDocRef, row);
+            }
+        }
+
+        // the result is cached for all users, so the access rights are checked and the titles rendered last
+        List<EventInstance> events = new ArrayList<>();
+        for (Map.Entry<DocumentReference, Object[]> rowOfEvent : rowsByEvent.entrySet()) {
+            final DocumentReference eventDocRef = rowOfEvent.getKey();
+            EventInstance event = createEventSummary(eventDocRef, rowOfEvent.getValue());
+            try {
+                setCalendarColors(event, calendarDescriptorCache.getCalendarOf(eventDocRef));
+            } catch (XWikiException e) {
+                logger.warn("cannot find calendar data for event [{}]", eventDocRef, e);
+                setCalendarColors(event, null);
+            }
+            events.add(event);
+        }
+
+        List<List<EventInstance>> eventSeries = new ArrayList<>();
+        eventSeries.add(events);
+        eventSeries.addAll(queryRecurrentEvents(dateFrom, dateTo, filter, parentReference, calendars, null, false));
+
+        events = mergeEvents(eventSeries, sortAscending);
+
+        eventQueryCache.put(cacheKey, events);
+
+        events = filterViewableInstances(events);
+        renderMissingTitles(events);
+        return events;
+    }
+
+    /**
+     * get one page of the events matching the date and filter criteria.
+     * <p>
+     * Only the events needed for the requested page are created, so the memory used depends on the size of
+     * the page and not on the length of the date range. The returned page contains a cursor which can be passed
+     * to the next call to get the following events.
+     *
+     * @param dateFrom the start range
+     * @param dateTo the end range; can be null. in that case dates form a single day are returned
+     * @param filter how to filter the event. if null or "wiki" return all events
+     * @param parentReference the page reference to use for the filter. can be null if filter is null or "wiki".
+     * @param sortAscending if true, sort events ascending by start date, else descending
+     * @param calendars the calendars to display events from
+     * @param limit the maximal number of events in the page
+     * @param cursor the cursor from the previous page; null for the first page
+     * @return the page of events; if the cursor is invalid, the page is empty
+     * @since 2.9.12
+     */
+    public EventPage queryEventPage(Date dateFrom, Date dateTo, String filter, String parentReference,
+        boolean sortAscending, List<String> calendars, int limit, String cursor)
+    {
+        if (dateTo == null) {
+            dateTo = dateFrom;
+        }
+
+        EventPageCollector page;
         try {
+            page = new EventPageCollector(sortAscending, Math.max(limit, 1), cursor);
+        } catch (IllegalArgumentException e) {
+            logger.warn("cannot query events: [{}]", e.getMessage());
+            return new EventPage(Collections.<EventInstance>emptyList(), null);
+        }
+
+        collectSingleEventPage(page, dateFrom, dateTo, filter, parentReference, sortAscending, calendars);
+
+        Date[] recurrentRange = page.narrowRange(dateFrom, dateTo);
+        if (!recurrentRange[0].after(recurrentRange[1])) {
+            queryRecurrentEvents(recurrentRange[0], recurrentRange[1], filter, parentReference, calendars, page,
+                true);
+        }
+
+        return page.createPage();
+    }
+
+    /**
+     * get the next events of the whole wiki, starting with the events of today.
+     * <p>
+     * The recurrent events are taken from an index of their upcoming instances, so they do not need to be expanded;
+     * see {@link UpcomingOccurrenceIndex} for its limits. Only the events visible to the current user are returned.
+     *
+     * @param count the maximal number of events
+     * @return the events, sorted ascending by start date; might be empty but never null
+     * @since 2.9.12
+     */
+    public List<EventInstance> queryUpcomingEvents(int count)
+    {
+        final int limit = Math.max(count, 1);
+        final Date dateFrom = EventQueryBuilder.startOfDay(new Date());
+        final Date dateTo = upcomingOccurrenceIndex.horizonOf(dateFrom);
 
-            logger.debug("sending query [{}] and params [{}]", simpleEvents.getHql(), simpleEvents.getQueryParams());
+        EventPageCollector page = new EventPageCollector(true, limit, null);
+        collectSingleEventPage(page, dateFrom, dateTo, FILTER_WIKI, null, true, Collections.<String>emptyList());
 
-            Query query = queryManager.createQuery(simpleEvents.getHql().toString(), Query.HQL);
+        final XWikiContext context = xcontextProvider.get();
+        final DocumentReference userReference = context.getUserReference();
+        final List<UpcomingOccurrenceIndex.Occurrence> occurrences = upcomingOccurrenceIndex.next(
+            context.getWikiId(), limit, dateFrom,
+            new Function<Collection<DocumentReference>, Collection<DocumentReference>>()
+            {
+                @Override
+                public Collection<DocumentReference> apply(Collection<DocumentReference> eventDocRefs)
+                {
+                    return rightsEvaluator.filterAccessible(Right.VIEW, userReference, eventDocRefs);
+                }
+            });
 
-            for (Map.Entry<String, Object> param : simpleEvents.getQueryParams().entrySet()) {
-                query.bindValue(param.getKey(), param.getValue());
+        final Set<DocumentReference> eventDocRefs = new HashSet<>();
+        for (UpcomingOccurrenceIndex.Occurrence occurrence : occurrences) {
+            eventDocRefs.add(occurrence.getEventDocRef());
+        }
+        final Map<DocumentReference, XWikiDocument> eventDocs = loadDocuments(eventDocRefs);
+        for (UpcomingOccurrenceIndex.Occurrence occurrence : occurrences) {
+            XWikiDocument eventDoc = eventDocs.get(occurrence.getEventDocRef());
+            if (eventDoc != null) {
+                try {
+                    page.add(createRecurrentEventInstance(eventDoc, occurrence.getStart()));
+                } catch (XWikiException e) {
+                    logger.warn("cannot create the instance of recurrent event [{}]", occurrence.getEventDocRef(),
+                        e);
+                }
             }
+        }
+
+        return page.createPage().getEvents();
+    }
 
-            results = query.execute();
+    /**
+     * create the instance of a recurrent event with the given original start date, taking modifications into
+     * account.
+     */
+    private EventInstance createRecurrentEventInstance(XWikiDocument eventDoc, long start) throws XWikiException
+    {
+        final BaseObject eventData = eventDoc
+            .getXObject(eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
+        final RecurrenceSpec spec = recurrenceSpecCache.get(eventDoc);
+        final RecurrenceSpec.Modification modification = spec.getModifications().get(start);
+
+        EventInstance event;
+        if (modification != null) {
+            event = createModifiedEventData(eventDoc, modification, spec.getDateTimeZone());
+        } else {
+            event = new EventInstance();
+            event.setTimeZone(spec.getDateTimeZone());
+            event.setStartMillis(start);
+            event.setEndMillis(start + spec.getDuration());
+        }
+        event.setRecurrent(true);
+        completeEventData(event, eventDoc, eventData);
+
+        return event;
+    }
+
+    /**
+     * get the number of event queries which have been answered from the cache.
+     * @return the number of cache hits since the start of the wiki
+     * @since 2.9.12
+     */
+    public long getEventCacheHitCount()
+    {
+        return eventQueryCache.getHitCount();
+    }
+
+    /**
+     * get the number of event queries which had to be sent to the database.
+     * @return the number of cache misses since the start of the wiki
+     * @since 2.9.12
+     */
+    public long getEventCacheMissCount()
+    {
+        return eventQueryCache.getMissCount();
+    }
+
+    /**
+     * fill the description of an event instance, if it has not been filled yet.
+     * this is needed for the events returned by
+     * {@link #queryEventSummaries(Date, Date, String, String, boolean, List)}.
+     *
+     * @param event the event instance
+     * @return the same event instance, with the description filled in if possible
+     * @since 2.9.12
+     */
+    public EventInstance fillEventDescription(EventInstance event)
+    {
+        if (event.hasDescription() || event.getEventDocRef() == null) {
+            return event;
+        }
+
+        final XWikiContext context = xcontextProvider.get();
+        try {
+            XWikiDocument eventDoc = context.getWiki().getDocument(event.getEventDocRef(), context);
+            BaseObject eventData = eventDoc
+                .getXObject(eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
+            if (eventData != null) {
+                fillDescription(eventData, event);
+            }
+        } catch (XWikiException e) {
+            logger.warn("cannot load description of event [{}]", event.getEventDocRef(), e);
+        }
+
+        return event;
+    }
+
+    /**
+     * add the single events needed for the page.
+     * the events are fetched in batches in the order of the page, until the page is full
+     * and all events with the same start date as the last one in the page are found.
+     */
+    private void collectSingleEventPage(EventPageCollector page, Date dateFrom, Date dateTo, String filter,
+        String parentReference, boolean sortAscending, List<String> calendars)
+    {
+        EventQueryBuilder simpleEvents = createSimpleEventsFilter(dateFrom, dateTo, filter, parentReference,
+            calendars);
+        if (page.getCursorDate() != null) {
+            simpleEvents.getHql().append(sortAscending ? " and startdate.value >= :cursorStart"
+                : " and startdate.value <= :cursorStart");
+            simpleEvents.getQueryParams().put("cursorStart", page.getCursorDate());
+        }
+        addOrderBy(sortAscending, simpleEvents);
+        // needed to get a stable order for events with the same start date
+        simpleEvents.getHql().append(", doc.id");
+        simpleEvents.getHql().insert(0, "select doc.fullName, startdate.value from XWikiDocument as doc");
+
+        final DocumentReference userReference = xcontextProvider.get().getUserReference();
+        final int batchSize = page.getCapacity();
+        final Set<DocumentReference> seenEvents = new HashSet<>();
+        final List<DocumentReference> pageEvents = new ArrayList<>();
+        Long lastStart = null;
+
+        try {
+            boolean complete = false;
+            for (int offset = 0; !complete; offset += batchSize) {
+                List<Object[]> rows = executeQuery(simpleEvents, batchSize, offset);
+                Map<DocumentReference, Long> batch = new LinkedHashMap<>();
+                for (Object[] row : rows) {
+                    DocumentReference eventDocRef = stringDocRefResolver.resolve((String) row[0]);
+                    if (seenEvents.add(eventDocRef)) {
+                        batch.put(eventDocRef, ((Date) row[1]).getTime());
+                    }
+                }
+                complete = rows.size() < batchSize;
+                for (DocumentReference eventDocRef : rightsEvaluator.filterAccessible(Right.VIEW, userReference,
+                    batch.keySet())) {
+                    long start = batch.get(eventDocRef);
+                    if (lastStart != null && lastStart != start) {
+                        complete = true;
+                        break;
+                    }
+                    pageEvents.add(eventDocRef);
+                    if (lastStart == null && pageEvents.size() >= batchSize) {
+                        lastStart = start;
+                    }
+                }
+            }
         } catch (QueryException qe) {
             logger.error("error while fetching regular events", qe);
         }
 
-        List<DocumentReference> visibleEvents = filterViewableEvents(results);
+        for (EventInstance event : createSingleEvents(pageEvents)) {
+            page.add(event);
+        }
+    }
 
+    private List<EventInstance> createSingleEvents(Collection<DocumentReference> eventDocRefs)
+    {
         List<EventInstance> events = new ArrayList<>();
 
-        for (DocumentReference eventDocRef : visibleEvents) {
+        for (Map.Entry<DocumentReference, XWikiDocument> eventEntry : loadDocuments(eventDocRefs).entrySet()) {
+            final DocumentReference eventDocRef = eventEntry.getKey();
             try {
-                // DocumentReference eventDocRef = stringDocRefResolver.resolve(docRef);
-                XWikiDocument eventDoc = context.getWiki().getDocument(eventDocRef, context);
+                XWikiDocument eventDoc = eventEntry.getValue();
                 BaseObject eventData = eventDoc
                     .getXObject(stringDocRefResolver.resolve(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
                 if (eventData == null) {
@@ -269,14 +632,13 @@ public class MoccaCalendarScriptService implements ScriptService
 
                 EventInstance event = new EventInstance();
                 event.setEventDocRef(eventDocRef);
+                event.setTimeZone(timeZoneOf(eventDocRef));
 
                 Date startDate = eventData.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME);
-                DateTime startDateTime = new DateTime(startDate.getTime());
-                event.setStartDate(startDateTime);
+                event.setStartMillis(startDate.getTime());
 
                 Date endDate = Utils.fetchOrGuessEndDate(eventData);
-                DateTime endDateTime = new DateTime(endDate.getTime());
-                event.setEndDate(endDateTime);
+                event.setEndMillis(endDate.getTime());
 
                 completeEventData(event, eventDoc, eventData);
 
@@ -286,12 +648,58 @@ public class MoccaCalendarScriptService implements ScriptService
             }
         }
 
+        return events;
+    }
+
+    private EventQueryBuilder createSimpleEventsQuery(Date dateFrom, Date dateTo, String filter,
+        String parentReference, boolean sortAscending, List<String> calendars)
+    {
+        EventQueryBuilder simpleEvents = createSimpleEventsFilter(dateFrom, dateTo, filter, parentReference,
+            calendars);
+
+        // finally the ordering
+        addOrderBy(sortAscending, simpleEvents);
+
+        return simpleEvents;
+    }
+
+    private EventQueryBuilder createSimpleEventsFilter(Date dateFrom, Date dateTo, String filter,
+        String parentReference, List<String> calendars)
+    {
+        EventQueryBuilder simpleEvents = new EventQueryBuilder();
+
+        simpleEvents.getHql().append(BASE_QUERY_PREFIX);
+
         //
-        // so much for regular single events.
-        // now about recurrent events
+        // filter by date range
         //
 
-        QueryData recurrentEventQuery = new QueryData();
+        addDateRangeFilter(simpleEvents, dateFrom, dateTo);
+
+        // and search only non-recurrent events
+        simpleEvents.getHql().append(" and recurrent.value = 0 ");
+
+        //
+        // now filter by event location
+        //
+
+        addLocationFilter(simpleEvents, filter, parentReference);
+
+        // Filter by calendar.
+        addCalendarFilter(simpleEvents, calendars);
+
+        return simpleEvents;
+    }
+
+    /**
+     * create the instances of the recurrent events in the date range; if a page is given, they are added to it.
+     * the events the current user cannot view are only skipped if requested, as the results for the cache
+     * have to contain the events of all users.
+     */
+    private List<List<EventInstance>> queryRecurrentEvents(Date dateFrom, Date dateTo, String filter,
+        String parentReference, List<String> calendars, EventPageCollector page, boolean viewableOnly)
+    {
+        EventQueryBuilder recurrentEventQuery = new EventQueryBuilder();
 
         recurrentEventQuery.getHql().append(BASE_QUERY_PREFIX);
 
@@ -303,219 +711,504 @@ public class MoccaCalendarScriptService implements ScriptService
         // Filter the recurrent events by calendar.
         addCalendarFilter(recurrentEventQuery, calendars);
 
-        // and search only recurrent events
-        recurrentEventQuery.getHql().append(" and recurrent.value = 1 ");
+        // and search only recurrent events; with the version the occurrence index can tell if it is up to date
+        recurrentEventQuery.getHql().append(" and recurrent.value = 1 and doc.translation = 0");
+        recurrentEventQuery.getHql().insert(0, "select doc.fullName, doc.version from XWikiDocument as doc");
 
         try {
-            List<String> allRecurrentEvents = Collections.emptyList();
+            List<Object[]> allRecurrentEvents = executeQuery(recurrentEventQuery);
+            Map<DocumentReference, String> versions = new LinkedHashMap<>();
+            for (Object[] row : allRecurrentEvents) {
+                versions.put(stringDocRefResolver.resolve((String) row[0]), (String) row[1]);
+            }
+
+            Collection<DocumentReference> eventDocRefs = versions.keySet();
+            if (viewableOnly) {
+                final DocumentReference userReference = xcontextProvider.get().getUserReference();
+                eventDocRefs = rightsEvaluator.filterAccessible(Right.VIEW, userReference,
+                    new ArrayList<>(eventDocRefs));
+            }
+
+            // skip those which have no instance in the date range, as far as we know from the occurrence index
+            List<DocumentReference> candidateEvents = new ArrayList<>();
+            for (DocumentReference eventDocRef : eventDocRefs) {
+                if (occurrenceIndex.mayOccurIn(eventDocRef, versions.get(eventDocRef), dateFrom, dateTo)) {
+                    candidateEvents.add(eventDocRef);
+                }
+            }
+
+            return filterRecurrentEvents(candidateEvents, dateFrom, dateTo, page);
+        } catch (QueryException e) {
+            logger.error("error while fetching recurrent events", e);
+        }
+
+        return Collections.emptyList();
+    }
+
+    private <T> List<T> executeQuery(EventQueryBuilder data) throws QueryException
+    {
+        return executeQuery(data, -1, 0);
+    }
+
+    private <T> List<T> executeQuery(EventQueryBuilder data, int limit, int offset) throws QueryException
+    {
+        logger.debug("sending query [{}] and params [{}]", data.getHql(), data.getQueryParams());
 
-            logger.debug("sending query [{}] and params [{}]", recurrentEventQuery.getHql(),
-                recurrentEventQuery.getQueryParams());
+        Query query = queryManager.createQuery(data.getHql().toString(), Query.HQL);
 
-            Query query = queryManager.createQuery(recurrentEventQuery.getHql().toString(), Query.HQL);
+        for (Map.Entry<String, Object> param : data.getQueryParams().entrySet()) {
+            query.bindValue(param.getKey(), param.getValue());
+        }
+        if (limit > 0) {
+            query.setLimit(limit);
+            query.setOffset(offset);
+        }
+
+        return query.execute();
+    }
+
+    /**
+     * create an event instance from a row of the summary query.
+     * the title is only set if it can be used without rendering.
+     */
+    private EventInstance createEventSummary(DocumentReference eventDocRef, Object[] row)
+    {
+        final Date startDate = (Date) row[1];
+        final boolean isAllDay = (row[4] instanceof Number) && ((Number) row[4]).intValue() == 1;
+        Date endDate = (Date) row[2];
+        if (endDate == null) {
+            endDate = Utils.guessEndDate(startDate, isAllDay);
+        }
+
+        EventInstance event = new EventInstance();
+        event.setEventDocRef(eventDocRef);
+        event.setTimeZone(timeZoneOf(eventDocRef));
+        event.setStartMillis(startDate.getTime());
+        event.setEndMillis(endDate.getTime());
+        event.setAllDay(isAllDay);
+        fillEndDateExclusive(event);
+
+        final String title = (String) row[3];
+        if (title != null && !title.trim().isEmpty() && PLAIN_TITLE.matcher(title).matches()) {
+            event.setTitle(title.trim());
+        }
+
+        return event;
+    }
 
-            for (Map.Entry<String, Object> param : recurrentEventQuery.getQueryParams().entrySet()) {
-                query.bindValue(param.getKey(), param.getValue());
+    /**
+     * render the titles of the single events which are not plain text, see {@link #createEventSummary}.
+     */
+    private void renderMissingTitles(List<EventInstance> events)
+    {
+        final Map<EventInstance, DocumentReference> titlesToRender = new HashMap<>();
+        for (EventInstance event : events) {
+            if (!event.hasTitle()) {
+                titlesToRender.put(event, event.getEventDocRef());
             }
+        }
+        renderTitles(titlesToRender);
+    }
 
-            allRecurrentEvents = query.execute();
-
-            List<DocumentReference> visibleRecurrentEvents = filterViewableEvents(allRecurrentEvents);
+    private void renderTitles(Map<EventInstance, DocumentReference> titlesToRender)
+    {
+        if (titlesToRender.isEmpty()) {
+            return;
+        }
 
-            List<EventInstance> recurrentEventInstances = filterRecurrentEvents(visibleRecurrentEvents,
-                dateFrom, dateTo);
+        final Map<DocumentReference, XWikiDocument> eventDocs = loadDocuments(titlesToRender.values());
+        for (Map.Entry<EventInstance, DocumentReference> titleToRender : titlesToRender.entrySet()) {
+            XWikiDocument eventDoc = eventDocs.get(titleToRender.getValue());
+            titleToRender.getKey().setTitle((eventDoc == null) ? titleToRender.getValue().getName()
+                : renderedContentCache.renderTitle(eventDoc, Syntax.PLAIN_1_0));
+        }
+    }
 
-            events.addAll(recurrentEventInstances);
+    /**
+     * @return the events the current user can view, in the same order
+     */
+    private List<EventInstance> filterViewableInstances(List<EventInstance> events)
+    {
+        final Set<DocumentReference> eventDocRefs = new LinkedHashSet<>();
+        for (EventInstance event : events) {
+            eventDocRefs.add(event.getEventDocRef());
+        }
+        final DocumentReference userReference = xcontextProvider.get().getUserReference();
+        final Set<DocumentReference> viewableEvents = new HashSet<>(
+            rightsEvaluator.filterAccessible(Right.VIEW, userReference, eventDocRefs));
 
-        } catch (QueryException | XWikiException e) {
-            logger.error("error while fetching recurrent events", e);
+        List<EventInstance> viewableInstances = new ArrayList<>(events.size());
+        for (EventInstance event : events) {
+            if (viewableEvents.contains(event.getEventDocRef())) {
+                viewableInstances.add(event);
+            }
         }
+        return viewableInstances;
+    }
 
-        sortEvents(events, sortAscending);
+    /**
+     * prepare the events from the query cache for the current request: skip the events the current user cannot view
+     * and fill in the titles and descriptions the cache does not keep. for summaries, only the titles of single
+     * events which are not plain text are needed, as by {@link #queryEventSummaries}.
+     */
+    private List<EventInstance> completeCachedEvents(List<EventInstance> cachedEvents, boolean summaries)
+    {
+        final List<EventInstance> events = filterViewableInstances(cachedEvents);
 
-        return events;
+        final Set<DocumentReference> eventDocRefs = new HashSet<>();
+        for (EventInstance event : events) {
+            if (event.isRecurrent() || !summaries) {
+                eventDocRefs.add(event.getEventDocRef());
+            }
+        }
+        final Map<DocumentReference, XWikiDocument> eventDocs = loadDocuments(eventDocRefs);
+        final Map<DocumentReference, EventSeries> seriesData = new HashMap<>();
+
+        List<EventInstance> completedEvents = new ArrayList<>(events.size());
+        for (EventInstance event : events) {
+            final DocumentReference eventDocRef = event.getEventDocRef();
+            if (!event.isRecurrent() && summaries) {
+                completedEvents.add(event);
+                continue;
+            }
+            final XWikiDocument eventDoc = eventDocs.get(eventDocRef);
+            final BaseObject eventData = (eventDoc == null) ? null
+                : eventDoc.getXObject(eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
+            if (eventData == null) {
+                // deleted since it has been cached
+                continue;
+            }
+            try {
+                if (!event.isRecurrent()) {
+                    completeEventData(event, eventDoc, eventData);
+                    completedEvents.add(event);
+                } else if (event.getOriginalStartMillis() != EventInstance.NO_DATE) {
+                    completedEvents.add(createRecurrentEventInstance(eventDoc, event.getOriginalStartMillis()));
+                } else {
+                    EventSeries series = seriesData.get(eventDocRef);
+                    if (series == null) {
+                        series = createSeriesData(eventDoc, eventData);
+                        seriesData.put(eventDocRef, series);
+                    }
+                    event.setSeriesData(series);
+                    completedEvents.add(event);
+                }
+            } catch (XWikiException e) {
+                logger.warn("cannot find event data [{}]", eventDocRef, e);
+            }
+        }
+
+        if (summaries) {
+            renderMissingTitles(completedEvents);
+        }
+        return completedEvents;
     }
 
     /**
-     * get a list of events matching the date and filter criteria.
+     * load the documents with the given references, each one only once. the documents are loaded one by one
+     * through the document cache of the wiki; a document which cannot be loaded is skipped.
      *
-     * @param dateFrom the start range
-     * @param dateTo the end range; can be null. in that case dates form a single day are returned
-     * @param filter how to filter the event. if null or "wiki" return all events
-     * @param parentReference the page reference to use for the filter. can be null if filter is null or "wiki".
-     * @param sortAscending if true, sort events ascending by start date, else descending
-     * @return a list of event instances matching the criteria; might be empty but never null
-     * @throws QueryException if an error occurs while fetching the events
+     * @return a map from the references to the documents, in the order of the given references
      */
-    public List<EventInstance> queryEvents(Date dateFrom, Date dateTo, String filter, String parentReference,
-        boolean sortAscending) throws QueryException
+    private Map<DocumentReference, XWikiDocument> loadDocuments(Collection<DocumentReference> references)
     {
-        return queryEvents(dateFrom, dateTo, filter, parentReference, sortAscending, Collections.emptyList());
+        final XWikiContext context = xcontextProvider.get();
+        final Map<DocumentReference, XWikiDocument> documents = new LinkedHashMap<>();
+        for (DocumentReference reference : references) {
+            if (!documents.containsKey(reference)) {
+                try {
+                    documents.put(reference, context.getWiki().getDocument(reference, context));
+                } catch (XWikiException e) {
+                    logger.warn("cannot load event document [{}]", reference, e);
+                }
+            }
+        }
+        return documents;
     }
 
     private List<DocumentReference> filterViewableEvents(List<String> eventDocRefs)
     {
-        List<DocumentReference> visibleRefs = new ArrayList<>();
         // check view rights on results ... should use "viewable" filter when minimal platform version is >= 9.8
         final DocumentReference userReference = xcontextProvider.get().getUserReference();
-        for (ListIterator<String> iter = eventDocRefs.listIterator(); iter.hasNext();) {
-            DocumentReference eventDocRef = stringDocRefResolver.resolve(iter.next());
-            if (authorizationManager.hasAccess(Right.VIEW, userReference, eventDocRef)) {
-                visibleRefs.add(eventDocRef);
-            }
-        }
-
-        return visibleRefs;
+        return rightsEvaluator.filterAccessible(Right.VIEW, userReference, resolveAll(eventDocRefs));
     }
 
     private List<DocumentReference> filterEditableCalendars(List<String> calendars)
     {
-        List<DocumentReference> editableCalendars = new ArrayList<>();
         // Check edit rights on results.
         final DocumentReference userReference = xcontextProvider.get().getUserReference();
-        for (String calendar : calendars) {
-            DocumentReference calendarDocRef = stringDocRefResolver.resolve(calendar);
-            if (authorizationManager.hasAccess(Right.EDIT, userReference, calendarDocRef)) {
-                editableCalendars.add(calendarDocRef);
+        return rightsEvaluator.filterAccessible(Right.EDIT, userReference, resolveAll(calendars));
+    }
+
+    private List<DocumentReference> resolveAll(List<String> docRefs)
+    {
+        List<DocumentReference> resolvedRefs = new ArrayList<>(docRefs.size());
+        for (String docRef : docRefs) {
+            resolvedRefs.add(stringDocRefResolver.resolve(docRef));
+        }
+        return resolvedRefs;
+    }
+
+    /**
+     * create the instances of the given recurrent events.
+     * if a page is given, the instances are added to the page and only the part of the date range relevant
+     * for the page is taken into account; otherwise they are returned as one list per event.
+     */
+    private List<List<EventInstance>> filterRecurrentEvents(List<DocumentReference> eventReferences,
+        final Date dateFrom, final Date dateTo, EventPageCollector page)
+    {
+        final Map<DocumentReference, XWikiDocument> eventDocs = loadDocuments(eventReferences);
+
+        if (page == null) {
+            // the events are independent of each other, so they can be expanded in parallel
+            List<Callable<List<EventInstance>>> tasks = new ArrayList<>();
+            for (final XWikiDocument eventDoc : eventDocs.values()) {
+                tasks.add(new Callable<List<EventInstance>>()
+                {
+                    @Override
+                    public List<EventInstance> call()
+                    {
+                        return expandRecurrentEvent(eventDoc, dateFrom, dateTo);
+                    }
+                });
+            }
+
+            final List<List<EventInstance>> eventSeries = new ArrayList<>();
+            for (List<EventInstance> eventsInstances : expansionExecutor.invokeAll(tasks)) {
+                if (!eventsInstances.isEmpty()) {
+                    eventSeries.add(eventsInstances);
+                }
             }
+            return eventSeries;
         }
 
-        return editableCalendars;
+        // for a page the relevant range gets smaller once the page is full, so expand them one after the other;
+        // events starting exactly at the horizon might still be needed, so every event is looked at
+        for (XWikiDocument eventDoc : eventDocs.values()) {
+            Date[] pageRange = page.narrowRange(dateFrom, dateTo);
+            expandRecurrentEvent(eventDoc, pageRange[0], pageRange[1], page);
+        }
+        return Collections.emptyList();
     }
 
-    private List<EventInstance> filterRecurrentEvents(List<DocumentReference> eventReferences, Date dateFrom,
-        Date dateTo) throws XWikiException
+    private List<EventInstance> expandRecurrentEvent(XWikiDocument eventDoc, Date dateFrom, Date dateTo)
     {
-        final XWikiContext context = xcontextProvider.get();
-        final List<EventInstance> eventsInstances = new ArrayList<>();
-        for (DocumentReference eventDocRef : eventReferences) {
-            // DocumentReference eventDocRef = stringDocRefResolver.resolve(docRef);
-            XWikiDocument eventDoc = context.getWiki().getDocument(eventDocRef, context);
-            BaseObject eventData = eventDoc
-                .getXObject(eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
-            BaseObject eventRecData = eventDoc.getXObject(
-                eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_RECURRENCY_CLASS_NAME));
+        return expandRecurrentEvent(eventDoc, dateFrom, dateTo, null);
+    }
+
+    /**
+     * create the instances of a recurrent event in the given date range, taking deletions and modifications
+     * into account. if a page is given, the instances are added to it as they are generated and none are
+     * returned; otherwise this might be called in parallel for several events.
+     */
+    private List<EventInstance> expandRecurrentEvent(XWikiDocument eventDoc, Date dateFrom, Date dateTo,
+        EventPageCollector page)
+    {
+        final DocumentReference eventDocRef = eventDoc.getDocumentReference();
+        try {
+            return expandRecurrentEventInstances(eventDoc, eventDocRef, dateFrom, dateTo, page);
+        } catch (XWikiException e) {
+            logger.warn("cannot create the instances of recurrent event [{}]", eventDocRef, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private List<EventInstance> expandRecurrentEventInstances(XWikiDocument eventDoc,
+        DocumentReference eventDocRef, Date dateFrom, Date dateTo, EventPageCollector page) throws XWikiException
+    {
+        final long indexGeneration = occurrenceIndex.getGeneration();
+        BaseObject eventData = eventDoc
+            .getXObject(eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
+        BaseObject eventRecData = eventDoc.getXObject(
+            eventDoc.resolveClassReference(EventConstants.MOCCA_CALENDAR_EVENT_RECURRENCY_CLASS_NAME));
+
+        if (eventRecData == null) {
+            // duh
+            logger.info("found recurrent event [{}] without recurrency information; skipping",
+                eventDocRef);
+            return Collections.emptyList();
+        }
+
+        String eventType = eventRecData.getStringValue(EventConstants.PROPERTY_FREQUENCY_NAME);
+        RecurrentEventGenerator generator = this.eventGenerators.get(eventType);
+        if (generator == null) {
+            logger.error("no recurrent event generator found for frequency [{}] used by [{}]",
+                eventType, eventDocRef);
+            return Collections.emptyList();
+        }
 
-            if (eventRecData == null) {
-                // duh
-                logger.info("found recurrent event [{}] without recurrency information; skipping",
+        final RecurrenceSpec spec = recurrenceSpecCache.get(eventDoc);
+        if (spec.getExclusionCount() > 0 && logger.isDebugEnabled()) {
+            logger.debug("found {} deletions for event [{}])", spec.getExclusionCount(), eventDoc);
+        }
+        final LongPredicate excluded = spec.newExclusionFilter();
+        final Map<Long, RecurrenceSpec.Modification> modifications = spec.getModifications();
+        final long rangeFrom = dateFrom.getTime();
+        final long rangeTo = dateTo.getTime();
+        final Set<RecurrenceSpec.Modification> applied = Collections.newSetFromMap(
+            new IdentityHashMap<RecurrenceSpec.Modification, Boolean>());
+        final EventSeries seriesData = createSeriesData(eventDoc, eventData);
+        List<EventInstance> eventsInstances = new ArrayList<>();
+        // the instances found here are all the occurrence index needs to know about the date range
+        LongStream.Builder occurrences = LongStream.builder();
+        boolean complete = true;
+        long indexedTo = dateTo.getTime();
+
+        // the generators compute the instances only as far as they are consumed, so the limit is applied here
+        final int maxInstances = recurrenceConfiguration.getMaxInstances();
+        Iterator<EventInstance> instances = generator.iterate(eventDoc, dateFrom, dateTo);
+        for (int generated = 0; instances.hasNext(); generated++) {
+            if (generated == maxInstances) {
+                logger.info("maximal number of instances [{}] taken for [{}]; stopping", maxInstances,
                     eventDocRef);
+                complete = false;
+                break;
+            }
+            EventInstance event = instances.next();
+            final long start = event.getStartMillis();
+            if (excluded.test(start)) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("skip deleted event at {} for doc [{}])",
+                        event.getStartDate(), eventDoc);
+                }
                 continue;
             }
-
-            String eventType = eventRecData.getStringValue("frequency");
-            RecurrentEventGenerator generator = this.eventGenerators.get(eventType);
-            if (generator == null) {
-                logger.error("no recurrent event generator found for frequency [{}] used by [{}]",
-                    eventType, eventDocRef);
+            if (page != null && page.isBeyondHorizon(start)) {
+                if (page.isAscending()) {
+                    // the generators return the instances ascending, so none of the following is needed either
+                    indexedTo = start - 1;
+                    break;
+                }
+                // unless it has been moved into the page; then it is added with the modified instances below
+                occurrences.add(start);
                 continue;
             }
-
-            Set<Long> deletions = deletedEventsOf(eventDoc);
-            Map<Long, EventInstance> modifiedEvents = modifiedEventsOf(eventDoc, dateFrom, dateTo);
-
-            for (EventInstance event : generator.generate(eventDoc, dateFrom, dateTo)) {
-                if (deletions.contains(event.getStartDate().getMillis())) {
-                    if (logger.isTraceEnabled()) {
-                        logger.trace("skip deleted event at {} for doc [{}])",
-                            event.getStartDate(), eventDoc);
-                    }
+            occurrences.add(start);
+
+            final RecurrenceSpec.Modification modification = modifications.isEmpty() ? null
+                : modifications.get(start);
+            if (modification != null) {
+                applied.add(modification);
+                if (!modification.overlaps(rangeFrom, rangeTo)) {
+                    // moved out of the date range; it shows up in the date range it has been moved to
                     continue;
                 }
-
-                EventInstance modifiedEvent = modifiedEvents.remove(event.getStartDate().getMillis());
-                if (modifiedEvent != null) {
-                    event = modifiedEvent;
-                }
-
-                // add extra stuff here that the generator does not have to set
+                event = createModifiedEventData(eventDoc, modification, spec.getDateTimeZone());
                 event.setRecurrent(true);
-
                 completeEventData(event, eventDoc, eventData);
-                eventsInstances.add(event);
+            } else {
+                // add extra stuff here that the generator does not have to set
+                event.setSeriesData(seriesData);
+                fillEndDateExclusive(event);
             }
+            collect(event, eventsInstances, page);
+        }
 
-            // TODO: what happens with modified events where the original event is not
-            // in our time range, but the modified one is?
-            if (!modifiedEvents.isEmpty()) {
-                logger.info("we dropped some modifications: [{}]", modifiedEvents.size());
-                if (logger.isDebugEnabled()) {
-                    for (Map.Entry<Long, EventInstance> modification : modifiedEvents.entrySet()) {
-                        logger.debug("event originally started at [{}]", new DateTime(modification.getKey()));
-                        EventInstance modifiedEvent = modification.getValue();
-                        logger.debug("  event start at [{}]", modifiedEvent.getStartDate());
-                        logger.debug("  event end at [{}]", modifiedEvent.getEndDate());
-                    }
-                    logger.debug("======= end of list of dropped modifications");
-                }
+        // modified events where the original event is not in our date range, but the modified one is
+        for (RecurrenceSpec.Modification modification : spec.getModificationIndex().overlapping(rangeFrom,
+            rangeTo)) {
+            if (!applied.contains(modification) && !excluded.test(modification.getOriginalStart())
+                && isInstanceOf(generator, eventDoc, modification.getOriginalStart())) {
+                EventInstance event = createModifiedEventData(eventDoc, modification, spec.getDateTimeZone());
+                event.setRecurrent(true);
+                completeEventData(event, eventDoc, eventData);
+                collect(event, eventsInstances, page);
             }
         }
+
+        if (complete && indexedTo >= dateFrom.getTime()) {
+            occurrenceIndex.index(eventDoc, indexGeneration, spec, dateFrom, new Date(indexedTo),
+                occurrences.build().toArray());
+        }
+
         return eventsInstances;
     }
 
-    private void completeEventData(EventInstance event, XWikiDocument eventDoc, BaseObject eventData)
-        throws XWikiException
+    private static void collect(EventInstance event, List<EventInstance> eventsInstances, EventPageCollector page)
     {
-        final XWikiContext context = xcontextProvider.get();
-        final String defaultPageName = defaultEntityReferenceProvider.getDefaultReference(EntityType.DOCUMENT)
-            .getName();
-        final DocumentReference eventDocRef = eventDoc.getDocumentReference();
+        if (page == null) {
+            eventsInstances.add(event);
+        } else {
+            page.add(event);
+        }
+    }
 
-        boolean isAllDay = eventData.getIntValue(EventConstants.PROPERTY_ALLDAY_NAME) == 1;
+    /**
+     * create the data shared by all unmodified instances of a recurrent event.
+     */
+    private EventSeries createSeriesData(XWikiDocument eventDoc, BaseObject eventData) throws XWikiException
+    {
+        EventInstance template = new EventInstance();
+        template.setRecurrent(true);
+        completeSeriesData(template, eventDoc, eventData);
+        return template.shareSeriesData();
+    }
 
-        DateTime endDateExclusive = event.getEndDate();
-        if (isAllDay) {
-            // as end date is actually treated exclusive by the calendar
-            // but inclusive by the input data:
-            endDateExclusive = endDateExclusive.plusDays(1);
-        }
+    private void completeEventData(EventInstance event, final XWikiDocument eventDoc, BaseObject eventData)
+        throws XWikiException
+    {
+        completeSeriesData(event, eventDoc, eventData);
+        fillEndDateExclusive(event);
+    }
 
-        event.setEndDateExclusive(endDateExclusive);
+    /**
+     * fill in everything but the dates which has not been set from the modification data.
+     */
+    private void completeSeriesData(EventInstance event, final XWikiDocument eventDoc, BaseObject eventData)
+        throws XWikiException
+    {
+        final DocumentReference eventDocRef = eventDoc.getDocumentReference();
 
-        event.setAllDay(isAllDay);
+        event.setAllDay(eventData.getIntValue(EventConstants.PROPERTY_ALLDAY_NAME) == 1);
 
-        if (null == event.getTitle()) {
-            event.setTitle(eventDoc.getRenderedTitle(Syntax.PLAIN_1_0, context));
+        // title and description are only rendered if they are actually used, e.g. not for the month view
+        if (!event.hasTitle()) {
+            event.setTitleSupplier(new Supplier<String>()
+            {
+                @Override
+                public String get()
+                {
+                    return renderedContentCache.renderTitle(eventDoc, Syntax.PLAIN_1_0);
+                }
+            });
         }
 
-        if (null == event.getDescription()) {
-            Utils.fillDescription(eventData, context, event);
+        if (!event.hasDescription()) {
+            fillDescription(eventData, event);
         }
 
         event.setEventDocRef(eventDocRef);
 
-        /* the corresponding calendar page should be the default page of the parent space.
-         * this is the space of the page if the event page is terminal, and the parent
-         * of the events page space, if the page is non-terminal
-         */
-        BaseObject calendarData = null;
-        SpaceReference parentSpaceRef = null;
-        if (defaultPageName.equals(eventDocRef.getName())) {
-            EntityReference parentRef = eventDocRef.getLastSpaceReference().getParent();
-            if ((parentRef != null) && (parentRef instanceof SpaceReference)) {
-                parentSpaceRef = (SpaceReference) parentRef;
-            }
-        } else {
-            parentSpaceRef = eventDocRef.getLastSpaceReference();
-        }
+        setCalendarColors(event, calendarDescriptorCache.getCalendarOf(eventDocRef));
+    }
 
-        if (parentSpaceRef != null) {
-            DocumentReference parentDoc = new DocumentReference(defaultPageName, parentSpaceRef);
-            XWikiDocument calendarDoc = context.getWiki().getDocument(parentDoc, context);
-            calendarData = calendarDoc
-                .getXObject(stringDocRefResolver.resolve(EventConstants.MOCCA_CALENDAR_CLASS_NAME));
+    private DateTimeZone timeZoneOf(DocumentReference eventDocRef)
+    {
+        return EventTimeZoneProvider.toDateTimeZone(eventTimeZoneProvider.get(eventDocRef));
+    }
+
+    private void fillEndDateExclusive(EventInstance event)
+    {
+        if (event.isAllDay()) {
+            // as end date is actually treated exclusive by the calendar
+            // but inclusive by the input data:
+            event.setEndDateExclusive(event.getEndDate().plusDays(1));
+        } else {
+            event.setEndExclusiveMillis(event.getEndMillis());
         }
+    }
 
-        if (calendarData == null) {
+    private void setCalendarColors(EventInstance event, CalendarDescriptor calendar)
+    {
+        if (calendar == null) {
             // some arbitrary defaults
             event.setBackgroundColor("#888");
             // text color can be missing
             event.setTextColor("");
         } else {
-            event.setTextColor(calendarData.getStringValue("textColor"));
-            event.setBackgroundColor(calendarData.getStringValue("color"));
+            event.setTextColor(calendar.getTextColor());
+            event.setBackgroundColor(calendar.getColor());
         }
-
     }
 
     /**
@@ -632,30 +1325,72 @@ public class MoccaCalendarScriptService implements ScriptService
         return event;
     }
 
-    //
-    // these helpers probably should be "QueryData" methods
-    //
+    /**
+     * format the (original) start of an instance of a recurrent event for the {@code instanceStart} request
+     * parameter, which tells the event pages and services which instance to show, edit or delete.
+     * the parameter is always written in the time zone of the server, even if the dates of the event are shown
+     * in the time zone of its calendar, as the forms read it back in that time zone.
+     *
+     * @param event an instance of a recurrent event
+     * @return the original start of the instance, or its start if it has not been moved
+     * @since 2.9.12
+     */
+    public String formatInstanceStart(EventInstance event)
+    {
+        final long instanceStart = (event.getOriginalStartMillis() == EventInstance.NO_DATE)
+            ? event.getStartMillis() : event.getOriginalStartMillis();
+        return instanceStartFormat().print(instanceStart);
+    }
+
+    /**
+     * read the {@code instanceStart} request parameter written by {@link #formatInstanceStart(EventInstance)}.
+     *
+     * @param instanceStart the value of the parameter
+     * @return the original start of the event instance, or null if the value is missing or invalid
+     * @since 2.9.12
+     */
+    public Date parseInstanceStart(String instanceStart)
+    {
+        if (instanceStart == null || instanceStart.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new Date(instanceStartFormat().parseMillis(instanceStart.trim()));
+        } catch (IllegalArgumentException e) {
+            logger.debug("invalid instance start [{}]: [{}]", instanceStart, e.getMessage());
+            return null;
+        }
+    }
 
-    private void addDateRangeFilter(QueryData data, Date dateFrom, Date dateTo)
+    /**
+     * get the time zone in which the dates of an event are shown in the calendar.
+     * this is the time zone of its calendar if it sets one, otherwise the time zone of the server.
+     *
+     * @param eventDocRef the reference to the document of the event
+     * @return the time zone of the event
+     * @since 2.9.12
+     */
+    public TimeZone getTimeZone(DocumentReference eventDocRef)
+    {
+        return TimeZone.getTimeZone(eventTimeZoneProvider.get(eventDocRef));
+    }
+
+    private static DateTimeFormatter instanceStartFormat()
     {
-        // start date / lower limit check: find all events which are not finished before the start date
-        // for this, confusingly, one need to compare the end date of the event with the start date for the range
-        // as a complication: to find events without end date, use the start date for them
-        data.getHql().append("and (enddate.value is not null and ");
-        appendDateCriterion(data, "enddate.value", "start", true);
-        data.getHql().append(" or ");
-        appendDateCriterion(data, "startdate.value", "start", true);
-        data.getHql().append(')');
+        return DateTimeFormat.forPattern(INSTANCE_START_FORMAT)
+            .withZone(DateTimeZone.forTimeZone(TimeZone.getDefault()));
+    }
 
-        // compared to this the upper limit check is straightforward, as we always have a startDate in the event
-        data.getHql().append(" and ");
-        appendDateCriterion(data, "startdate.value", "end", false);
+    //
+    // these helpers probably should be "EventQueryBuilder" methods
+    //
 
-        appendDateParameters(data, "start", dateFrom);
-        appendDateParameters(data, "end", dateTo);
+    private void addDateRangeFilter(EventQueryBuilder data, Date dateFrom, Date dateTo)
+    {
+        data.addDateRangeFilter("startdate.value", "enddate.value", dateFrom, dateTo);
     }
 
-    private void addLocationFilter(QueryData data, String filter, String parentReference)
+    private void addLocationFilter(EventQueryBuilder data, String filter, String parentReference)
     {
         switch (filter) {
             case FILTER_PAGE:
@@ -669,8 +1404,7 @@ public class MoccaCalendarScriptService implements ScriptService
                 // XXX maybe use the "bindValue(...).literal(...) instead?
                 data.getHql().append(" and ( doc.space like :space escape '!')");
                 String spaceRefStr = compactWikiSerializer.serialize(parentRef.getLastSpaceReference());
-                String spaceLikeStr = spaceRefStr.replaceAll("([%_!])", "!$1").concat(".%");
-                data.getQueryParams().put("space", spaceLikeStr);
+                data.getQueryParams().put("space", EventQueryBuilder.nestedSpacesPattern(spaceRefStr));
                 break;
             case FILTER_WIKI:
             default:
@@ -680,28 +1414,40 @@ public class MoccaCalendarScriptService implements ScriptService
     }
 
 
-    private void addCalendarFilter(QueryData data, List<String> calendars)
+    /**
+     * filter events by their calendars.
+     * events might be nested at any depth below their calendar; the query builder checks the parent of their space,
+     * and matches the space of the calendar as prefix only for calendars containing more deeply nested spaces.
+     */
+    private void addCalendarFilter(EventQueryBuilder data, List<String> calendars)
     {
         if (!calendars.isEmpty()) {
-            data.getHql().append(" and (");
-            int index = 0;
+            Set<String> calendarSpaces = new LinkedHashSet<>();
             for (String calendar : calendars) {
-                String spaceParamName = String.format("space%s", index);
-                if (index > 0) {
-                    data.getHql().append(" or ");
-                }
-                data.getHql().append(String.format("doc.space like :%s", spaceParamName));
                 DocumentReference calendarRef = stringDocRefResolver.resolve(calendar);
-                String spaceRefStr = compactWikiSerializer.serialize(calendarRef.getLastSpaceReference());
-                String spaceLikeStr = spaceRefStr.concat(".%");
-                data.getQueryParams().put(spaceParamName, spaceLikeStr);
-                index ++;
+                calendarSpaces.add(compactWikiSerializer.serialize(calendarRef.getLastSpaceReference()));
             }
-            data.getHql().append(")");
+            data.addCalendarFilter(calendarSpaces, deeplyNestedCalendarSpaces(calendarSpaces));
+        }
+    }
+
+    /**
+     * find the calendars containing spaces more than one level below their own space.
+     * this only looks at the spaces below the given calendars, so it is cheap compared to the event query.
+     */
+    private Collection<String> deeplyNestedCalendarSpaces(Collection<String> calendarSpaces)
+    {
+        try {
+            return queryManager.createQuery(DEEPLY_NESTED_CALENDARS_QUERY, Query.HQL)
+                .bindValue(EventQueryBuilder.PARAM_CALENDAR_SPACES, new ArrayList<>(calendarSpaces)).execute();
+        } catch (QueryException qe) {
+            logger.warn("could not look for nested spaces in calendars [{}]; match all of them by prefix",
+                calendarSpaces, qe);
+            return calendarSpaces;
         }
     }
 
-    private void addOrderBy(boolean sortAscending, QueryData simpleEvents)
+    private void addOrderBy(boolean sortAscending, EventQueryBuilder simpleEvents)
     {
         simpleEvents.getHql().append(" order by startdate.value ");
         if (sortAscending) {
@@ -711,126 +1457,32 @@ public class MoccaCalendarScriptService implements ScriptService
         }
     }
 
-    // the date comparision in HQL is always a bit painful - hide it in a helper
-    // for appendDateCriterion(query, "date", "field", true) this will create something like:
-    //
-    // ( year(date) > :fieldyear or ( year(date) = :fieldyear and ( month(date) > :fieldmonth or
-    // ( month(date) = :fieldmonth and day(date) >= :fieldday ) ) ) )
-    // ...
-    private static void appendDateCriterion(QueryData data, String dateField, String prefix, boolean larger)
-    {
-        final char cmpSign = (larger) ? '>' : '<';
-
-        data.getHql().append("( year(" + dateField + ") ").append(cmpSign).append(" :" + prefix + "year ");
-        data.getHql().append(" or (year(" + dateField + ") = :" + prefix + "year and ");
-        data.getHql().append("(month(" + dateField + ") ").append(cmpSign).append(" :" + prefix + "month");
-        data.getHql().append(" or (month(" + dateField + ") = :" + prefix + "month ");
-        data.getHql().append(" and day(").append(dateField).append(") ").append(cmpSign).append("= :")
-            .append(prefix).append("day");
-        data.getHql().append(')');
-        data.getHql().append(')');
-        data.getHql().append(')');
-        data.getHql().append(')');
-    }
-
-    private void appendDateParameters(QueryData data, String prefix, Date date)
-    {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-
-        int year = cal.get(Calendar.YEAR);
-        int month = cal.get(Calendar.MONTH) + 1;
-        int day = cal.get(Calendar.DAY_OF_MONTH);
-        data.getQueryParams().put(prefix + "year", year);
-        data.getQueryParams().put(prefix + "month", month);
-        data.getQueryParams().put(prefix + "day", day);
-    }
-
-    private void sortEvents(final List<EventInstance> events, final boolean ascending)
-    {
-        Collections.sort(events, new Comparator<EventInstance>()
-        {
-            @Override
-            public int compare(EventInstance event1, EventInstance event2)
-            {
-                int result;
-                final DateTime startDate1 = event1.getStartDate();
-                final DateTime startDate2 = event2.getStartDate();
-                if (startDate1 == null) {
-                    result = (startDate2 == null) ? 0 : -1;
-                } else if (startDate2 == null) {
-                    result = 1;
-                } else {
-                    result = startDate1.compareTo(startDate2);
-                }
-                return (ascending) ? result : -result;
-            }
-
-        });
-    }
-
-    private Set<Long> deletedEventsOf(XWikiDocument eventDoc)
+    private List<EventInstance> mergeEvents(List<List<EventInstance>> eventSeries, boolean sortAscending)
     {
-        Set<Long> deletions = new HashSet<>();
-
-        final List<BaseObject> deleteNotices = eventDoc.
-            getXObjects(stringDocRefResolver.resolve(EventConstants.MOCCA_CALENDAR_EVENT_DELETION_CLASS_NAME));
-        if (deleteNotices != null) {
-            for (BaseObject deleteNotice : deleteNotices) {
-                Date deleted = (deleteNotice == null)
-                    ? null : deleteNotice.getDateValue(EventConstants.PROPERTY_STARTDATE_OF_DELETED_NAME);
-                if (deleted != null) {
-                    deletions.add(deleted.getTime());
-                }
-            }
-        }
-
-        if (!deletions.isEmpty() && logger.isDebugEnabled()) {
-            logger.debug("found {} deletions for event [{}])", deletions.size(), eventDoc);
+        List<EventInstance> events = new ArrayList<>();
+        for (Iterator<EventInstance> iter = new EventMergeIterator(eventSeries, sortAscending); iter.hasNext();) {
+            events.add(iter.next());
         }
-
-        return deletions;
+        return events;
     }
 
     /**
-     * find all modified events for an event document within a given time frame.
+     * check if the series of the event has an instance with the given start date.
+     * @param generator the generator for the series
      * @param eventDoc the document of the recurrent event
-     * @param dateFrom the date from which the events are sought
-     * @param dateTo the date up to which the events are sought
-     * @return a map of original event dates to instances filled with the corresponding modifications
+     * @param start the start date of the instance in epoch milliseconds
+     * @return true if the generator creates an instance starting at the given date
      */
-    private Map<Long, EventInstance> modifiedEventsOf(XWikiDocument eventDoc, Date dateFrom, Date dateTo)
+    private boolean isInstanceOf(RecurrentEventGenerator generator, XWikiDocument eventDoc, long start)
     {
-        final Map<Long, EventInstance> results = new HashMap<>();
-        final List<BaseObject> modificationNotices = eventDoc
-                .getXObjects(stringDocRefResolver.resolve(EventConstants.MOCCA_CALENDAR_EVENT_MODIFICATION_CLASS_NAME));
-        final BaseObject eventData = eventDoc
-                .getXObject(stringDocRefResolver.resolve(EventConstants.MOCCA_CALENDAR_EVENT_CLASS_NAME));
-
-        if (modificationNotices != null) {
-            for (int i = 0, n = modificationNotices.size(); i < n; i++) {
-
-                BaseObject modificationNotice = modificationNotices.get(i);
-                if (modificationNotice == null) {
-                    continue;
-                }
-
-                Date originalStartDate = modificationNotice.getDateValue(
-                    EventConstants.PROPERTY_ORIG_STARTDATE_OF_MODIFIED_NAME);
-                if (originalStartDate == null) {
-                    continue;
-                }
-
-                EventInstance modifiedInstance = createModifiedEventData(eventDoc, eventData, modificationNotice,
-                    originalStartDate, dateFrom, dateTo);
-                if (modifiedInstance == null) {
-                    continue;
-                }
-
-                results.put(originalStartDate.getTime(), modifiedInstance);
+        final Date date = new Date(start);
+        for (Iterator<EventInstance> instances = generator.iterate(eventDoc, date, date); instances.hasNext();) {
+            final long instanceStart = instances.next().getStartMillis();
+            if (instanceStart >= start) {
+                return instanceStart == start;
             }
         }
-        return results;
+        return false;
     }
 
     /**
@@ -851,64 +1503,70 @@ public class MoccaCalendarScriptService implements ScriptService
         BaseObject eventData, BaseObject modificationNotice,
         Date originalStartDate, Date dateFrom, Date dateTo)
     {
-        final Date baseStartDate = eventData.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME);
-        final Date baseEndDate = Utils.fetchOrGuessEndDate(eventData);
-        final long baseDuration = baseEndDate.getTime() - baseStartDate.getTime();
-
-        // now get both the original start / end date
-        // and the modified start / end date, and add a rudimentary event instance to result,
-        // unless:
-        //  a) both the original and new end date are before the "dateFrom"
-        // or
-        //  b) both the original start date or the modified start date are after the "dateTo"
-
-        Date originalEndDate = new Date(originalStartDate.getTime() + baseDuration);
-        Date actualStartDate = modificationNotice.getDateValue(EventConstants.PROPERTY_STARTDATE_NAME);
-        if (actualStartDate == null) {
-            actualStartDate = originalStartDate;
-        }
-        // the following does not work if we have a modification without start date:
-        // Date actualEndDate = Utils.fetchOrGuessEndDate(modificationNotice);
-        // so instead:
-        Date actualEndDate = modificationNotice.getDateValue(EventConstants.PROPERTY_ENDDATE_NAME);
-        if (actualEndDate == null) {
-            // we need to calculate the actual end date from the actual start date, but only if this has been defined
-            // otherwise if we have no modified start date and no modified end date given,
-            // then the end date is the same as the original end date
-            // XXX: what if the "allDay" flag is changed on the event? currently this is not supported
-            if (actualStartDate.equals(originalStartDate)) {
-                actualEndDate = originalEndDate;
-            } else {
-                final boolean allDay = eventData.getIntValue(EventConstants.PROPERTY_ALLDAY_NAME) == 1;
-                actualEndDate = Utils.guessEndDate(actualStartDate, allDay);
-            }
-        }
-
-        // now we can figure out if the modified event is in the right time frame
-        if (dateFrom != null && actualEndDate.before(dateFrom) && originalEndDate.before(dateFrom)) {
-            return null;
-        }
-        if (dateTo != null && actualStartDate.after(dateTo) && originalStartDate.after(dateTo)) {
+        // the modified event is skipped, unless either the original or the modified event is in the time frame
+        RecurrenceSpec.Modification modification =
+            RecurrenceSpec.Modification.of(eventData, modificationNotice, originalStartDate);
+        if (!modification.touches(dateFrom, dateTo)) {
             return null;
         }
+        return createModifiedEventData(eventDoc, modification, timeZoneOf(eventDoc.getDocumentReference()));
+    }
+
+    /**
+     * create an event instance from the modification data; the dates have already been computed.
+     * @param eventDoc the document containing the event
+     * @param modification the dates of the modified instance and the object containing the modification
+     * @param zone the time zone of the event
+     * @return the event instance with (only) the modified data filled in
+     */
+    private EventInstance createModifiedEventData(XWikiDocument eventDoc, RecurrenceSpec.Modification modification,
+        DateTimeZone zone)
+    {
+        final BaseObject modificationNotice = modification.getNotice();
 
         EventInstance modifiedInstance = new EventInstance();
-        modifiedInstance.setStartDate(new DateTime(actualStartDate.getTime()));
-        modifiedInstance.setOriginalStartDate(new DateTime(originalStartDate.getTime()));
-        modifiedInstance.setEndDate(new DateTime(actualEndDate.getTime()));
+        modifiedInstance.setTimeZone(zone);
+        modifiedInstance.setStartMillis(modification.getStart());
+        modifiedInstance.setOriginalStartMillis(modification.getOriginalStart());
+        modifiedInstance.setEndMillis(modification.getEnd());
 
-        XWikiContext context = xcontextProvider.get();
         String modifiedTitle = modificationNotice.getStringValue(EventConstants.PROPERTY_TITLE_NAME);
         if (modifiedTitle != null && !"".equals(modifiedTitle.trim())) {
-            modifiedInstance.setTitle(eventDoc.getRenderedContent(modifiedTitle, eventDoc.getSyntax().toIdString(),
-                    Syntax.PLAIN_1_0.toIdString(), context));
+            modifiedInstance.setTitleSupplier(lazyRendering(modificationNotice, EventConstants.PROPERTY_TITLE_NAME,
+                Syntax.PLAIN_1_0));
         }
         String modifiedDescription = modificationNotice.getStringValue(EventConstants.PROPERTY_DESCRIPTION_NAME);
         if (modifiedDescription != null && !"".equals(modifiedDescription.trim())) {
-            Utils.fillDescription(modificationNotice, context, modifiedInstance);
+            fillDescription(modificationNotice, modifiedInstance);
         }
 
         return modifiedInstance;
     }
 
+    /**
+     * fill the description of the event instance from the given event or modification object.
+     * the description is only rendered when it is requested, and the renderings are cached,
+     * so the instances of a recurrent event do not render the same description again.
+     */
+    private void fillDescription(BaseObject eventData, EventInstance event)
+    {
+        event.setDescriptionSupplier(
+            lazyRendering(eventData, EventConstants.PROPERTY_DESCRIPTION_NAME, Syntax.PLAIN_1_0));
+        event.setDescriptionHtmlSupplier(
+            lazyRendering(eventData, EventConstants.PROPERTY_DESCRIPTION_NAME, Syntax.HTML_5_0));
+    }
+
+    private Supplier<String> lazyRendering(final BaseObject source, final String propertyName,
+        final Syntax targetSyntax)
+    {
+        return new Supplier<String>()
+        {
+            @Override
+            public String get()
+            {
+                return renderedContentCache.render(source, propertyName, targetSyntax);
+            }
+        };
+    }
+
 }
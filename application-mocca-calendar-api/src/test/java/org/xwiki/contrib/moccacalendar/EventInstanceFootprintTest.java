@@ -0,0 +1,98 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Measure the memory retained by each instance of a recurrent event, as laid out by the running JVM.
+ * The data shared by all instances of the series does not count, so each instance should retain nothing
+ * but its own object: its dates are primitive values.
+ */
+public class EventInstanceFootprintTest
+{
+    private static final int INSTANCES = 1000;
+
+    private static final long HOUR = 3600000L;
+
+    private static final long DAY = 24 * HOUR;
+
+    private static final DateTimeZone ZONE = DateTimeZone.forID("Europe/Berlin");
+
+    private EventSeries createSeriesData(boolean allDay)
+    {
+        EventInstance template = new EventInstance();
+        template.setRecurrent(true);
+        template.setAllDay(allDay);
+        template.setTitle("Weekly meeting");
+        template.setDescription("Agenda");
+        template.setBackgroundColor("#888");
+        return template.shareSeriesData();
+    }
+
+    private Object[] createInstances(EventSeries seriesData, int count, boolean modified)
+    {
+        List<EventInstance> instances = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final long start = i * 7 * DAY;
+            EventInstance instance = new EventInstance();
+            instance.setTimeZone(ZONE);
+            instance.setStartMillis(start);
+            instance.setEndMillis(start + HOUR);
+            instance.setEndExclusiveMillis(start + DAY);
+            if (modified) {
+                instance.setOriginalStartMillis(start - HOUR);
+            }
+            instance.setSeriesData(seriesData);
+            instances.add(instance);
+        }
+        return instances.toArray();
+    }
+
+    /**
+     * @return the bytes retained by each instance of a series, i.e. the difference between the size of
+     *     two and of one batch of instances, divided by the size of a batch
+     */
+    private long bytesPerInstance(boolean allDay, boolean modified)
+    {
+        final EventSeries seriesData = createSeriesData(allDay);
+        final long oneBatch = GraphLayout.parseInstance(createInstances(seriesData, INSTANCES, modified)).totalSize();
+        final long twoBatches =
+            GraphLayout.parseInstance(createInstances(seriesData, 2 * INSTANCES, modified)).totalSize();
+        return (twoBatches - oneBatch) / INSTANCES;
+    }
+
+    @Test
+    public void testInstancesRetainOnlyThemselves()
+    {
+        final long instanceSize = ClassLayout.parseClass(EventInstance.class).instanceSize();
+
+        Assert.assertEquals(instanceSize, bytesPerInstance(false, false));
+        Assert.assertEquals(instanceSize, bytesPerInstance(true, false));
+        Assert.assertEquals(instanceSize, bytesPerInstance(false, true));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventInstanceTest
+{
+    private EventInstance instanceOf(EventSeries seriesData, long start)
+    {
+        EventInstance instance = new EventInstance();
+        instance.setStartDate(new DateTime(start));
+        instance.setSeriesData(seriesData);
+        return instance;
+    }
+
+    @Test
+    public void testInstancesShareSeriesData()
+    {
+        final AtomicInteger renderings = new AtomicInteger();
+        EventInstance template = new EventInstance();
+        template.setRecurrent(true);
+        template.setBackgroundColor("#888");
+        template.setTitleSupplier(new Supplier<String>()
+        {
+            @Override
+            public String get()
+            {
+                renderings.incrementAndGet();
+                return "Weekly meeting";
+            }
+        });
+        EventSeries seriesData = template.shareSeriesData();
+
+        EventInstance first = instanceOf(seriesData, 1000L);
+        EventInstance second = instanceOf(seriesData, 2000L);
+
+        Assert.assertEquals("Weekly meeting", first.getTitle());
+        Assert.assertEquals("Weekly meeting", second.getTitle());
+        Assert.assertEquals(1, renderings.get());
+        Assert.assertTrue(second.isRecurrent());
+        Assert.assertEquals("#888", second.getBackgroundColor());
+        Assert.assertEquals(2000L, second.getStartDate().getMillis());
+    }
+
+    @Test
+    public void testChangesDoNotAffectOtherInstances()
+    {
+        EventInstance template = new EventInstance();
+        template.setTitle("Weekly meeting");
+        template.setAllDay(true);
+        EventSeries seriesData = template.shareSeriesData();
+
+        EventInstance first = instanceOf(seriesData, 1000L);
+        EventInstance second = instanceOf(seriesData, 2000L);
+        first.setTitle("Moved meeting");
+        first.setAllDay(false);
+        template.setTextColor("#fff");
+
+        Assert.assertEquals("Moved meeting", first.getTitle());
+        Assert.assertFalse(first.isAllDay());
+        Assert.assertEquals("Weekly meeting", second.getTitle());
+        Assert.assertTrue(second.isAllDay());
+        Assert.assertNull(second.getTextColor());
+        Assert.assertEquals("#fff", template.getTextColor());
+        Assert.assertEquals("Weekly meeting", template.getTitle());
+    }
+
+    @Test
+    public void testDatesKeptAsMillis()
+    {
+        DateTimeZone berlin = DateTimeZone.forID("Europe/Berlin");
+        EventInstance event = new EventInstance();
+        Assert.assertNull(event.getStartDate());
+        Assert.assertEquals(EventInstance.NO_DATE, event.getOriginalStartMillis());
+
+        event.setStartDate(new DateTime(1000L, berlin));
+        event.setEndMillis(5000L);
+
+        Assert.assertEquals(new DateTime(1000L, berlin), event.getStartDate());
+        Assert.assertEquals(new DateTime(5000L, berlin), event.getEndDate());
+        Assert.assertEquals(1000L, event.getStartMillis());
+        Assert.assertNull(event.getOriginalStartDate());
+        Assert.assertNull(event.getEndDateExclusive());
+
+        event.setStartDate(null);
+        Assert.assertNull(event.getStartDate());
+        Assert.assertEquals(EventInstance.NO_DATE, event.getStartMillis());
+    }
+
+    @Test
+    public void testCopyIsIndependent()
+    {
+        EventInstance event = new EventInstance();
+        event.setTitle("Weekly meeting");
+        event.setStartDate(new DateTime(1000L));
+
+        EventInstance copy = event.copy();
+        copy.setTitle("Moved meeting");
+        copy.setStartMillis(2000L);
+        event.setDescription("agenda");
+
+        Assert.assertEquals("Weekly meeting", event.getTitle());
+        Assert.assertEquals(1000L, event.getStartMillis());
+        Assert.assertEquals("Moved meeting", copy.getTitle());
+        Assert.assertEquals(2000L, copy.getStartMillis());
+        Assert.assertNull(copy.getDescription());
+    }
+
+    @Test
+    public void testSharedDataIsNotChanged()
+    {
+        EventInstance template = new EventInstance();
+        template.setTitle("Weekly meeting");
+        EventSeries seriesData = template.shareSeriesData();
+
+        template.setTitle("Other meeting");
+        EventInstance instance = instanceOf(seriesData, 1000L);
+
+        Assert.assertEquals("Other meeting", template.getTitle());
+        Assert.assertEquals("Weekly meeting", instance.getTitle());
+        Assert.assertNotSame(seriesData, template.shareSeriesData());
+    }
+
+    @Test
+    public void testCopyComputesItsOwnTitle()
+    {
+        final AtomicInteger renderings = new AtomicInteger();
+        EventInstance event = new EventInstance();
+        event.setTitleSupplier(new Supplier<String>()
+        {
+            @Override
+            public String get()
+            {
+                return "meeting " + renderings.incrementAndGet();
+            }
+        });
+
+        EventInstance copy = event.copy();
+
+        Assert.assertEquals("meeting 1", copy.getTitle());
+        Assert.assertEquals("meeting 2", event.getTitle());
+        Assert.assertEquals("meeting 1", copy.getTitle());
+        // once computed, the copies share the title
+        Assert.assertEquals("meeting 2", event.copy().getTitle());
+    }
+
+    @Test
+    public void testMillisAreReturnedInTheTimeZoneSet()
+    {
+        DateTimeZone tokyo = DateTimeZone.forID("Asia/Tokyo");
+        EventInstance event = new EventInstance();
+        event.setStartMillis(1000L);
+        event.setEndMillis(5000L);
+        Assert.assertNull(event.getTimeZone());
+
+        event.setTimeZone(tokyo);
+
+        Assert.assertEquals(tokyo, event.getTimeZone());
+        Assert.assertEquals(new DateTime(1000L, tokyo), event.getStartDate());
+        Assert.assertEquals(tokyo, event.getEndDate().getZone());
+    }
+
+    @Test
+    public void testAllDatesUseTheZoneOfTheLastDateSet()
+    {
+        DateTimeZone berlin = DateTimeZone.forID("Europe/Berlin");
+        DateTimeZone tokyo = DateTimeZone.forID("Asia/Tokyo");
+        EventInstance event = new EventInstance();
+        event.setStartDate(new DateTime(1000L, berlin));
+        event.setEndDate(new DateTime(5000L, tokyo));
+
+        // the instant of each date is kept, but the zone is the same for all of them
+        Assert.assertEquals(tokyo, event.getTimeZone());
+        Assert.assertEquals(new DateTime(1000L, tokyo), event.getStartDate());
+        Assert.assertEquals(new DateTime(5000L, tokyo), event.getEndDate());
+
+        event.setTimeZone(berlin);
+        Assert.assertEquals(new DateTime(1000L, berlin), event.getStartDate());
+        Assert.assertEquals(new DateTime(5000L, berlin), event.getEndDate());
+
+        // unset dates do not change the zone
+        event.setOriginalStartDate(null);
+        Assert.assertEquals(berlin, event.getTimeZone());
+    }
+
+    @Test
+    public void testPlainCopyDropsSuppliers()
+    {
+        EventInstance event = new EventInstance();
+        event.setStartMillis(1000L);
+        event.setTitle("Weekly meeting");
+        event.setDescriptionSupplier(new Supplier<String>()
+        {
+            @Override
+            public String get()
+            {
+                return "Agenda";
+            }
+        });
+        Assert.assertEquals("Agenda", event.getDescription());
+
+        EventInstance copy = event.copyPlainData();
+        Assert.assertEquals(1000L, copy.getStartMillis());
+        Assert.assertEquals("Weekly meeting", copy.getTitle());
+        Assert.assertFalse(copy.hasDescription());
+        Assert.assertNull(copy.getDescription());
+        Assert.assertEquals("Agenda", event.getDescription());
+    }
+}
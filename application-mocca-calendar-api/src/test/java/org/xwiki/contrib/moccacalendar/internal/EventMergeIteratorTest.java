@@ -0,0 +1,114 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+
+public class EventMergeIteratorTest
+{
+    private List<EventInstance> createEvents(long... starts)
+    {
+        List<EventInstance> events = new ArrayList<>();
+        for (long start : starts) {
+            EventInstance event = new EventInstance();
+            event.setStartDate(new DateTime(start));
+            events.add(event);
+        }
+        return events;
+    }
+
+    private List<Long> startsOf(EventMergeIterator iter)
+    {
+        List<Long> starts = new ArrayList<>();
+        while (iter.hasNext()) {
+            starts.add(iter.next().getStartDate().getMillis());
+        }
+        return starts;
+    }
+
+    @Test
+    public void testMergeAscending()
+    {
+        List<List<EventInstance>> series = new ArrayList<>();
+        series.add(createEvents(1, 4, 9));
+        series.add(createEvents(2, 3, 10));
+        series.add(createEvents());
+        // a modified instance can be out of order in its series
+        series.add(createEvents(5, 0, 7));
+
+        Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 7L, 9L, 10L),
+            startsOf(new EventMergeIterator(series, true)));
+    }
+
+    @Test
+    public void testMergeDescending()
+    {
+        List<List<EventInstance>> series = new ArrayList<>();
+        series.add(createEvents(9, 4, 1));
+        series.add(createEvents(2, 3, 10));
+
+        Assert.assertEquals(Arrays.asList(10L, 9L, 4L, 3L, 2L, 1L),
+            startsOf(new EventMergeIterator(series, false)));
+    }
+
+    @Test
+    public void testEventsWithTheSameStartKeepTheirOrder()
+    {
+        List<EventInstance> events = createEvents(1, 2, 2, 3);
+        List<EventInstance> expected = Arrays.asList(events.get(3), events.get(1), events.get(2), events.get(0));
+        List<List<EventInstance>> series = new ArrayList<>();
+        series.add(events);
+
+        List<EventInstance> merged = new ArrayList<>();
+        for (EventMergeIterator iter = new EventMergeIterator(series, false); iter.hasNext();) {
+            merged.add(iter.next());
+        }
+        Assert.assertEquals(expected, merged);
+    }
+
+    @Test
+    public void testStopEarly()
+    {
+        List<List<EventInstance>> series = new ArrayList<>();
+        series.add(createEvents(1, 4, 9));
+        series.add(createEvents(2, 3, 10));
+
+        EventMergeIterator iter = new EventMergeIterator(series, true);
+        Assert.assertEquals(1L, iter.next().getStartDate().getMillis());
+        Assert.assertEquals(2L, iter.next().getStartDate().getMillis());
+        Assert.assertTrue(iter.hasNext());
+    }
+
+    @Test
+    public void testNoSeries()
+    {
+        List<List<EventInstance>> series = Collections.emptyList();
+
+        Assert.assertFalse(new EventMergeIterator(series, true).hasNext());
+    }
+}
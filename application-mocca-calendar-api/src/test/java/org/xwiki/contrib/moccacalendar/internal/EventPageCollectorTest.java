@@ -0,0 +1,146 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+import org.xwiki.contrib.moccacalendar.EventPage;
+
+public class EventPageCollectorTest
+{
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    /**
+     * create events with start dates in hours; events with the same start are told apart by the original start.
+     */
+    private List<EventInstance> createEvents(long... startHours)
+    {
+        List<EventInstance> events = new ArrayList<>();
+        int serial = 0;
+        for (long startHour : startHours) {
+            EventInstance event = new EventInstance();
+            event.setStartDate(new DateTime(startHour * HOUR));
+            event.setOriginalStartDate(new DateTime(serial++));
+            events.add(event);
+        }
+        return events;
+    }
+
+    private List<EventInstance> fetchAllPages(List<EventInstance> events, boolean ascending, int limit)
+    {
+        List<EventInstance> result = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            EventPageCollector collector = new EventPageCollector(ascending, limit, cursor);
+            // add in scrambled order; the collector has to sort them
+            List<EventInstance> scrambled = new ArrayList<>(events);
+            Collections.reverse(scrambled);
+            for (EventInstance event : scrambled) {
+                collector.add(event);
+            }
+            EventPage page = collector.createPage();
+            Assert.assertTrue("page too large", page.getEvents().size() <= limit);
+            result.addAll(page.getEvents());
+            cursor = page.getNextCursor();
+            Assert.assertTrue("too many pages", ++pages <= events.size());
+        } while (cursor != null);
+        return result;
+    }
+
+    @Test
+    public void testAllPagesAscending()
+    {
+        List<EventInstance> events = createEvents(1, 2, 2, 2, 3, 5, 5, 8);
+
+        Assert.assertEquals(events, fetchAllPages(events, true, 2));
+        Assert.assertEquals(events, fetchAllPages(events, true, 3));
+        Assert.assertEquals(events, fetchAllPages(events, true, 100));
+    }
+
+    @Test
+    public void testAllPagesDescending()
+    {
+        List<EventInstance> events = createEvents(1, 2, 2, 2, 3, 5, 5, 8);
+        List<EventInstance> expected = new ArrayList<>(events);
+        Collections.reverse(expected);
+
+        Assert.assertEquals(expected, fetchAllPages(events, false, 2));
+        Assert.assertEquals(expected, fetchAllPages(events, false, 1));
+    }
+
+    @Test
+    public void testNarrowRange()
+    {
+        List<EventInstance> events = createEvents(1, 2, 3, 4);
+        EventPageCollector collector = new EventPageCollector(true, 1, null);
+
+        Date from = new Date(0);
+        Date to = new Date(10 * HOUR);
+        Assert.assertEquals(Arrays.asList(from, to), Arrays.asList(collector.narrowRange(from, to)));
+
+        for (EventInstance event : events) {
+            collector.add(event);
+        }
+        // one event for the page plus one to know there is more: the second event is the last one needed
+        Assert.assertEquals(new Date(2 * HOUR), collector.narrowRange(from, to)[1]);
+    }
+
+    @Test
+    public void testBeyondHorizon()
+    {
+        EventPageCollector ascending = new EventPageCollector(true, 1, null);
+        EventPageCollector descending = new EventPageCollector(false, 1, null);
+        // nothing is beyond the horizon before the page is full
+        Assert.assertFalse(ascending.isBeyondHorizon(100 * HOUR));
+        for (EventInstance event : createEvents(2, 3, 4)) {
+            ascending.add(event);
+            descending.add(event);
+        }
+
+        Assert.assertFalse(ascending.isBeyondHorizon(3 * HOUR));
+        Assert.assertTrue(ascending.isBeyondHorizon(3 * HOUR + 1));
+        Assert.assertFalse(descending.isBeyondHorizon(3 * HOUR));
+        Assert.assertTrue(descending.isBeyondHorizon(3 * HOUR - 1));
+    }
+
+    @Test
+    public void testEventsWithoutStartAreIgnored()
+    {
+        EventPageCollector collector = new EventPageCollector(true, 10, null);
+        collector.add(new EventInstance());
+
+        Assert.assertTrue(collector.createPage().getEvents().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursor()
+    {
+        new EventPageCollector(true, 10, "nonsense");
+    }
+}
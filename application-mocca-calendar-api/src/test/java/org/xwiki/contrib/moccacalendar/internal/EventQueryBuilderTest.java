@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventQueryBuilderTest
+{
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUpTimeZone()
+    {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+    }
+
+    @After
+    public void resetTimeZone()
+    {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void testDateRangeFilterUsesPlainComparisons()
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.set(2020, Calendar.MAY, 1, 10, 15, 0);
+        Date dateFrom = cal.getTime();
+        cal.set(2020, Calendar.MAY, 31, 23, 59, 0);
+        Date dateTo = cal.getTime();
+
+        EventQueryBuilder builder = new EventQueryBuilder();
+        builder.addDateRangeFilter("startdate.value", "enddate.value", dateFrom, dateTo);
+
+        String hql = builder.getHql().toString();
+        Assert.assertThat(hql, Matchers.not(Matchers.containsString("year(")));
+        Assert.assertThat(hql, Matchers.not(Matchers.containsString("month(")));
+        Assert.assertThat(hql, Matchers.not(Matchers.containsString("day(")));
+        Assert.assertThat(hql, Matchers.containsString("enddate.value >= :rangeStart"));
+        Assert.assertThat(hql, Matchers.containsString("startdate.value >= :rangeStart"));
+        Assert.assertThat(hql, Matchers.containsString("startdate.value < :rangeEnd"));
+
+        cal.clear();
+        cal.set(2020, Calendar.MAY, 1, 0, 0, 0);
+        Assert.assertEquals("range should start at midnight of the first day", cal.getTime(),
+            builder.getQueryParams().get(EventQueryBuilder.PARAM_RANGE_START));
+        cal.set(2020, Calendar.JUNE, 1, 0, 0, 0);
+        Assert.assertEquals("range should end at midnight after the last day", cal.getTime(),
+            builder.getQueryParams().get(EventQueryBuilder.PARAM_RANGE_END));
+    }
+
+    @Test
+    public void testStartOfNextDayAcrossDaylightSavingTime()
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        // daylight saving time starts in Germany at 2020-03-29 02:00; this day has only 23 hours
+        cal.set(2020, Calendar.MARCH, 29, 12, 0, 0);
+        Date date = cal.getTime();
+
+        Date startOfDay = EventQueryBuilder.startOfDay(date);
+        Date startOfNextDay = EventQueryBuilder.startOfNextDay(date);
+
+        Assert.assertEquals("day should have 23 hours", 23 * 60 * 60 * 1000L,
+            startOfNextDay.getTime() - startOfDay.getTime());
+
+        cal.setTime(startOfNextDay);
+        Assert.assertEquals(30, cal.get(Calendar.DAY_OF_MONTH));
+        Assert.assertEquals(0, cal.get(Calendar.HOUR_OF_DAY));
+    }
+
+    @Test
+    public void testCalendarFilterUsesOneSetPredicate()
+    {
+        EventQueryBuilder builder = new EventQueryBuilder();
+        builder.getHql().append(", BaseObject as obj where doc.fullName=obj.name");
+        builder.addCalendarFilter(Arrays.asList("Team", "Holidays"), Collections.<String>emptyList());
+
+        String hql = builder.getHql().toString();
+        Assert.assertTrue(hql.startsWith(", XWikiSpace as eventspace"));
+        Assert.assertThat(hql, Matchers.containsString("eventspace.parent in (:calendarspaces)"));
+        Assert.assertThat(hql, Matchers.not(Matchers.containsString(" like ")));
+        Assert.assertEquals(Arrays.asList("Team", "Holidays"),
+            builder.getQueryParams().get(EventQueryBuilder.PARAM_CALENDAR_SPACES));
+    }
+
+    @Test
+    public void testCalendarFilterMatchesDeeplyNestedSpacesByPrefix()
+    {
+        EventQueryBuilder builder = new EventQueryBuilder();
+        builder.addCalendarFilter(Arrays.asList("Team", "100%_Fun"), Arrays.asList("100%_Fun"));
+
+        String hql = builder.getHql().toString();
+        Assert.assertThat(hql, Matchers.containsString(
+            "(eventspace.parent in (:calendarspaces) or doc.space like :nestedcalendarspace0 escape '!')"));
+        Assert.assertEquals("100!%!_Fun.%", builder.getQueryParams().get("nestedcalendarspace0"));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceProvider;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventRightsEvaluatorTest
+{
+    private static final String WIKI = "wiki";
+
+    @Rule
+    public MockitoComponentMockingRule<EventRightsEvaluator> mocker = new MockitoComponentMockingRule<>(
+        EventRightsEvaluator.class);
+
+    private AuthorizationManager authorizationManager;
+
+    private Query rightsQuery;
+
+    private final DocumentReference user = new DocumentReference(WIKI, "XWiki", "JohnDoe");
+
+    @Before
+    public void setUpMocks() throws Exception
+    {
+        authorizationManager = mocker.getInstance(AuthorizationManager.class);
+
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontext.getWikiId()).thenReturn(WIKI);
+        Provider<XWikiContext> xcontextProvider = mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+
+        EntityReferenceProvider defaultProvider = mocker.getInstance(EntityReferenceProvider.class);
+        when(defaultProvider.getDefaultReference(EntityType.DOCUMENT))
+            .thenReturn(new EntityReference("WebHome", EntityType.DOCUMENT));
+
+        // serialize as "Space.Sub.Page", which is good enough as long as no names need escaping
+        EntityReferenceSerializer<String> localSerializer =
+            mocker.getInstance(EntityReferenceSerializer.TYPE_STRING, "local");
+        when(localSerializer.serialize(any(EntityReference.class))).thenAnswer(invocation -> {
+            List<String> names = new ArrayList<>();
+            for (EntityReference ref : ((EntityReference) invocation.getArgument(0)).getReversedReferenceChain()) {
+                if (ref.getType() != EntityType.WIKI) {
+                    names.add(ref.getName());
+                }
+            }
+            return String.join(".", names);
+        });
+
+        rightsQuery = mock(Query.class);
+        QueryManager queryManager = mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(rightsQuery);
+        withRightsObjectsIn();
+    }
+
+    private void withRightsObjectsIn(String... names) throws QueryException
+    {
+        when(rightsQuery.<String>execute()).thenReturn(Arrays.asList(names));
+    }
+
+    private void withAccess(DocumentReference userRef, EntityReference entity, boolean access)
+    {
+        when(authorizationManager.hasAccess(Right.VIEW, userRef, entity)).thenReturn(access);
+    }
+
+    @Test
+    public void testDocumentsWithOwnRightsAreCheckedSeparately() throws Exception
+    {
+        DocumentReference eventA = new DocumentReference(WIKI, "Cal", "EventA");
+        DocumentReference eventB = new DocumentReference(WIKI, "Cal", "EventB");
+        DocumentReference eventC = new DocumentReference(WIKI, "Cal", "EventC");
+        SpaceReference calendarSpace = eventA.getLastSpaceReference();
+
+        withRightsObjectsIn("Cal.EventB");
+        withAccess(user, calendarSpace, true);
+        withAccess(user, eventB, false);
+
+        List<DocumentReference> accessible = mocker.getComponentUnderTest().filterAccessible(Right.VIEW, user,
+            Arrays.asList(eventA, eventB, eventC));
+
+        Assert.assertEquals(Arrays.asList(eventA, eventC), accessible);
+        verify(authorizationManager, times(1)).hasAccess(Right.VIEW, user, calendarSpace);
+        verify(authorizationManager, times(1)).hasAccess(Right.VIEW, user, eventB);
+        verify(authorizationManager, never()).hasAccess(Right.VIEW, user, eventA);
+        verify(authorizationManager, never()).hasAccess(Right.VIEW, user, eventC);
+    }
+
+    @Test
+    public void testNestedPagesInheritFromTheEnclosingSpace() throws Exception
+    {
+        DocumentReference event1 = new DocumentReference(WIKI, Arrays.asList("Cal", "Event1"), "WebHome");
+        DocumentReference event2 = new DocumentReference(WIKI, Arrays.asList("Cal", "Event2"), "WebHome");
+        DocumentReference event3 = new DocumentReference(WIKI, Arrays.asList("Cal", "Event3"), "WebHome");
+        SpaceReference calendarSpace = new SpaceReference(WIKI, "Cal");
+        SpaceReference event3Space = event3.getLastSpaceReference();
+
+        // only the preferences of the third event define rights
+        withRightsObjectsIn("Cal.Event3.WebPreferences");
+        withAccess(user, calendarSpace, true);
+        withAccess(user, event3Space, false);
+
+        List<DocumentReference> accessible = mocker.getComponentUnderTest().filterAccessible(Right.VIEW, user,
+            Arrays.asList(event1, event2, event3));
+
+        Assert.assertEquals(Arrays.asList(event1, event2), accessible);
+        verify(authorizationManager, times(1)).hasAccess(Right.VIEW, user, calendarSpace);
+        verify(authorizationManager, times(1)).hasAccess(Right.VIEW, user, event3Space);
+        verify(authorizationManager, times(2)).hasAccess(eq(Right.VIEW), eq(user), any(EntityReference.class));
+    }
+
+    @Test
+    public void testGuestUser() throws Exception
+    {
+        DocumentReference publicEvent = new DocumentReference(WIKI, "Public", "Event");
+        DocumentReference privateEvent = new DocumentReference(WIKI, "Private", "Event");
+
+        withAccess(null, publicEvent.getLastSpaceReference(), true);
+        withAccess(null, privateEvent.getLastSpaceReference(), false);
+
+        List<DocumentReference> accessible = mocker.getComponentUnderTest().filterAccessible(Right.VIEW, null,
+            Arrays.asList(privateEvent, publicEvent));
+
+        Assert.assertEquals(Collections.singletonList(publicEvent), accessible);
+        verify(authorizationManager, never()).hasAccess(eq(Right.VIEW), eq(user), any(EntityReference.class));
+    }
+
+    @Test
+    public void testDocumentsInOtherWikisAreCheckedSeparately() throws Exception
+    {
+        DocumentReference localEvent = new DocumentReference(WIKI, "Cal", "Event");
+        DocumentReference otherEvent = new DocumentReference("otherwiki", "Cal", "Event");
+
+        withAccess(user, localEvent.getLastSpaceReference(), true);
+        withAccess(user, otherEvent, true);
+
+        List<DocumentReference> accessible = mocker.getComponentUnderTest().filterAccessible(Right.VIEW, user,
+            Arrays.asList(localEvent, otherEvent));
+
+        Assert.assertEquals(Arrays.asList(localEvent, otherEvent), accessible);
+        verify(authorizationManager, never()).hasAccess(Right.VIEW, user, otherEvent.getLastSpaceReference());
+    }
+
+    @Test
+    public void testEveryDocumentIsCheckedIfRightsObjectsCannotBeLookedUp() throws Exception
+    {
+        DocumentReference eventA = new DocumentReference(WIKI, "Cal", "EventA");
+        DocumentReference eventB = new DocumentReference(WIKI, "Cal", "EventB");
+
+        when(rightsQuery.execute()).thenThrow(new QueryException("failed", rightsQuery, null));
+        withAccess(user, eventA, true);
+        withAccess(user, eventB, false);
+
+        List<DocumentReference> accessible = mocker.getComponentUnderTest().filterAccessible(Right.VIEW, user,
+            Arrays.asList(eventA, eventB));
+
+        Assert.assertEquals(Collections.singletonList(eventA), accessible);
+        verify(authorizationManager, never()).hasAccess(Right.VIEW, user, eventA.getLastSpaceReference());
+    }
+}
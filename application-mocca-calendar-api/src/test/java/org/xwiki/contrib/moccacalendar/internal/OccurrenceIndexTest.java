@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.contrib.moccacalendar.internal.generators.ModificationIndex;
+
+public class OccurrenceIndexTest
+{
+    private static final long HOUR = 3600000L;
+
+    private static final long DAY = 24 * HOUR;
+
+    private static final String VERSION = "1.1";
+
+    /** an event every other day at noon, one hour long, indexed for the given days. */
+    private OccurrenceIndex.Entry createEntry(int fromDay, int toDay)
+    {
+        long[] starts = new long[(toDay - fromDay + 1) / 2];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = (fromDay + 2 * i) * DAY + 12 * HOUR;
+        }
+        return new OccurrenceIndex.Entry(VERSION, fromDay * DAY, toDay * DAY, starts, HOUR, ModificationIndex.EMPTY);
+    }
+
+    private OccurrenceIndex.Entry createEntry()
+    {
+        return createEntry(0, 100);
+    }
+
+    @Test
+    public void testRangesWithAndWithoutInstances()
+    {
+        OccurrenceIndex.Entry entry = createEntry();
+
+        Assert.assertTrue(entry.mayOccurIn(VERSION, 2 * DAY, 3 * DAY));
+        Assert.assertFalse(entry.mayOccurIn(VERSION, 3 * DAY, 4 * DAY));
+        // the instance of day 4 ends at 13:00
+        Assert.assertTrue(entry.mayOccurIn(VERSION, 4 * DAY + 13 * HOUR, 5 * DAY));
+        Assert.assertFalse(entry.mayOccurIn(VERSION, 4 * DAY + 14 * HOUR, 5 * DAY));
+        Assert.assertFalse(entry.mayOccurIn(VERSION, 99 * DAY, 100 * DAY));
+    }
+
+    @Test
+    public void testRangesOutsideTheWindowAreNotFiltered()
+    {
+        OccurrenceIndex.Entry entry = createEntry();
+
+        Assert.assertTrue(entry.mayOccurIn(VERSION, -2 * DAY, -DAY));
+        Assert.assertTrue(entry.mayOccurIn(VERSION, 99 * DAY, 101 * DAY));
+    }
+
+    @Test
+    public void testOtherVersionsAreNotFiltered()
+    {
+        OccurrenceIndex.Entry entry = createEntry();
+
+        Assert.assertTrue(entry.mayOccurIn("1.2", 3 * DAY, 4 * DAY));
+    }
+
+    @Test
+    public void testMergeAdjacentRanges()
+    {
+        OccurrenceIndex.Entry entry = createEntry(0, 50).merge(createEntry(50, 100));
+
+        Assert.assertNotNull(entry);
+        Assert.assertTrue(entry.mayOccurIn(VERSION, 48 * DAY, 49 * DAY));
+        Assert.assertFalse(entry.mayOccurIn(VERSION, 49 * DAY, 50 * DAY));
+        Assert.assertTrue(entry.mayOccurIn(VERSION, 50 * DAY, 51 * DAY));
+        Assert.assertFalse(entry.mayOccurIn(VERSION, 3 * DAY, 4 * DAY));
+        Assert.assertFalse(entry.mayOccurIn(VERSION, 99 * DAY, 100 * DAY));
+    }
+
+    @Test
+    public void testMergeCoveredRange()
+    {
+        OccurrenceIndex.Entry entry = createEntry();
+
+        Assert.assertSame(entry, entry.merge(createEntry(10, 20)));
+    }
+
+    @Test
+    public void testNoMergeOfDistantRangesOrOtherVersions()
+    {
+        Assert.assertNull(createEntry(0, 10).merge(createEntry(20, 30)));
+        Assert.assertNull(createEntry(0, 10).merge(new OccurrenceIndex.Entry("2.1", 0, 10 * DAY, new long[0], HOUR,
+            ModificationIndex.EMPTY)));
+    }
+}
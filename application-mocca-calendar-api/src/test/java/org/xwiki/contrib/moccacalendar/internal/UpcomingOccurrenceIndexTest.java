@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.contrib.moccacalendar.EventInstance;
+import org.xwiki.model.reference.DocumentReference;
+
+public class UpcomingOccurrenceIndexTest
+{
+    private static final LongPredicate NONE_EXCLUDED = new LongPredicate()
+    {
+        @Override
+        public boolean test(long start)
+        {
+            return false;
+        }
+    };
+
+    private static final Function<Collection<DocumentReference>, Collection<DocumentReference>> ALL_ACCEPTED =
+        new Function<Collection<DocumentReference>, Collection<DocumentReference>>()
+        {
+            @Override
+            public Collection<DocumentReference> apply(Collection<DocumentReference> eventDocRefs)
+            {
+                return eventDocRefs;
+            }
+        };
+
+    private final DocumentReference first = new DocumentReference("wiki", "Events", "First");
+
+    private final DocumentReference second = new DocumentReference("wiki", "Events", "Second");
+
+    private UpcomingOccurrenceIndex.SeriesCursor createCursor(DocumentReference eventDocRef, long duration,
+        LongPredicate excluded, long... starts)
+    {
+        List<EventInstance> events = new ArrayList<>();
+        for (long start : starts) {
+            EventInstance event = new EventInstance();
+            event.setStartDate(new DateTime(start));
+            events.add(event);
+        }
+        return new UpcomingOccurrenceIndex.SeriesCursor(eventDocRef, duration, events.iterator(), excluded);
+    }
+
+    private List<Long> startsOf(List<UpcomingOccurrenceIndex.Occurrence> occurrences)
+    {
+        List<Long> starts = new ArrayList<>();
+        for (UpcomingOccurrenceIndex.Occurrence occurrence : occurrences) {
+            starts.add(occurrence.getStart());
+        }
+        return starts;
+    }
+
+    @Test
+    public void testNextOccurrencesAreMergedWithoutMovingTheCursors()
+    {
+        UpcomingOccurrenceIndex.WikiIndex index = new UpcomingOccurrenceIndex.WikiIndex(new Date(1000));
+        index.put(first, createCursor(first, 1, NONE_EXCLUDED, 10, 20, 30, 40));
+        index.put(second, createCursor(second, 1, NONE_EXCLUDED, 15, 16, 17));
+
+        Assert.assertEquals(Arrays.asList(10L, 15L, 16L, 17L, 20L), startsOf(index.next(5, 0, ALL_ACCEPTED)));
+        // a second lookup finds the same occurrences
+        Assert.assertEquals(Arrays.asList(10L, 15L, 16L), startsOf(index.next(3, 0, ALL_ACCEPTED)));
+        Assert.assertEquals(Arrays.asList(10L, 15L, 16L, 17L, 20L, 30L, 40L),
+            startsOf(index.next(10, 0, ALL_ACCEPTED)));
+    }
+
+    @Test
+    public void testEndedOccurrencesAreSkipped()
+    {
+        UpcomingOccurrenceIndex.WikiIndex index = new UpcomingOccurrenceIndex.WikiIndex(new Date(1000));
+        index.put(first, createCursor(first, 5, NONE_EXCLUDED, 10, 20, 30));
+        index.put(second, createCursor(second, 5, NONE_EXCLUDED, 12));
+
+        // the occurrence at 20 has not ended yet at 22
+        Assert.assertEquals(Arrays.asList(20L, 30L), startsOf(index.next(5, 22, ALL_ACCEPTED)));
+        Assert.assertEquals(Arrays.asList(30L), startsOf(index.next(5, 26, ALL_ACCEPTED)));
+        Assert.assertEquals(Arrays.asList(), startsOf(index.next(5, 36, ALL_ACCEPTED)));
+    }
+
+    @Test
+    public void testEndedOccurrencesBehindLongerOnesAreSkipped()
+    {
+        UpcomingOccurrenceIndex.WikiIndex index = new UpcomingOccurrenceIndex.WikiIndex(new Date(1000));
+        index.put(first, createCursor(first, 100, NONE_EXCLUDED, 10, 200));
+        index.put(second, createCursor(second, 1, NONE_EXCLUDED, 20, 30, 40));
+
+        // the first event is still going on at 35, but the occurrences of the second one at 20 and 30 have ended
+        Assert.assertEquals(Arrays.asList(10L, 40L, 200L), startsOf(index.next(5, 35, ALL_ACCEPTED)));
+    }
+
+    @Test
+    public void testExcludedAndFilteredEvents()
+    {
+        UpcomingOccurrenceIndex.WikiIndex index = new UpcomingOccurrenceIndex.WikiIndex(new Date(1000));
+        index.put(first, createCursor(first, 1, new LongPredicate()
+        {
+            @Override
+            public boolean test(long start)
+            {
+                return start == 20;
+            }
+        }, 10, 20, 30));
+        index.put(second, createCursor(second, 1, NONE_EXCLUDED, 15, 25));
+
+        Assert.assertEquals(Arrays.asList(10L, 15L, 25L, 30L), startsOf(index.next(5, 0, ALL_ACCEPTED)));
+
+        final List<Collection<DocumentReference>> checked = new ArrayList<>();
+        List<UpcomingOccurrenceIndex.Occurrence> occurrences = index.next(5, 0,
+            new Function<Collection<DocumentReference>, Collection<DocumentReference>>()
+            {
+                @Override
+                public Collection<DocumentReference> apply(Collection<DocumentReference> eventDocRefs)
+                {
+                    checked.add(new ArrayList<>(eventDocRefs));
+                    return Collections.singletonList(second);
+                }
+            });
+        Assert.assertEquals(Arrays.asList(15L, 25L), startsOf(occurrences));
+        // both events are checked at once, and the first one is not checked again after its rejection
+        Assert.assertEquals(Collections.singletonList(Arrays.asList(first, second)), checked);
+        Assert.assertSame(second, occurrences.get(0).getEventDocRef());
+
+        // replacing or removing an event drops its old cursor
+        index.put(second, createCursor(second, 1, NONE_EXCLUDED, 11));
+        Assert.assertEquals(Arrays.asList(10L, 11L, 30L), startsOf(index.next(5, 0, ALL_ACCEPTED)));
+        index.put(first, null);
+        Assert.assertEquals(Arrays.asList(11L), startsOf(index.next(5, 0, ALL_ACCEPTED)));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AbstractFixedPeriodEventGeneratorTest
+{
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static final long DAY = 24 * HOUR;
+
+    private final List<AbstractFixedPeriodEventGenerator> generators = Arrays.asList(new DailyEventGenerator(),
+        new WeeklyEventGenerator(), new BiWeeklyEventGenerator(), new MonthlyEventGenerator(),
+        new QuarterlyEventGenerator(), new YearlyEventGenerator());
+
+    /**
+     * the calendar field and amount which the generators above used to add to step from one period to the next.
+     */
+    private final int[][] calendarSteps = { {Calendar.DAY_OF_YEAR, 1}, {Calendar.WEEK_OF_YEAR, 1},
+        {Calendar.WEEK_OF_YEAR, 2}, {Calendar.MONTH, 1}, {Calendar.MONTH, 3}, {Calendar.YEAR, 1} };
+
+    private Calendar createCalendar(int year, int month, int day, int hour)
+    {
+        Calendar cal = Calendar.getInstance(BERLIN);
+        cal.clear();
+        cal.set(year, month, day, hour, 0, 0);
+        return cal;
+    }
+
+    private long millisOf(int year, int month, int day, int hour)
+    {
+        return createCalendar(year, month, day, hour).getTimeInMillis();
+    }
+
+    private List<Long> generateStarts(AbstractFixedPeriodEventGenerator generator, long start, long duration,
+        long dateFrom, long dateTo)
+    {
+        PrimitiveIterator.OfLong iterator =
+            generator.iterateStarts(new LocalTimeConverter(BERLIN.toZoneId()), start, duration, dateFrom, dateTo);
+        List<Long> starts = new ArrayList<>();
+        while (iterator.hasNext()) {
+            starts.add(iterator.nextLong());
+        }
+        return starts;
+    }
+
+    /**
+     * compute the instances by stepping through the series one period at a time with a calendar.
+     */
+    private List<Long> stepStarts(int[] step, Calendar start, long duration, long dateFrom, long dateTo)
+    {
+        Calendar cal = (Calendar) start.clone();
+        while (cal.getTimeInMillis() + duration < dateFrom) {
+            cal.add(step[0], step[1]);
+        }
+        List<Long> starts = new ArrayList<>();
+        while (cal.getTimeInMillis() <= dateTo) {
+            starts.add(cal.getTimeInMillis());
+            cal.add(step[0], step[1]);
+        }
+        return starts;
+    }
+
+    private void assertSameAsStepping(int generatorIndex, Calendar start, long duration, long dateFrom)
+    {
+        AbstractFixedPeriodEventGenerator generator = generators.get(generatorIndex);
+        // long enough to get several instances for the monthly generator
+        long dateTo = dateFrom + 100 * DAY;
+        Assert.assertEquals(generator.getClass().getSimpleName() + " from " + start.getTime() + " at " + dateFrom,
+            stepStarts(calendarSteps[generatorIndex], start, duration, dateFrom, dateTo),
+            generateStarts(generator, start.getTimeInMillis(), duration, dateFrom, dateTo));
+    }
+
+    @Test
+    public void testSameAsSteppingAcrossDaylightSavingTime()
+    {
+        // one start in winter and one in summer time, one of them at midnight as for all day events
+        List<Calendar> starts = Arrays.asList(createCalendar(2015, Calendar.JANUARY, 15, 10),
+            createCalendar(2016, Calendar.JUNE, 28, 0));
+
+        for (int i = 0; i < generators.size(); i++) {
+            for (Calendar start : starts) {
+                // range starts every few days over two years, including the days around the DST changes
+                Calendar dateFrom = createCalendar(2018, Calendar.MARCH, 1, 0);
+                while (dateFrom.get(Calendar.YEAR) < 2020) {
+                    assertSameAsStepping(i, start, HOUR, dateFrom.getTimeInMillis());
+                    assertSameAsStepping(i, start, 0, dateFrom.getTimeInMillis());
+                    dateFrom.add(Calendar.HOUR_OF_DAY, 53);
+                }
+                assertSameAsStepping(i, start, HOUR, millisOf(2019, Calendar.MARCH, 31, 3));
+                assertSameAsStepping(i, start, HOUR, millisOf(2019, Calendar.OCTOBER, 27, 2));
+            }
+        }
+    }
+
+    @Test
+    public void testLocalTimeKeptAcrossDaylightSavingTime()
+    {
+        long start = millisOf(2019, Calendar.MARCH, 25, 10);
+
+        Assert.assertEquals(Arrays.asList(millisOf(2019, Calendar.NOVEMBER, 3, 10)),
+            generateStarts(new DailyEventGenerator(), start, HOUR, millisOf(2019, Calendar.NOVEMBER, 3, 0),
+                millisOf(2019, Calendar.NOVEMBER, 3, 12)));
+    }
+
+    @Test
+    public void testStartAfterRange()
+    {
+        long start = millisOf(2019, Calendar.MARCH, 25, 10);
+
+        Assert.assertEquals(Arrays.asList(start, millisOf(2019, Calendar.APRIL, 1, 10)),
+            generateStarts(new WeeklyEventGenerator(), start, HOUR, millisOf(2018, Calendar.MARCH, 1, 0),
+                millisOf(2019, Calendar.APRIL, 3, 0)));
+    }
+
+    @Test
+    public void testMonthEndDriftsAsWhenStepping()
+    {
+        long start = millisOf(2019, Calendar.JANUARY, 31, 10);
+        MonthlyEventGenerator generator = new MonthlyEventGenerator();
+
+        Assert.assertEquals(
+            Arrays.asList(millisOf(2019, Calendar.FEBRUARY, 28, 10), millisOf(2019, Calendar.MARCH, 28, 10)),
+            generateStarts(generator, start, HOUR, millisOf(2019, Calendar.FEBRUARY, 1, 0),
+                millisOf(2019, Calendar.APRIL, 1, 0)));
+
+        // the same instance is found when starting directly in March
+        Assert.assertEquals(Arrays.asList(millisOf(2019, Calendar.MARCH, 28, 10)),
+            generateStarts(generator, start, HOUR, millisOf(2019, Calendar.MARCH, 1, 0),
+                millisOf(2019, Calendar.APRIL, 1, 0)));
+    }
+
+    @Test
+    public void testSameAsSteppingAtTheEndOfMonths()
+    {
+        // the ends of long and short months, and the leap day, for all day events
+        List<Calendar> starts = Arrays.asList(createCalendar(2015, Calendar.AUGUST, 31, 0),
+            createCalendar(2015, Calendar.NOVEMBER, 30, 0), createCalendar(2016, Calendar.JANUARY, 29, 0),
+            createCalendar(2016, Calendar.FEBRUARY, 29, 0));
+
+        for (int i = 0; i < generators.size(); i++) {
+            for (Calendar start : starts) {
+                Calendar dateFrom = (Calendar) start.clone();
+                while (dateFrom.get(Calendar.YEAR) < 2070) {
+                    assertSameAsStepping(i, start, 0, dateFrom.getTimeInMillis());
+                    dateFrom.add(Calendar.DAY_OF_YEAR, 97);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIterationIsNotLimited()
+    {
+        long start = millisOf(2019, Calendar.MARCH, 25, 10);
+        PrimitiveIterator.OfLong starts = new DailyEventGenerator()
+            .iterateStarts(new LocalTimeConverter(BERLIN.toZoneId()), start, HOUR, start, start + 5000 * DAY);
+
+        int count = 0;
+        long last = 0;
+        while (starts.hasNext()) {
+            last = starts.nextLong();
+            count++;
+        }
+        Assert.assertEquals(5001, count);
+        Assert.assertEquals(millisOf(2032, Calendar.DECEMBER, 1, 10), last);
+    }
+}
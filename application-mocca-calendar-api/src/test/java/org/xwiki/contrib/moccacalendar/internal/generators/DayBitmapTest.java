@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DayBitmapTest
+{
+    @Test
+    public void testContains()
+    {
+        DayBitmap days = DayBitmap.of(new long[] { 700000, 3, 4095, 4096, 3, -1, 0 });
+
+        Assert.assertEquals(5, days.cardinality());
+        for (long day : new long[] { 0, 3, 4095, 4096, 700000 }) {
+            Assert.assertTrue("day " + day, days.contains(day));
+        }
+        for (long day : new long[] { -1, 1, 2, 4, 4097, 8191, 699999, 700001, Long.MAX_VALUE, Long.MIN_VALUE }) {
+            Assert.assertFalse("day " + day, days.contains(day));
+        }
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        Assert.assertSame(DayBitmap.EMPTY, DayBitmap.of(new long[] { -5 }));
+        Assert.assertFalse(DayBitmap.EMPTY.contains(0));
+        Assert.assertEquals(0, DayBitmap.EMPTY.cardinality());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalTimeConverterTest
+{
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private long millisOf(LocalDateTime localDateTime)
+    {
+        return ZonedDateTime.ofLocal(localDateTime, BERLIN, null).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void testSameAsZonedDateTimeForEveryHourOfAYear()
+    {
+        LocalTimeConverter converter = new LocalTimeConverter(BERLIN);
+        LocalDateTime localDateTime = LocalDateTime.of(2019, 1, 1, 0, 30);
+        while (localDateTime.getYear() == 2019) {
+            long epochMilli = millisOf(localDateTime);
+            long epochDay = localDateTime.toLocalDate().toEpochDay();
+            long millisOfDay = localDateTime.toLocalTime().toNanoOfDay() / 1000000;
+
+            Assert.assertEquals(localDateTime.toString(), epochMilli, converter.toEpochMilli(epochDay, millisOfDay));
+            Assert.assertEquals(localDateTime.toString(), epochDay, converter.toEpochDay(epochMilli));
+            localDateTime = localDateTime.plusHours(1);
+        }
+    }
+
+    @Test
+    public void testGapAndOverlap()
+    {
+        LocalTimeConverter converter = new LocalTimeConverter(BERLIN);
+        long springDay = LocalDate.of(2019, 3, 31).toEpochDay();
+        long autumnDay = LocalDate.of(2019, 10, 27).toEpochDay();
+
+        // 02:30 does not exist and is moved to 03:30
+        Assert.assertEquals(millisOf(LocalDateTime.of(2019, 3, 31, 3, 30)),
+            converter.toEpochMilli(springDay, 5 * HOUR / 2));
+        // 02:30 exists twice; the first one is taken
+        Assert.assertEquals(millisOf(LocalDateTime.of(2019, 10, 27, 1, 30)) + HOUR,
+            converter.toEpochMilli(autumnDay, 5 * HOUR / 2));
+        Assert.assertEquals(5 * HOUR / 2,
+            converter.toMillisOfDay(millisOf(LocalDateTime.of(2019, 10, 27, 1, 30)) + 2 * HOUR));
+    }
+
+    @Test
+    public void testSameAsZoneRulesAcrossYearsAndZones()
+    {
+        for (String zoneId : new String[] { "Europe/Berlin", "Australia/Sydney", "America/Sao_Paulo", "UTC",
+            "Asia/Kolkata" }) {
+            ZoneId zone = ZoneId.of(zoneId);
+            LocalTimeConverter converter = new LocalTimeConverter(zone);
+            // every 7 hours and 13 minutes, to hit all times of the day, from before 1970 until after 2037
+            for (long epochMilli = -100L * 365 * 24 * HOUR; epochMilli < 150L * 365 * 24 * HOUR;
+                epochMilli += 7 * HOUR + 13 * 60 * 1000L) {
+                ZonedDateTime expected = Instant.ofEpochMilli(epochMilli).atZone(zone);
+                Assert.assertEquals(zoneId + " " + expected, expected.toLocalDate().toEpochDay(),
+                    converter.toEpochDay(epochMilli));
+                Assert.assertEquals(zoneId + " " + expected, expected.toLocalTime().toNanoOfDay() / 1000000,
+                    converter.toMillisOfDay(epochMilli));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ModificationIndexTest
+{
+    private RecurrenceSpec.Modification moved(long originalStart, long start, long end)
+    {
+        return new RecurrenceSpec.Modification(originalStart, originalStart + 10, start, end, null);
+    }
+
+    private List<Long> originalStartsOf(List<RecurrenceSpec.Modification> modifications)
+    {
+        List<Long> result = new ArrayList<>();
+        for (RecurrenceSpec.Modification modification : modifications) {
+            result.add(modification.getOriginalStart());
+        }
+        return result;
+    }
+
+    @Test
+    public void testOverlapping()
+    {
+        ModificationIndex index = new ModificationIndex(Arrays.asList(moved(1, 500, 510), moved(2, 100, 110),
+            moved(3, 200, 900), moved(4, 300, 310), moved(5, 1000, 1010), moved(6, 300, 300)));
+
+        Assert.assertEquals(Arrays.asList(2L), originalStartsOf(index.overlapping(0, 100)));
+        Assert.assertEquals(Arrays.asList(2L), originalStartsOf(index.overlapping(110, 199)));
+        Assert.assertEquals(Arrays.asList(3L, 4L, 6L), originalStartsOf(index.overlapping(300, 300)));
+        // the long modification reaches into the range even if later ones do not
+        Assert.assertEquals(Arrays.asList(3L), originalStartsOf(index.overlapping(600, 999)));
+        Assert.assertEquals(Arrays.asList(3L, 5L), originalStartsOf(index.overlapping(900, 2000)));
+        Assert.assertTrue(index.overlapping(1011, 5000).isEmpty());
+        Assert.assertTrue(index.overlapping(0, 99).isEmpty());
+        Assert.assertEquals(6, index.overlapping(Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        Assert.assertTrue(ModificationIndex.EMPTY.overlapping(Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+        Assert.assertEquals(0, ModificationIndex.EMPTY.size());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RecurrenceRuleTest
+{
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private long millisOf(int year, int month, int day)
+    {
+        return LocalDateTime.of(year, month, day, 10, 0).atZone(BERLIN).toInstant().toEpochMilli();
+    }
+
+    private List<Long> expand(String rule, long start, long dateFrom, long dateTo)
+    {
+        OccurrenceList occurrences = new OccurrenceList();
+        occurrences.addAll(RecurrenceRule.parse(rule).iterator(new LocalTimeConverter(BERLIN), start, HOUR, dateFrom,
+            dateTo), HOUR, RecurrenceConfiguration.DEFAULT_MAX_INSTANCES);
+        List<Long> starts = new ArrayList<>();
+        for (int i = 0; i < occurrences.size(); i++) {
+            starts.add(occurrences.getStart(i));
+        }
+        return starts;
+    }
+
+    @Test
+    public void testLastFridayOfMonth()
+    {
+        long start = millisOf(2019, 1, 25);
+
+        Assert.assertEquals(Arrays.asList(millisOf(2019, 2, 22), millisOf(2019, 3, 29), millisOf(2019, 4, 26)),
+            expand("FREQ=MONTHLY;BYDAY=-1FR", start, millisOf(2019, 2, 1), millisOf(2019, 4, 30)));
+    }
+
+    @Test
+    public void testSecondTuesdayWithCount()
+    {
+        long start = millisOf(2019, 1, 8);
+
+        Assert.assertEquals(Arrays.asList(start, millisOf(2019, 2, 12), millisOf(2019, 3, 12)),
+            expand("RRULE:FREQ=MONTHLY;BYDAY=2TU;COUNT=3", start, start, millisOf(2020, 1, 1)));
+        Assert.assertEquals(Arrays.asList(millisOf(2019, 3, 12)),
+            expand("FREQ=MONTHLY;BYDAY=2TU;COUNT=3", start, millisOf(2019, 3, 1), millisOf(2020, 1, 1)));
+        // an explicit plus sign is allowed, too
+        Assert.assertEquals(Arrays.asList(start, millisOf(2019, 2, 12)),
+            expand("FREQ=MONTHLY;BYDAY=+2TU;COUNT=2", start, start, millisOf(2020, 1, 1)));
+    }
+
+    @Test
+    public void testEveryOtherWeekUntil()
+    {
+        long start = millisOf(2019, 1, 1);
+
+        Assert.assertEquals(
+            Arrays.asList(start, millisOf(2019, 1, 3), millisOf(2019, 1, 15), millisOf(2019, 1, 17),
+                millisOf(2019, 1, 29), millisOf(2019, 1, 31)),
+            expand("FREQ=WEEKLY;INTERVAL=2;BYDAY=TU,TH;UNTIL=20190131", start, start, millisOf(2019, 12, 31)));
+    }
+
+    @Test
+    public void testLastWorkdayOfMonth()
+    {
+        long start = millisOf(2019, 1, 31);
+
+        Assert.assertEquals(
+            Arrays.asList(start, millisOf(2019, 2, 28), millisOf(2019, 3, 29), millisOf(2019, 4, 30),
+                millisOf(2019, 5, 31), millisOf(2019, 6, 28)),
+            expand("FREQ=MONTHLY;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-1", start, start, millisOf(2019, 6, 30)));
+    }
+
+    @Test
+    public void testLastDayOfMonth()
+    {
+        long start = millisOf(2019, 1, 31);
+
+        Assert.assertEquals(Arrays.asList(start, millisOf(2019, 2, 28), millisOf(2019, 3, 31)),
+            expand("FREQ=MONTHLY;BYMONTHDAY=-1", start, start, millisOf(2019, 4, 1)));
+    }
+
+    @Test
+    public void testYearlyNthWeekdayOfMonth()
+    {
+        long start = millisOf(2019, 11, 28);
+
+        Assert.assertEquals(Arrays.asList(start, millisOf(2020, 11, 26), millisOf(2021, 11, 25)),
+            expand("FREQ=YEARLY;BYMONTH=11;BYDAY=4TH", start, start, millisOf(2022, 1, 1)));
+    }
+
+    @Test
+    public void testWindowsMatchFullExpansionAcrossDaylightSavingTime()
+    {
+        long start = millisOf(2015, 1, 5);
+        String rule = "FREQ=WEEKLY;BYDAY=MO,FR";
+        List<Long> all = expand(rule, start, start, millisOf(2020, 1, 1));
+        // 261 mondays and 260 fridays
+        Assert.assertEquals(521, all.size());
+
+        for (int month = 1; month <= 12; month++) {
+            long dateFrom = millisOf(2018, month, 1);
+            long dateTo = millisOf(2018, month, 20);
+            List<Long> expected = new ArrayList<>();
+            for (long instanceStart : all) {
+                if (instanceStart + HOUR >= dateFrom && instanceStart <= dateTo) {
+                    expected.add(instanceStart);
+                }
+            }
+            Assert.assertEquals("month " + month, expected, expand(rule, start, dateFrom, dateTo));
+        }
+        // the local time is kept in summer time
+        Assert.assertEquals(Arrays.asList(millisOf(2018, 7, 2)),
+            expand(rule, start, millisOf(2018, 7, 2), millisOf(2018, 7, 2)));
+    }
+
+    @Test
+    public void testInvalidRules()
+    {
+        for (String rule : Arrays.asList("", "BYDAY=MO", "FREQ=HOURLY", "FREQ=DAILY;BYHOUR=3", "FREQ=WEEKLY;BYDAY=1MO",
+            "FREQ=MONTHLY;COUNT=2;UNTIL=20200101", "FREQ=MONTHLY;BYMONTHDAY=32", "FREQ=DAILY;INTERVAL=0")) {
+            try {
+                RecurrenceRule.parse(rule);
+                Assert.fail("should reject [" + rule + "]");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 import org.hamcrest.Matchers;
 import org.joda.time.DateTime;
@@ -54,7 +55,7 @@ public class WeeklyEventGeneratorTest
     protected XWikiDocument eventDoc;
 
     @Before
-    public void setUpMocks()
+    public void setUpMocks() throws Exception
     {
         DocumentReference eventClass = new DocumentReference("a", "b", "c");
         DocumentReference recurrencyClass = new DocumentReference("d", "e", "f");
@@ -69,6 +70,14 @@ public class WeeklyEventGeneratorTest
 
         when(eventDoc.getXObject(eventClass)).thenReturn(eventData);
         when(eventDoc.getXObject(recurrencyClass)).thenReturn(eventRecurrentData);
+
+        // compile the event data each time, as the tests change it after the setup
+        RecurrenceSpecCache recurrenceSpecCache = mocker.getInstance(RecurrenceSpecCache.class);
+        when(recurrenceSpecCache.get(eventDoc)).thenAnswer(invocation -> RecurrenceSpec.fromDocument(eventDoc,
+            new LocalTimeConverter(TimeZone.getDefault().toZoneId())));
+
+        RecurrenceConfiguration recurrenceConfiguration = mocker.getInstance(RecurrenceConfiguration.class);
+        when(recurrenceConfiguration.getMaxInstances()).thenReturn(RecurrenceConfiguration.DEFAULT_MAX_INSTANCES);
     }
 
     @Test
@@ -290,4 +299,24 @@ public class WeeklyEventGeneratorTest
 
     }
 
+    @Test
+    public void testMaximalNumberOfInstances() throws Exception
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.set(1982, Calendar.SEPTEMBER, 20, 10, 0, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        Date startDate = cal.getTime();
+
+        // about 5200 weeks
+        cal.set(Calendar.YEAR, 2082);
+        Date dateTo = cal.getTime();
+
+        when(eventData.getDateValue("startDate")).thenReturn(startDate);
+        when(eventRecurrentData.getDateValue("firstInstance")).thenReturn(startDate);
+
+        List<EventInstance> eventInstances = mocker.getComponentUnderTest().generate(eventDoc, startDate, dateTo);
+
+        Assert.assertEquals(RecurrenceConfiguration.DEFAULT_MAX_INSTANCES, eventInstances.size());
+        Assert.assertEquals(startDate.getTime(), eventInstances.get(0).getStartMillis());
+    }
 }
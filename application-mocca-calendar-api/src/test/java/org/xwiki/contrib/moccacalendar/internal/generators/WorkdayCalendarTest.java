@@ -0,0 +1,134 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.moccacalendar.internal.generators;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WorkdayCalendarTest
+{
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static final List<LocalDate> HOLIDAYS = Arrays.asList(LocalDate.of(2019, 12, 25),
+        LocalDate.of(2019, 12, 26), LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 5), LocalDate.of(2020, 12, 31),
+        LocalDate.of(2021, 1, 1), LocalDate.of(1969, 12, 31));
+
+    private long millisOf(LocalDate day)
+    {
+        return day.atTime(10, 0).atZone(BERLIN).toInstant().toEpochMilli();
+    }
+
+    private long millisOf(int year, int month, int day)
+    {
+        return LocalDateTime.of(year, month, day, 10, 0).atZone(BERLIN).toInstant().toEpochMilli();
+    }
+
+    private List<Long> startsOf(PrimitiveIterator.OfLong starts)
+    {
+        List<Long> result = new ArrayList<>();
+        while (starts.hasNext()) {
+            result.add(starts.nextLong());
+        }
+        return result;
+    }
+
+    private void assertMatchesStepping(WorkdayCalendar calendar, List<DayOfWeek> workdays, List<LocalDate> holidays)
+    {
+        final long first = LocalDate.of(1969, 1, 1).toEpochDay();
+        final long last = LocalDate.of(2022, 1, 1).toEpochDay();
+        long ordinal = calendar.toOrdinal(first);
+        for (long day = first; day < last; day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            boolean workday = workdays.contains(date.getDayOfWeek()) && !holidays.contains(date);
+            Assert.assertEquals(date.toString(), workday, calendar.isWorkday(day));
+            Assert.assertEquals(date.toString(), ordinal, calendar.toOrdinal(day));
+            if (workday) {
+                Assert.assertEquals(date.toString(), day, calendar.fromOrdinal(ordinal));
+                ordinal++;
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultWorkdays()
+    {
+        assertMatchesStepping(WorkdayCalendar.DEFAULT, new ArrayList<>(WorkdayCalendar.DEFAULT_WORKDAYS),
+            new ArrayList<LocalDate>());
+        // Saturday 2020-01-04 is followed by Monday 2020-01-06
+        Assert.assertEquals(LocalDate.of(2020, 1, 6).toEpochDay(),
+            WorkdayCalendar.DEFAULT.nextWorkday(LocalDate.of(2020, 1, 4).toEpochDay()));
+    }
+
+    @Test
+    public void testHolidays()
+    {
+        List<DayOfWeek> workdays = Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY,
+            DayOfWeek.THURSDAY, DayOfWeek.FRIDAY);
+        WorkdayCalendar calendar = new WorkdayCalendar(EnumSet.copyOf(workdays), HOLIDAYS);
+
+        assertMatchesStepping(calendar, workdays, HOLIDAYS);
+        // Friday 2020-12-31 and 2021-01-01 are holidays
+        Assert.assertEquals(LocalDate.of(2021, 1, 4).toEpochDay(),
+            calendar.nextWorkday(LocalDate.of(2020, 12, 30).toEpochDay()));
+    }
+
+    @Test
+    public void testIterator()
+    {
+        WorkdayCalendar calendar = new WorkdayCalendar(WorkdayCalendar.DEFAULT_WORKDAYS, HOLIDAYS);
+        // starts on a Sunday, which is still an instance
+        final long start = millisOf(2019, 12, 22);
+
+        Assert.assertEquals(
+            Arrays.asList(start, millisOf(2019, 12, 23), millisOf(2019, 12, 24), millisOf(2019, 12, 27),
+                millisOf(2019, 12, 28), millisOf(2019, 12, 30), millisOf(2019, 12, 31), millisOf(2020, 1, 2)),
+            startsOf(calendar.iterator(new LocalTimeConverter(BERLIN), start, HOUR, start, millisOf(2020, 1, 2))));
+
+        // far from the start, and the local time is kept in summer time
+        List<Long> expected = new ArrayList<>();
+        for (LocalDate day = LocalDate.of(2020, 6, 27); day.isBefore(LocalDate.of(2020, 7, 3)); day = day.plusDays(1)) {
+            if (day.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                expected.add(millisOf(day));
+            }
+        }
+        Assert.assertEquals(expected, startsOf(calendar.iterator(new LocalTimeConverter(BERLIN), start, HOUR,
+            millisOf(2020, 6, 27), millisOf(2020, 7, 2))));
+    }
+
+    @Test
+    public void testParseHolidays()
+    {
+        Assert.assertEquals(Arrays.asList(LocalDate.of(2020, 12, 25), LocalDate.of(2020, 12, 26),
+            LocalDate.of(2021, 1, 1)), WorkdayCalendar.parseHolidays(" 2020-12-25,2020-12-26;\n nonsense 2021-01-01 "));
+        Assert.assertTrue(WorkdayCalendar.parseHolidays(null).isEmpty());
+    }
+}